@@ -174,6 +174,18 @@ public class Executors {
         return new FailsafeScheduledExecutor(corePoolSize, threadFactory, handler);
     }
 
+    /*
+     * Virtual threads (JDK 21+, detected at runtime)
+     */
+
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor(final String name) {
+        return VirtualThreads.newThreadPerTaskExecutor(name);
+    }
+
     private static class DelegatedExecutorService extends AbstractExecutorService {
 
         private final ExecutorService e;
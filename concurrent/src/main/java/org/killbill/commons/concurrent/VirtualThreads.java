@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reflective access to the virtual threads API, so that the library can keep targeting JDK 8.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+            // On JDK 19 and 20, the API exists but throws unless preview features are enabled: make sure a virtual thread can be created
+            final ThreadFactory threadFactory = (ThreadFactory) builderFactory.invoke(ofVirtual.invoke(null));
+            threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        } catch (final ClassNotFoundException e) {
+            // JDK < 19
+            newThreadPerTaskExecutor = null;
+        } catch (final NoSuchMethodException e) {
+            // JDK < 19
+            newThreadPerTaskExecutor = null;
+        } catch (final IllegalAccessException e) {
+            newThreadPerTaskExecutor = null;
+        } catch (final InvocationTargetException e) {
+            // JDK 19 or 20 without --enable-preview
+            newThreadPerTaskExecutor = null;
+        } catch (final RuntimeException e) {
+            // Unexpected, stick to platform threads
+            newThreadPerTaskExecutor = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    // JDK 21+ (or JDK 19 and 20 with preview features enabled)
+    static boolean isSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(final String name) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21+");
+        }
+
+        try {
+            final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor " + name, e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor " + name, e.getCause());
+        }
+    }
+}
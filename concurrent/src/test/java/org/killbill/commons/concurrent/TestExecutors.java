@@ -339,4 +339,28 @@ public class TestExecutors {
     public void testSingleThreadScheduledExecutorScheduled() throws Exception {
         scheduledTest(Executors.newSingleThreadScheduledExecutor("TestLoggingExecutor"));
     }
+
+    @Test(groups = "fast")
+    public void testVirtualThreadPerTaskExecutor() throws Exception {
+        if (!Executors.isVirtualThreadSupported()) {
+            try {
+                Executors.newVirtualThreadPerTaskExecutor("TestVirtualExecutor");
+                Assert.fail("Expected exception");
+            } catch (final UnsupportedOperationException e) {
+                return;
+            }
+        }
+
+        final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor("TestVirtualExecutor");
+        final Future<String> future = executorService.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        });
+        Assert.assertTrue(future.get().startsWith("TestVirtualExecutor-"));
+
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
 }
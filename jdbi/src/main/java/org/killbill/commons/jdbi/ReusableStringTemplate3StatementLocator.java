@@ -22,27 +22,49 @@ package org.killbill.commons.jdbi;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateGroup;
 import org.antlr.stringtemplate.language.AngleBracketTemplateLexer;
+import org.killbill.commons.jdbi.statement.WeightedSqlCaches;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.tweak.StatementLocator;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Functions;
+import com.google.common.cache.Cache;
 import com.google.common.io.BaseEncoding;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 // Similar to StringTemplate3StatementLocator, but safe to use in conjunction with dbi#setStatementLocator
+//
+// The templates of the group are never mutated: each call renders its own instance (see StringTemplate#getInstanceOf),
+// so there is no need to synchronize callers. The rendered SQL is cached when at most 2 attributes are defined (similar to ST4StatementLocator).
 public class ReusableStringTemplate3StatementLocator implements StatementLocator {
 
+    private static final String COMPOSITE_KEY_SEPARATOR = "___#___";
+
+    // Rendered SQL caches of all locators (1MB per locator by default)
+    private static final WeightedSqlCaches<String> RENDERED_SQL_CACHES = new WeightedSqlCaches<String>("org.killbill.jdbi.st3.renderedSqlCache.maxWeight", Functions.<String>identity());
+
     protected final StringTemplateGroup group;
     protected final StringTemplateGroup literals = new StringTemplateGroup("literals", AngleBracketTemplateLexer.class);
     protected final boolean treatLiteralsAsTemplates;
 
+    // Templates (from the group or literals) to create instances from, to avoid hitting the (synchronized) group lookups
+    private final ConcurrentMap<String, StringTemplate> prototypes = new ConcurrentHashMap<String, StringTemplate>();
+
+    @VisibleForTesting
+    final Cache<String, String> renderedSqlCache = RENDERED_SQL_CACHES.newCache();
+
     public ReusableStringTemplate3StatementLocator(final Class baseClass) {
         this(mungify("/" + baseClass.getName()) + ".sql.stg", false, false);
     }
@@ -80,38 +102,86 @@ public class ReusableStringTemplate3StatementLocator implements StatementLocator
         }
     }
 
-    // Note! This code needs to be thread safe. We just synchronize the whole method for now, we could probably do better...
-    public synchronized String locate(final String name, final StatementContext ctx) throws Exception {
-        if (group.isDefined(name)) {
-            final StringTemplate t = group.lookupTemplate(name);
-            for (final Map.Entry<String, Object> entry : ctx.getAttributes().entrySet()) {
-                t.setAttribute(entry.getKey(), entry.getValue());
-            }
-            final String sql = t.toString();
+    /**
+     * @return the rendered SQL caches of all locators
+     */
+    public static WeightedSqlCaches<String> getRenderedSqlCaches() {
+        return RENDERED_SQL_CACHES;
+    }
+
+    // Note! This code needs to be thread safe: shared templates are only used as prototypes, see getPrototype
+    public String locate(final String name, final StatementContext ctx) throws Exception {
+        final String cacheKey = buildCacheKey(name, ctx.getAttributes());
+        if (cacheKey == null) {
+            // Too many attributes are defined, don't cache it
+            return locateAndRender(name, ctx);
+        }
+
+        String sql = renderedSqlCache.getIfPresent(cacheKey);
+        if (sql == null) {
+            sql = locateAndRender(name, ctx);
+            renderedSqlCache.put(cacheKey, sql);
+        }
+        return sql;
+    }
+
+    private String locateAndRender(final String name, final StatementContext ctx) {
+        final StringTemplate prototype = getPrototype(name);
+        if (prototype == null) {
+            return name;
+        }
 
-            // Reset the template attributes
-            t.setAttributes(null);
+        final StringTemplate t = prototype.getInstanceOf();
+        for (final Map.Entry<String, Object> entry : ctx.getAttributes().entrySet()) {
+            t.setAttribute(entry.getKey(), entry.getValue());
+        }
+        return t.toString();
+    }
+
+    private StringTemplate getPrototype(final String name) {
+        StringTemplate prototype = prototypes.get(name);
+        if (prototype != null) {
+            return prototype;
+        }
 
-            return sql;
+        if (group.isDefined(name)) {
+            prototype = group.lookupTemplate(name);
         } else if (treatLiteralsAsTemplates) {
             // no template in the template group, but we want literals to be templates
             final String key = BaseEncoding.base64().encode(name.getBytes(Charsets.US_ASCII));
-            if (!literals.isDefined(key)) {
-                literals.defineTemplate(key, name);
-            }
-            final StringTemplate t = literals.lookupTemplate(key);
-            for (final Map.Entry<String, Object> entry : ctx.getAttributes().entrySet()) {
-                t.setAttribute(entry.getKey(), entry.getValue());
+            synchronized (literals) {
+                if (!literals.isDefined(key)) {
+                    literals.defineTemplate(key, name);
+                }
+                prototype = literals.lookupTemplate(key);
             }
-            final String sql = t.toString();
+        } else {
+            return null;
+        }
 
-            // Reset the template attributes
-            t.setAttributes(null);
+        final StringTemplate existingPrototype = prototypes.putIfAbsent(name, prototype);
+        return existingPrototype != null ? existingPrototype : prototype;
+    }
 
-            return sql;
-        } else {
+    private static String buildCacheKey(final String name, final Map<String, Object> attributes) {
+        final Iterator<Entry<String, Object>> entryIterator = attributes.entrySet().iterator();
+        if (!entryIterator.hasNext()) {
             return name;
         }
+
+        final Entry<String, Object> attribute1 = entryIterator.next();
+        if (!entryIterator.hasNext()) {
+            return name + COMPOSITE_KEY_SEPARATOR + attribute1.getKey() + COMPOSITE_KEY_SEPARATOR + attribute1.getValue();
+        }
+
+        final Entry<String, Object> attribute2 = entryIterator.next();
+        if (entryIterator.hasNext()) {
+            return null;
+        } else if (attribute1.getKey().compareTo(attribute2.getKey()) <= 0) {
+            return name + COMPOSITE_KEY_SEPARATOR + attribute1.getKey() + COMPOSITE_KEY_SEPARATOR + attribute1.getValue() + COMPOSITE_KEY_SEPARATOR + attribute2.getKey() + COMPOSITE_KEY_SEPARATOR + attribute2.getValue();
+        } else {
+            return name + COMPOSITE_KEY_SEPARATOR + attribute2.getKey() + COMPOSITE_KEY_SEPARATOR + attribute2.getValue() + COMPOSITE_KEY_SEPARATOR + attribute1.getKey() + COMPOSITE_KEY_SEPARATOR + attribute1.getValue();
+        }
     }
 
     private static final String sep = "/"; // *Not* System.getProperty("file.separator"), which breaks in jars
@@ -20,48 +20,167 @@
 package org.killbill.commons.jdbi.binder;
 
 import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.skife.jdbi.v2.SQLStatement;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.Binder;
 import org.skife.jdbi.v2.sqlobject.BinderFactory;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.skife.jdbi.v2.tweak.NamedArgumentFinder;
 
-// Similar to org.skife.jdbi.v2.sqlobject.BindBeanFactory with optimizations
+import com.google.common.annotations.VisibleForTesting;
+
+// Similar to org.skife.jdbi.v2.sqlobject.BindBeanFactory with optimizations:
+// - the binding plan (property names to getters) is computed once per bean class and prefix
+// - getters are invoked through MethodHandles
+// - the prefix is resolved once per annotation, when the binder is built
+// - the bean is bound as a NamedArgumentFinder: only the properties referenced by the statement are read and converted to Arguments
+//
+// Names bound explicitly on the statement (e.g. @Bind) take precedence over the bean properties, regardless of the parameters order.
 public class SmartBindBeanFactory implements BinderFactory {
 
-    private static final Binder<SmartBindBean, Object> SMART_BINDER = new Binder<SmartBindBean, Object>() {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // Attached to the bean class (not held by a global map), so the plans don't prevent it from being unloaded
+    private static final ClassValue<BindingPlans> BINDING_PLANS = new ClassValue<BindingPlans>() {
         @Override
-        public void bind(final SQLStatement q, final SmartBindBean bind, final Object arg) {
-            final String prefix;
-            if (BindBean.BARE_BINDING.equals(bind.value())) {
-                prefix = null;
-            } else {
-                prefix = bind.value() + ".";
-            }
+        protected BindingPlans computeValue(final Class<?> beanClass) {
+            return new BindingPlans(beanClass);
+        }
+    };
+
+    private static final Binder<SmartBindBean, Object> BARE_BINDER = new SmartBinder(null);
+
+    @Override
+    public Binder build(final Annotation annotation) {
+        final String value = ((SmartBindBean) annotation).value();
+        if (BindBean.BARE_BINDING.equals(value)) {
+            return BARE_BINDER;
+        } else {
+            return new SmartBinder(value + ".");
+        }
+    }
+
+    @VisibleForTesting
+    static Map<String, PropertyGetter> getBindingPlan(final Class<?> beanClass, final String prefix) {
+        return BINDING_PLANS.get(beanClass).forPrefix(prefix);
+    }
 
+    private static final class BindingPlans {
+
+        private final Map<String, PropertyGetter> bare;
+        private final ConcurrentMap<String, Map<String, PropertyGetter>> perPrefix = new ConcurrentHashMap<String, Map<String, PropertyGetter>>();
+
+        private BindingPlans(final Class<?> beanClass) {
+            final Map<String, PropertyGetter> getters = new HashMap<String, PropertyGetter>();
             try {
-                final BeanInfo infos = Introspector.getBeanInfo(arg.getClass());
-                final PropertyDescriptor[] props = infos.getPropertyDescriptors();
-                for (final PropertyDescriptor prop : props) {
+                final BeanInfo infos = Introspector.getBeanInfo(beanClass);
+                for (final PropertyDescriptor prop : infos.getPropertyDescriptors()) {
                     final Method readMethod = prop.getReadMethod();
                     if (readMethod != null) {
-                        // [OPTIMIZATION] Avoid implicit creation of StringBuilder (concatenation) when no custom annotation value is specified
-                        final String name = prefix == null ? prop.getName() : prefix + prop.getName();
-                        q.dynamicBind(readMethod.getReturnType(), name, readMethod.invoke(arg));
+                        readMethod.setAccessible(true);
+                        final MethodHandle getter = MethodHandles.lookup().unreflect(readMethod).asType(GETTER_TYPE);
+                        getters.put(prop.getName(), new PropertyGetter(readMethod.getReturnType(), getter));
                     }
                 }
-            } catch (final Exception e) {
+            } catch (final IntrospectionException e) {
+                throw new IllegalStateException("unable to bind bean properties", e);
+            } catch (final IllegalAccessException e) {
                 throw new IllegalStateException("unable to bind bean properties", e);
             }
+            this.bare = getters;
         }
-    };
 
-    @Override
-    public Binder build(final Annotation annotation) {
-        return SMART_BINDER;
+        private Map<String, PropertyGetter> forPrefix(final String prefix) {
+            if (prefix == null) {
+                return bare;
+            }
+
+            Map<String, PropertyGetter> getters = perPrefix.get(prefix);
+            if (getters == null) {
+                getters = new HashMap<String, PropertyGetter>();
+                for (final Map.Entry<String, PropertyGetter> entry : bare.entrySet()) {
+                    getters.put(prefix + entry.getKey(), entry.getValue());
+                }
+                perPrefix.putIfAbsent(prefix, getters);
+            }
+            return getters;
+        }
+    }
+
+    private static final class SmartBinder implements Binder<SmartBindBean, Object> {
+
+        private final String prefix;
+
+        private SmartBinder(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void bind(final SQLStatement q, final SmartBindBean bind, final Object arg) {
+            q.bindNamedArgumentFinder(new BeanPropertyArguments(q, getBindingPlan(arg.getClass(), prefix), arg));
+        }
+    }
+
+    @VisibleForTesting
+    static final class PropertyGetter {
+
+        private final Class<?> type;
+        private final MethodHandle getter;
+
+        private PropertyGetter(final Class<?> type, final MethodHandle getter) {
+            this.type = type;
+            this.getter = getter;
+        }
+
+        Object get(final Object bean) {
+            try {
+                return (Object) getter.invokeExact(bean);
+            } catch (final Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalStateException("unable to bind bean properties", e);
+            }
+        }
+    }
+
+    private static final class BeanPropertyArguments implements NamedArgumentFinder {
+
+        private final SQLStatement q;
+        private final Map<String, PropertyGetter> plan;
+        private final Object bean;
+
+        private BeanPropertyArguments(final SQLStatement q, final Map<String, PropertyGetter> plan, final Object bean) {
+            this.q = q;
+            this.plan = plan;
+            this.bean = bean;
+        }
+
+        // Only invoked for the names referenced by the statement, which aren't bound explicitly (see Binding#forName)
+        @Override
+        public Argument find(final String name) {
+            final PropertyGetter propertyGetter = plan.get(name);
+            if (propertyGetter == null) {
+                return null;
+            }
+            return q.toArgument(propertyGetter.type, propertyGetter.get(bean));
+        }
+
+        @Override
+        public String toString() {
+            return "{smart bean property arguments \"" + bean + "\"}";
+        }
     }
 }
@@ -104,6 +104,16 @@ public interface DaoConfig {
     @Default("true")
     boolean isServerSidePreparedStatementsEnabled();
 
+    @Description("Number of executions of a prepared statement before the PostgreSQL driver switches to a server-side prepared statement")
+    @Config("org.killbill.dao.prepareThreshold")
+    @Default("5")
+    int getPrepareThreshold();
+
+    @Description("Rewrite batched inserts into multi-row INSERT statements (MySQL and PostgreSQL only)")
+    @Config("org.killbill.dao.rewriteBatchedStatements")
+    @Default("false")
+    boolean isRewriteBatchedStatementsEnabled();
+
     @Description("DataSource class name provided by the JDBC driver, leave null for autodetection")
     @Config("org.killbill.dao.dataSourceClassName")
     @DefaultNull
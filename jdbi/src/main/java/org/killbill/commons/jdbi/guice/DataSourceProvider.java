@@ -200,6 +200,16 @@ public class DataSourceProvider implements Provider<DataSource> {
                 if (Float.valueOf(config.getMySQLServerVersion()).compareTo(Float.valueOf("5.1")) >= 0) {
                     hikariConfig.addDataSourceProperty("useServerPrepStmts", config.isServerSidePreparedStatementsEnabled());
                 }
+                if (config.isRewriteBatchedStatementsEnabled()) {
+                    hikariConfig.addDataSourceProperty("rewriteBatchedStatements", true);
+                }
+            } else if (DatabaseType.POSTGRESQL.equals(databaseType)) {
+                // See https://jdbc.postgresql.org/documentation/server-prepare/
+                hikariConfig.addDataSourceProperty("prepareThreshold", config.isServerSidePreparedStatementsEnabled() ? config.getPrepareThreshold() : 0);
+                hikariConfig.addDataSourceProperty("preparedStatementCacheQueries", config.isPreparedStatementsCacheEnabled() ? config.getPreparedStatementsCacheSize() : 0);
+                if (config.isRewriteBatchedStatementsEnabled()) {
+                    hikariConfig.addDataSourceProperty("reWriteBatchedInserts", true);
+                }
             }
 
             if (dataSourceClassName != null) {
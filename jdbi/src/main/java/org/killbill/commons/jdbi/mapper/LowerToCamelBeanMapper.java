@@ -23,8 +23,12 @@ import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.sql.Blob;
@@ -33,9 +37,13 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -47,14 +55,27 @@ import com.google.common.base.CaseFormat;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 // Identical to org.skife.jdbi.v2.BeanMapper but maps created_date to createdDate
+//
+// The columns to setters plan is resolved once per result set shape (column labels) and setters are invoked through
+// MethodHandles, so that mapping a row doesn't require any metadata lookup nor reflection.
 public class LowerToCamelBeanMapper<T> implements ResultSetMapper<T> {
 
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
     private final Class<T> type;
     private final Map<String, PropertyDescriptor> properties = new HashMap<String, PropertyDescriptor>();
     private final Map<String, PropertyMapper> propertiesMappers = new HashMap<String, PropertyMapper>();
+    private final MethodHandle constructor;
+
+    // Plans per result set shape (the lower cased column labels, comma separated)
+    private final ConcurrentMap<String, ColumnMapper[]> columnMappersPerShape = new ConcurrentHashMap<String, ColumnMapper[]>();
+    // Plan of the last result set seen, to avoid looking at the metadata for each row
+    private volatile ResultSetColumnMappers lastResultSetColumnMappers;
 
     public LowerToCamelBeanMapper(final Class<T> type) {
         this.type = type;
+        this.constructor = findConstructor(type);
         try {
             final BeanInfo info = Introspector.getBeanInfo(type);
 
@@ -221,6 +242,17 @@ public class LowerToCamelBeanMapper<T> implements ResultSetMapper<T> {
         }
     }
 
+    private static MethodHandle findConstructor(final Class<?> type) {
+        try {
+            final Constructor<?> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(ctor).asType(CONSTRUCTOR_TYPE);
+        } catch (final Exception e) {
+            // Not instantiable, this will be reported when mapping the first row
+            return null;
+        }
+    }
+
     private static Field getField(final Class clazz, final String fieldName) throws NoSuchFieldException {
         try {
             return clazz.getDeclaredField(fieldName);
@@ -240,63 +272,130 @@ public class LowerToCamelBeanMapper<T> implements ResultSetMapper<T> {
     public T map(final int row, final ResultSet rs, final StatementContext ctx) throws SQLException {
         final T bean;
         try {
-            bean = type.newInstance();
-        } catch (final Exception e) {
+            if (constructor == null) {
+                throw new InstantiationException(type.getName());
+            }
+            bean = (T) (Object) constructor.invokeExact();
+        } catch (final Throwable e) {
             throw new IllegalArgumentException(String.format("A bean, %s, was mapped " +
                                                              "which was not instantiable", type.getName()),
                                                e);
         }
 
-        final Class beanClass = bean.getClass();
+        for (final ColumnMapper columnMapper : getColumnMappers(row, rs)) {
+            Object value = columnMapper.propertyMapper.apply(rs, columnMapper.index);
+
+            // For h2, transform a JdbcBlob into a byte[]
+            if (value instanceof Blob) {
+                final Blob blob = (Blob) value;
+                value = blob.getBytes(0, (int) blob.length());
+            }
+            if (rs.wasNull() && !type.isPrimitive()) {
+                value = null;
+            }
+
+            try {
+                columnMapper.setter.invokeExact((Object) bean, value);
+            } catch (final ClassCastException e) {
+                throw new IllegalArgumentException(String.format("Unable to set field for " +
+                                                                 "property: name=%s, value=%s", columnMapper.name, value), e);
+            } catch (final NullPointerException e) {
+                throw new IllegalArgumentException(String.format("No appropriate method to " +
+                                                                 "write value %s ", value), e);
+            } catch (final Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalArgumentException(String.format("Invocation target exception trying to " +
+                                                                 "invoker setter for the %s property", columnMapper.name), e);
+            }
+        }
+
+        return bean;
+    }
+
+    private ColumnMapper[] getColumnMappers(final int row, final ResultSet rs) throws SQLException {
+        final ResultSetColumnMappers last = lastResultSetColumnMappers;
+        if (row > 0 && last != null && last.resultSet.get() == rs) {
+            return last.columnMappers;
+        }
+
         final ResultSetMetaData metadata = rs.getMetaData();
+        final String[] names = new String[metadata.getColumnCount()];
+        final StringBuilder shape = new StringBuilder();
+        for (int i = 1; i <= names.length; ++i) {
+            names[i - 1] = metadata.getColumnLabel(i).toLowerCase();
+            shape.append(names[i - 1]).append(',');
+        }
 
-        for (int i = 1; i <= metadata.getColumnCount(); ++i) {
-            final String name = metadata.getColumnLabel(i).toLowerCase();
+        ColumnMapper[] columnMappers = columnMappersPerShape.get(shape.toString());
+        if (columnMappers == null) {
+            columnMappers = buildColumnMappers(names);
+            columnMappersPerShape.put(shape.toString(), columnMappers);
+        }
+
+        lastResultSetColumnMappers = new ResultSetColumnMappers(rs, columnMappers);
+        return columnMappers;
+    }
 
+    private ColumnMapper[] buildColumnMappers(final String[] names) {
+        final List<ColumnMapper> columnMappers = new ArrayList<ColumnMapper>(names.length);
+        for (int i = 1; i <= names.length; ++i) {
+            final String name = names[i - 1];
             final PropertyMapper propertyMapper = propertiesMappers.get(name);
             if (propertyMapper != null) {
-                Object value = propertyMapper.apply(rs, i);
-
-                // For h2, transform a JdbcBlob into a byte[]
-                if (value instanceof Blob) {
-                    final Blob blob = (Blob) value;
-                    value = blob.getBytes(0, (int) blob.length());
-                }
-                if (rs.wasNull() && !type.isPrimitive()) {
-                    value = null;
-                }
+                columnMappers.add(new ColumnMapper(name, i, propertyMapper, findSetter(name)));
+            }
+        }
+        return columnMappers.toArray(new ColumnMapper[0]);
+    }
 
-                try {
-                    final PropertyDescriptor descriptor = properties.get(name);
-                    final Method writeMethod = descriptor.getWriteMethod();
-                    if (writeMethod != null) {
-                        writeMethod.invoke(bean, value);
-                    } else {
-                        final String camelCasedName = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, name);
-                        final Field field = getField(beanClass, camelCasedName);
-                        field.setAccessible(true); // Often private...
-                        field.set(bean, value);
-                    }
-                } catch (final IllegalArgumentException e) {
-                    throw new IllegalArgumentException(String.format("Unable to set field for " +
-                                                                     "property: name=%s, value=%s", name, value), e);
-                } catch (final NoSuchFieldException e) {
-                    throw new IllegalArgumentException(String.format("Unable to find field for " +
-                                                                     "property, %s", name), e);
-                } catch (final IllegalAccessException e) {
-                    throw new IllegalArgumentException(String.format("Unable to access setter for " +
-                                                                     "property, %s", name), e);
-                } catch (final InvocationTargetException e) {
-                    throw new IllegalArgumentException(String.format("Invocation target exception trying to " +
-                                                                     "invoker setter for the %s property", name), e);
-                } catch (final NullPointerException e) {
-                    throw new IllegalArgumentException(String.format("No appropriate method to " +
-                                                                     "write value %s ", value), e);
-                }
+    private MethodHandle findSetter(final String name) {
+        try {
+            final PropertyDescriptor descriptor = properties.get(name);
+            final Method writeMethod = descriptor.getWriteMethod();
+            if (writeMethod != null) {
+                writeMethod.setAccessible(true);
+                return MethodHandles.lookup().unreflect(writeMethod).asType(SETTER_TYPE);
+            } else {
+                final String camelCasedName = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, name);
+                final Field field = getField(type, camelCasedName);
+                field.setAccessible(true); // Often private...
+                return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
             }
+        } catch (final NoSuchFieldException e) {
+            throw new IllegalArgumentException(String.format("Unable to find field for " +
+                                                             "property, %s", name), e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException(String.format("Unable to access setter for " +
+                                                             "property, %s", name), e);
         }
+    }
 
-        return bean;
+    private static final class ColumnMapper {
+
+        private final String name;
+        private final int index;
+        private final PropertyMapper propertyMapper;
+        private final MethodHandle setter;
+
+        private ColumnMapper(final String name, final int index, final PropertyMapper propertyMapper, final MethodHandle setter) {
+            this.name = name;
+            this.index = index;
+            this.propertyMapper = propertyMapper;
+            this.setter = setter;
+        }
+    }
+
+    private static final class ResultSetColumnMappers {
+
+        // Don't hold on closed result sets
+        private final WeakReference<ResultSet> resultSet;
+        private final ColumnMapper[] columnMappers;
+
+        private ResultSetColumnMappers(final ResultSet resultSet, final ColumnMapper[] columnMappers) {
+            this.resultSet = new WeakReference<ResultSet>(resultSet);
+            this.columnMappers = columnMappers;
+        }
     }
 
     protected interface PropertyMapper<ResultSet, T> {
@@ -27,6 +27,9 @@ public class LowerToCamelBeanMapperFactory implements ResultSetMapperFactory {
 
     private final Class<?> modelClazz;
 
+    // The mapper is thread safe and caches its mapping plans: share it across statements
+    private volatile ResultSetMapper mapper;
+
     public LowerToCamelBeanMapperFactory(final Class<?> modelClazz) {
         this.modelClazz = modelClazz;
     }
@@ -39,6 +42,11 @@ public class LowerToCamelBeanMapperFactory implements ResultSetMapperFactory {
     @SuppressWarnings("unchecked")
     @Override
     public ResultSetMapper mapperFor(final Class type, final StatementContext ctx) {
-        return new LowerToCamelBeanMapper(type);
+        ResultSetMapper result = mapper;
+        if (result == null) {
+            result = new LowerToCamelBeanMapper(type);
+            mapper = result;
+        }
+        return result;
     }
 }
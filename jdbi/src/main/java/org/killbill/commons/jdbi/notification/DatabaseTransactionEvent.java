@@ -21,6 +21,10 @@ package org.killbill.commons.jdbi.notification;
 
 public class DatabaseTransactionEvent {
 
+    // Events are immutable, no need to allocate one per transaction
+    public static final DatabaseTransactionEvent COMMIT = new DatabaseTransactionEvent(DatabaseTransactionEventType.COMMIT);
+    public static final DatabaseTransactionEvent ROLLBACK = new DatabaseTransactionEvent(DatabaseTransactionEventType.ROLLBACK);
+
     private final DatabaseTransactionEventType type;
 
     public DatabaseTransactionEvent(final DatabaseTransactionEventType type) {
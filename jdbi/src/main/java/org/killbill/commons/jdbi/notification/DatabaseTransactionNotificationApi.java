@@ -19,26 +19,107 @@
 
 package org.killbill.commons.jdbi.notification;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.eventbus.EventBus;
 
+//
+// Listeners are either:
+// - registered for all transactions (registerForNotification)
+// - or enlisted for the transaction in progress on the current thread only (enlistInCurrentTransaction), so that
+//   a commit doesn't invoke listeners not involved in that transaction
+//
+// DatabaseTransactionListener instances are invoked directly. Other listeners (@Subscribe annotated methods) still go through a Guava EventBus.
+// Like with the EventBus, a failing listener is logged and doesn't prevent the other ones from being notified.
+//
 public class DatabaseTransactionNotificationApi {
 
+    private static final Logger log = LoggerFactory.getLogger(DatabaseTransactionNotificationApi.class);
+
+    private final List<DatabaseTransactionListener> listeners = new CopyOnWriteArrayList<DatabaseTransactionListener>();
+    private final ThreadLocal<List<DatabaseTransactionListener>> enlistedListeners = new ThreadLocal<List<DatabaseTransactionListener>>() {
+        @Override
+        protected List<DatabaseTransactionListener> initialValue() {
+            return new ArrayList<DatabaseTransactionListener>(2);
+        }
+    };
 
     private final EventBus eventBus;
+    private volatile int nbEventBusListeners;
 
     public DatabaseTransactionNotificationApi() {
         this.eventBus = new EventBus(this.getClass().getName());
+        this.nbEventBusListeners = 0;
     }
 
     public void registerForNotification(final Object listener) {
-        eventBus.register(listener);
+        if (listener instanceof DatabaseTransactionListener) {
+            listeners.add((DatabaseTransactionListener) listener);
+        } else {
+            synchronized (eventBus) {
+                eventBus.register(listener);
+                nbEventBusListeners++;
+            }
+        }
     }
 
     public void unregisterForNotification(final Object listener) {
-        eventBus.unregister(listener);
+        if (listener instanceof DatabaseTransactionListener) {
+            listeners.remove(listener);
+        } else {
+            synchronized (eventBus) {
+                eventBus.unregister(listener);
+                nbEventBusListeners--;
+            }
+        }
+    }
+
+    /**
+     * Notify the listener of the outcome of the transaction in progress on the current thread (once).
+     *
+     * @param listener the listener
+     */
+    public void enlistInCurrentTransaction(final DatabaseTransactionListener listener) {
+        final List<DatabaseTransactionListener> enlisted = enlistedListeners.get();
+        for (int i = 0; i < enlisted.size(); i++) {
+            if (enlisted.get(i) == listener) {
+                return;
+            }
+        }
+        enlisted.add(listener);
     }
 
     public void dispatchNotification(final DatabaseTransactionEvent event) {
-        eventBus.post(event);
+        final List<DatabaseTransactionListener> enlisted = enlistedListeners.get();
+        if (!enlisted.isEmpty()) {
+            try {
+                for (int i = 0; i < enlisted.size(); i++) {
+                    notifyListener(enlisted.get(i), event);
+                }
+            } finally {
+                enlisted.clear();
+            }
+        }
+
+        for (final DatabaseTransactionListener listener : listeners) {
+            notifyListener(listener, event);
+        }
+
+        if (nbEventBusListeners > 0) {
+            eventBus.post(event);
+        }
+    }
+
+    private void notifyListener(final DatabaseTransactionListener listener, final DatabaseTransactionEvent event) {
+        try {
+            listener.handleDatabaseTransactionEvent(event);
+        } catch (final RuntimeException e) {
+            log.warn("Listener {} failed to handle event {}", listener, event.getType(), e);
+        }
     }
 }
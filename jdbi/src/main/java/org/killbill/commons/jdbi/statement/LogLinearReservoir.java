@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.jdbi.statement;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * Lock-free reservoir, in the spirit of HdrHistogram: values are counted in log-linear buckets (a power of two range is
+ * split in 16 sub-buckets), so that quantiles are reported with a relative error of about 3%, using a fixed amount of
+ * memory whatever the number of values recorded.
+ * <p>
+ * The snapshot covers the current and the previous interval (one minute by default), so that old values are
+ * eventually forgotten.
+ */
+public class LogLinearReservoir implements Reservoir {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS are counted exactly, then one set of sub-buckets per power of two
+    private static final int NB_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long intervalNanos;
+    private final AtomicReference<Interval> current;
+    private volatile Interval previous;
+
+    public LogLinearReservoir() {
+        this(1, TimeUnit.MINUTES);
+    }
+
+    public LogLinearReservoir(final long interval, final TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+        this.current = new AtomicReference<Interval>(new Interval(System.nanoTime()));
+        this.previous = new Interval(System.nanoTime());
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(final long value) {
+        currentInterval().counts.incrementAndGet(bucketIndex(value));
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        final Interval currentInterval = currentInterval();
+        final Interval previousInterval = previous;
+
+        final long[] counts = new long[NB_BUCKETS];
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            counts[i] = currentInterval.counts.get(i) + previousInterval.counts.get(i);
+        }
+        return new LogLinearSnapshot(counts);
+    }
+
+    private Interval currentInterval() {
+        final Interval interval = current.get();
+        final long now = System.nanoTime();
+        if (now - interval.startNanos < intervalNanos) {
+            return interval;
+        }
+
+        final Interval newInterval = new Interval(now);
+        if (current.compareAndSet(interval, newInterval)) {
+            // Values recorded in the previous interval are dropped if more than one interval elapsed
+            previous = now - interval.startNanos < 2 * intervalNanos ? interval : new Interval(now);
+            return newInterval;
+        } else {
+            // Another thread rotated the intervals
+            return current.get();
+        }
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Middle of the bucket range
+    static long bucketValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowerBound = ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+        return lowerBound + ((1L << shift) >>> 1);
+    }
+
+    private static final class Interval {
+
+        private final long startNanos;
+        private final AtomicLongArray counts;
+
+        private Interval(final long startNanos) {
+            this.startNanos = startNanos;
+            this.counts = new AtomicLongArray(NB_BUCKETS);
+        }
+    }
+
+    private static final class LogLinearSnapshot extends Snapshot {
+
+        private final long[] counts;
+        private final long size;
+
+        private LogLinearSnapshot(final long[] counts) {
+            this.counts = counts;
+            long size = 0;
+            for (final long count : counts) {
+                size += count;
+            }
+            this.size = size;
+        }
+
+        @Override
+        public double getValue(final double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (size == 0) {
+                return 0.0;
+            }
+
+            // Rank of the value, 1-based
+            final long rank = Math.max(1, (long) Math.ceil(quantile * size));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketValue(i);
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * @return the distinct (approximated) values recorded, as the individual values aren't kept
+         */
+        @Override
+        public long[] getValues() {
+            int nbValues = 0;
+            for (final long count : counts) {
+                if (count > 0) {
+                    nbValues++;
+                }
+            }
+
+            final long[] values = new long[nbValues];
+            int j = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    values[j++] = bucketValue(i);
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+
+        @Override
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return bucketValue(i);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public double getMean() {
+            if (size == 0) {
+                return 0.0;
+            }
+
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * bucketValue(i);
+            }
+            return sum / size;
+        }
+
+        @Override
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return bucketValue(i);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (size <= 1) {
+                return 0.0;
+            }
+
+            final double mean = getMean();
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                final double diff = bucketValue(i) - mean;
+                sum += counts[i] * diff * diff;
+            }
+            return Math.sqrt(sum / (size - 1));
+        }
+
+        @Override
+        public void dump(final OutputStream output) {
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            try {
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        out.printf("%d %d%n", bucketValue(i), counts[i]);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.jdbi.statement;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.skife.jdbi.v2.Cleanable;
+import org.skife.jdbi.v2.ConcreteStatementContext;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * TimingCollector recording, for each SqlObject method (e.g. org.killbill.bus.dao.PersistentBusSqlDao.insertEntry),
+ * the execution time, the time spent binding the arguments and the number of rows read.
+ * <p>
+ * Statements which aren't run through a SqlObject are grouped under their name when looked up by name, and under
+ * {@code unnamed} otherwise (the raw SQL isn't used, to bound the number of metrics).
+ * <p>
+ * Metrics are backed by {@link LogLinearReservoir} instances and registered on first use. The statistics of the SQL caches
+ * (see {@link SqlCacheMetrics}) are registered as well.
+ */
+public class MetricsTimingCollector implements TimingCollector {
+
+    private static final String UNNAMED = "unnamed";
+
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, StatementMetrics>> sqlObjectsMetrics = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, StatementMetrics>>();
+    private final ConcurrentMap<String, StatementMetrics> namedStatementsMetrics = new ConcurrentHashMap<String, StatementMetrics>();
+
+    public MetricsTimingCollector(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        SqlCacheMetrics.register(metricRegistry);
+    }
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx) {
+        final StatementMetrics statementMetrics = getStatementMetrics(ctx);
+        statementMetrics.executionTime.update(elapsedTime, TimeUnit.NANOSECONDS);
+
+        if (ctx instanceof ConcreteStatementContext) {
+            final ConcreteStatementContext concreteStatementContext = (ConcreteStatementContext) ctx;
+            statementMetrics.bindingTime.update(concreteStatementContext.getBindingTime(), TimeUnit.NANOSECONDS);
+
+            // Rows are only known once the result set has been read
+            ctx.addCleanable(new Cleanable() {
+                @Override
+                public void cleanup() {
+                    final long nbRows = concreteStatementContext.getNbRows();
+                    if (nbRows >= 0) {
+                        statementMetrics.rows.update(nbRows);
+                    }
+                }
+            });
+        }
+    }
+
+    private StatementMetrics getStatementMetrics(final StatementContext ctx) {
+        final Class<?> sqlObjectType = ctx.getSqlObjectType();
+        final Method sqlObjectMethod = ctx.getSqlObjectMethod();
+        if (sqlObjectType != null && sqlObjectMethod != null) {
+            ConcurrentMap<Method, StatementMetrics> sqlObjectMetrics = sqlObjectsMetrics.get(sqlObjectType);
+            if (sqlObjectMetrics == null) {
+                sqlObjectsMetrics.putIfAbsent(sqlObjectType, new ConcurrentHashMap<Method, StatementMetrics>());
+                sqlObjectMetrics = sqlObjectsMetrics.get(sqlObjectType);
+            }
+
+            StatementMetrics statementMetrics = sqlObjectMetrics.get(sqlObjectMethod);
+            if (statementMetrics == null) {
+                sqlObjectMetrics.putIfAbsent(sqlObjectMethod, new StatementMetrics(MetricRegistry.name(sqlObjectType, sqlObjectMethod.getName())));
+                statementMetrics = sqlObjectMetrics.get(sqlObjectMethod);
+            }
+            return statementMetrics;
+        }
+
+        final String rawSql = ctx.getRawSql();
+        // Statements located by name (no whitespace) vs inline SQL
+        final String name = rawSql != null && !rawSql.isEmpty() && rawSql.indexOf(' ') < 0 && rawSql.indexOf('\n') < 0 ? rawSql : UNNAMED;
+        StatementMetrics statementMetrics = namedStatementsMetrics.get(name);
+        if (statementMetrics == null) {
+            namedStatementsMetrics.putIfAbsent(name, new StatementMetrics(MetricRegistry.name(MetricsTimingCollector.class, name)));
+            statementMetrics = namedStatementsMetrics.get(name);
+        }
+        return statementMetrics;
+    }
+
+    private final class StatementMetrics {
+
+        private final Timer executionTime;
+        private final Timer bindingTime;
+        private final Histogram rows;
+
+        private StatementMetrics(final String name) {
+            this.executionTime = timer(MetricRegistry.name(name, "executionTime"));
+            this.bindingTime = timer(MetricRegistry.name(name, "bindingTime"));
+            this.rows = histogram(MetricRegistry.name(name, "rows"));
+        }
+
+        private Timer timer(final String name) {
+            synchronized (metricRegistry) {
+                final Timer existing = metricRegistry.getTimers().get(name);
+                return existing != null ? existing : metricRegistry.register(name, new Timer(new LogLinearReservoir()));
+            }
+        }
+
+        private Histogram histogram(final String name) {
+            synchronized (metricRegistry) {
+                final Histogram existing = metricRegistry.getHistograms().get(name);
+                return existing != null ? existing : metricRegistry.register(name, new Histogram(new LogLinearReservoir()));
+            }
+        }
+    }
+}
@@ -45,7 +45,7 @@ public @interface SmartFetchSize {
 
     int value() default 0;
 
-    // Override value
+    // Override value on MySQL (rows are then streamed one by one). Other engines use value as the streaming batch size.
     boolean shouldStream() default false;
 
     static class Factory implements SqlStatementCustomizerFactory {
@@ -113,8 +113,9 @@ public @interface SmartFetchSize {
                         stmt.setFetchSize(0);
                     }
                 } else {
-                    // Other engines (H2, PostgreSQL, etc.)
-                    stmt.setFetchSize(0);
+                    // Other engines (H2, PostgreSQL, etc.): PostgreSQL only uses a cursor (i.e. fetches the rows
+                    // by batches of fetchSize rather than all at once) when the connection isn't in auto-commit mode
+                    stmt.setFetchSize(fetchSize);
                 }
             } else {
                 stmt.setFetchSize(fetchSize);
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.commons.jdbi.statement;
+
+import org.killbill.commons.jdbi.ReusableStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.ColonPrefixNamedParamStatementRewriter;
+import org.skife.jdbi.v2.HashPrefixStatementRewriter;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.ST4StatementLocator;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Exposes the statistics of the SQL caches (see {@link WeightedSqlCaches}) of the statement rewriters and locators,
+ * aggregated across all instances.
+ * <p>
+ * Kept separate from the caches, as the metrics library is an optional dependency.
+ */
+public final class SqlCacheMetrics {
+
+    private SqlCacheMetrics() {}
+
+    /**
+     * Register the gauges (no-op if they have already been registered against that registry).
+     *
+     * @param metricRegistry the Dropwizard MetricRegistry
+     */
+    public static void register(final MetricRegistry metricRegistry) {
+        synchronized (metricRegistry) {
+            if (metricRegistry.getNames().contains(MetricRegistry.name(ColonPrefixNamedParamStatementRewriter.class, "parsedStatementCache", "hits"))) {
+                return;
+            }
+
+            register(metricRegistry, MetricRegistry.name(ColonPrefixNamedParamStatementRewriter.class, "parsedStatementCache"), ColonPrefixNamedParamStatementRewriter.getParsedStatementCaches());
+            register(metricRegistry, MetricRegistry.name(HashPrefixStatementRewriter.class, "parsedStatementCache"), HashPrefixStatementRewriter.getParsedStatementCaches());
+            register(metricRegistry, MetricRegistry.name(ST4StatementLocator.class, "locatedSqlCache"), ST4StatementLocator.getLocatedSqlCaches());
+            register(metricRegistry, MetricRegistry.name(ReusableStringTemplate3StatementLocator.class, "renderedSqlCache"), ReusableStringTemplate3StatementLocator.getRenderedSqlCaches());
+
+            metricRegistry.register(MetricRegistry.name(ST4StatementLocator.class, "locatedSqlCache", "bypasses"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return ST4StatementLocator.getLocatedSqlCacheBypasses();
+                }
+            });
+        }
+    }
+
+    private static void register(final MetricRegistry metricRegistry, final String name, final WeightedSqlCaches<?> caches) {
+        metricRegistry.register(MetricRegistry.name(name, "hits"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return caches.stats().hitCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(name, "misses"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return caches.stats().missCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(name, "evictions"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return caches.stats().evictionCount();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(name, "size"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return caches.size();
+            }
+        });
+    }
+}
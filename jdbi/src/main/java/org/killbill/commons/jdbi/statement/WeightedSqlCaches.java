@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.commons.jdbi.statement;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Family of SQL caches (e.g. the parsed statements of all the colon prefix rewriters), keyed by a SQL string or a template key.
+ * <p>
+ * Each cache is bounded by the rough size (in bytes) of its keys and SQL values, so that long generated statements
+ * don't pin memory. The statistics are aggregated across all the live caches of the family.
+ *
+ * @param <V> the cached value type
+ */
+public final class WeightedSqlCaches<V> {
+
+    private static final long DEFAULT_MAX_WEIGHT = 1024 * 1024;
+
+    private final long defaultMaxWeight;
+    private final Weigher<String, V> weigher;
+    // Weak keys: the caches are owned by their rewriter or locator
+    private final Set<Cache<String, V>> caches = Collections.newSetFromMap(new MapMaker().weakKeys().<Cache<String, V>, Boolean>makeMap());
+
+    /**
+     * @param maxWeightProperty system property overriding the default maximum weight of each cache (1MB)
+     * @param toSql             SQL of a cached value, to weigh it (null values weigh nothing)
+     */
+    public WeightedSqlCaches(final String maxWeightProperty, final Function<V, String> toSql) {
+        this.defaultMaxWeight = Long.parseLong(System.getProperty(maxWeightProperty, String.valueOf(DEFAULT_MAX_WEIGHT)));
+        this.weigher = new Weigher<String, V>() {
+            @Override
+            public int weigh(final String key, final V value) {
+                // Rough size of the key and SQL, in bytes
+                final String sql = toSql.apply(value);
+                return 2 * (key.length() + (sql == null ? 0 : sql.length()));
+            }
+        };
+    }
+
+    public long getDefaultMaxWeight() {
+        return defaultMaxWeight;
+    }
+
+    public Cache<String, V> newCache() {
+        return newCache(defaultMaxWeight);
+    }
+
+    public Cache<String, V> newCache(final long maxWeight) {
+        final Cache<String, V> cache = CacheBuilder.newBuilder()
+                                                   .maximumWeight(maxWeight)
+                                                   .weigher(weigher)
+                                                   .recordStats()
+                                                   .build();
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * @return the statistics, aggregated across all caches
+     */
+    public CacheStats stats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (final Cache<String, V> cache : caches) {
+            stats = stats.plus(cache.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of entries, across all caches
+     */
+    public long size() {
+        long size = 0;
+        for (final Cache<String, V> cache : caches) {
+            size += cache.size();
+        }
+        return size;
+    }
+}
@@ -24,6 +24,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
@@ -45,6 +46,11 @@ public @interface KillBillSqlDaoStringTemplate {
 
     String value() default DEFAULT_VALUE;
 
+    /**
+     * Attributes with a high cardinality (the rendered statements won't be cached), see {@link ST4StatementLocator}.
+     */
+    String[] uncachedAttributes() default {};
+
     class KillBillSqlDaoStringTemplateFactory extends UseST4StatementLocator.LocatorFactory {
 
         static final boolean enableGroupTemplateCaching = Boolean.parseBoolean(System.getProperty("org.killbill.jdbi.allow.stringTemplateGroupCaching", "true"));
@@ -75,15 +81,16 @@ public @interface KillBillSqlDaoStringTemplate {
             return locatorPath;
         }
 
-        private StatementLocator getLocator(final String locatorPath) {
-            StatementLocator locator = locatorCache.get(locatorPath);
+        private StatementLocator getLocator(final String locatorPath, final String[] uncachedAttributes) {
+            final String locatorKey = uncachedAttributes.length == 0 ? locatorPath : locatorPath + Arrays.toString(uncachedAttributes);
+            StatementLocator locator = locatorCache.get(locatorKey);
             if (locator != null) {
                 return locator;
             }
 
-            locator = ST4StatementLocator.fromClasspath(UseSTGroupCache.YES, locatorPath);
+            locator = ST4StatementLocator.forURL(UseSTGroupCache.YES, ST4StatementLocator.class.getResource(locatorPath), Arrays.asList(uncachedAttributes));
             if (enableGroupTemplateCaching) {
-                locatorCache.put(locatorPath, locator);
+                locatorCache.put(locatorKey, locator);
             }
 
             return locator;
@@ -95,7 +102,7 @@ public @interface KillBillSqlDaoStringTemplate {
 
             final String locatorPath = DEFAULT_VALUE.equals(a.value()) ? mungify(sqlObjectType) : a.value();
 
-            final StatementLocator l = getLocator(locatorPath);
+            final StatementLocator l = getLocator(locatorPath, a.uncachedAttributes());
             return new SqlStatementCustomizer() {
                 @Override
                 public void apply(final SQLStatement statement) {
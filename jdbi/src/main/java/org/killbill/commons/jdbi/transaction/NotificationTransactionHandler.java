@@ -20,7 +20,6 @@
 package org.killbill.commons.jdbi.transaction;
 
 import org.killbill.commons.jdbi.notification.DatabaseTransactionEvent;
-import org.killbill.commons.jdbi.notification.DatabaseTransactionEventType;
 import org.killbill.commons.jdbi.notification.DatabaseTransactionNotificationApi;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.tweak.TransactionHandler;
@@ -45,12 +44,12 @@ public class NotificationTransactionHandler extends DelegatingTransactionHandler
 
     public void commit(final Handle handle) {
         getDelegate().commit(handle);
-        dispatchEvent(new DatabaseTransactionEvent(DatabaseTransactionEventType.COMMIT));
+        dispatchEvent(DatabaseTransactionEvent.COMMIT);
     }
 
     public void rollback(final Handle handle) {
         getDelegate().rollback(handle);
-        dispatchEvent(new DatabaseTransactionEvent(DatabaseTransactionEventType.ROLLBACK));
+        dispatchEvent(DatabaseTransactionEvent.ROLLBACK);
     }
 
     private void dispatchEvent(final DatabaseTransactionEvent event) {
@@ -42,6 +42,9 @@ public final class ConcreteStatementContext implements StatementContext
     private Class<?>          sqlObjectType;
     private Method            sqlObjectMethod;
     private boolean           returningGeneratedKeys;
+    // Only tracked when a TimingCollector is set
+    private long              bindingTime;
+    private long              nbRows = -1;
 
     ConcreteStatementContext(Map<String, Object> globalAttributes)
     {
@@ -217,6 +220,32 @@ public final class ConcreteStatementContext implements StatementContext
         return returningGeneratedKeys;
     }
 
+    public void setBindingTime(long bindingTime)
+    {
+        this.bindingTime = bindingTime;
+    }
+
+    /**
+     * @return the time spent binding the arguments, in nanoseconds (only tracked when a {@link TimingCollector} is set)
+     */
+    public long getBindingTime()
+    {
+        return bindingTime;
+    }
+
+    public void setNbRows(long nbRows)
+    {
+        this.nbRows = nbRows;
+    }
+
+    /**
+     * @return the number of rows read from the result set, or -1 if unknown (e.g. not a query)
+     */
+    public long getNbRows()
+    {
+        return nbRows;
+    }
+
     @Override
     public void addCleanable(Cleanable cleanable)
     {
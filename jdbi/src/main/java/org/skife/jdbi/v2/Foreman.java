@@ -44,8 +44,10 @@ class Foreman
 
     Argument waffle(Class expectedType, Object it, StatementContext ctx)
     {
-        if (cache.containsKey(expectedType)) {
-            return cache.get(expectedType).build(expectedType, it, ctx);
+        // [OPTIMIZATION] Single lookup on the hot path
+        final ArgumentFactory cached = cache.get(expectedType);
+        if (cached != null) {
+            return cached.build(expectedType, it, ctx);
         }
 
         ArgumentFactory candidate = null;
@@ -21,6 +21,7 @@ package org.skife.jdbi.v2;
 
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.Token;
+import org.killbill.commons.jdbi.statement.WeightedSqlCaches;
 import org.skife.jdbi.rewriter.hash.HashStatementLexer;
 import org.skife.jdbi.v2.exceptions.UnableToCreateStatementException;
 import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
@@ -31,10 +32,11 @@ import org.skife.jdbi.v2.tweak.StatementRewriter;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
 
 import static org.skife.jdbi.rewriter.hash.HashStatementLexer.DOUBLE_QUOTED_TEXT;
 import static org.skife.jdbi.rewriter.hash.HashStatementLexer.ESCAPED_TEXT;
@@ -48,7 +50,40 @@ import static org.skife.jdbi.rewriter.hash.HashStatementLexer.QUOTED_TEXT;
  */
 public class HashPrefixStatementRewriter implements StatementRewriter
 {
-    private final Map<String, ParsedStatement> cache = Collections.synchronizedMap(new WeakHashMap<String, ParsedStatement>());
+    private static final Function<ParsedStatement, String> PARSED_SQL = new Function<ParsedStatement, String>() {
+        @Override
+        public String apply(final ParsedStatement parsedStatement) {
+            return parsedStatement.getParsedSql();
+        }
+    };
+
+    // Parsed statements caches of all rewriters (1MB per rewriter by default)
+    private static final WeightedSqlCaches<ParsedStatement> PARSED_STATEMENT_CACHES = new WeightedSqlCaches<ParsedStatement>("org.killbill.jdbi.hashRewriter.parsedStatementCache.maxWeight", PARSED_SQL);
+
+    // Strong keys on purpose: the SQL strings are usually rendered on the fly and would otherwise be collected right away
+    @VisibleForTesting
+    final Cache<String, ParsedStatement> cache;
+
+    public HashPrefixStatementRewriter()
+    {
+        this(PARSED_STATEMENT_CACHES.getDefaultMaxWeight());
+    }
+
+    /**
+     * @param parsedStatementCacheMaxWeight upper bound (in bytes, approximately) of the parsed statements cache
+     */
+    public HashPrefixStatementRewriter(final long parsedStatementCacheMaxWeight)
+    {
+        this.cache = PARSED_STATEMENT_CACHES.newCache(parsedStatementCacheMaxWeight);
+    }
+
+    /**
+     * @return the parsed statements caches of all rewriters
+     */
+    public static WeightedSqlCaches<?> getParsedStatementCaches()
+    {
+        return PARSED_STATEMENT_CACHES;
+    }
 
     /**
      * Munge up the SQL as desired. Responsible for figuring out ow to bind any
@@ -64,7 +99,7 @@ public class HashPrefixStatementRewriter implements StatementRewriter
     @Override
     public RewrittenStatement rewrite(String sql, Binding params, StatementContext ctx)
     {
-        ParsedStatement stmt = cache.get(sql);
+        ParsedStatement stmt = cache.getIfPresent(sql);
         if (stmt == null) {
             try {
                 stmt = parseString(sql);
@@ -161,10 +161,15 @@ public class PreparedBatch extends SQLStatement<PreparedBatch>
 
 
             try {
+                final boolean isTimed = getTimingCollector() != TimingCollector.NOP_TIMING_COLLECTOR;
+                final long startBinding = isTimed ? System.nanoTime() : 0;
                 for (PreparedBatchPart part : parts) {
                     rewritten.bind(part.getParams(), stmt);
                     stmt.addBatch();
                 }
+                if (isTimed) {
+                    getConcreteContext().setBindingTime(System.nanoTime() - startBinding);
+                }
             }
             catch (SQLException e) {
                 throw new UnableToExecuteStatementException("Exception while binding parameters", e, getContext());
@@ -125,6 +125,7 @@ public class Query<ResultType> extends SQLStatement<Query<ResultType>> implement
                     while (rs.next() && index < maxRows) {
                         result_list.add(mapper.map(index++, rs, getContext()));
                     }
+                    getConcreteContext().setNbRows(index);
                     return result_list;
                 }
             }, null);
@@ -157,9 +158,12 @@ public class Query<ResultType> extends SQLStatement<Query<ResultType>> implement
                 @Override
                 public Void munge(ResultSet rs) throws SQLException
                 {
+                    int nbRows = 0;
                     while (rs.next()) {
                         acc.set(folder.fold(acc.get(), rs, getContext()));
+                        nbRows++;
                     }
+                    getConcreteContext().setNbRows(nbRows);
                     return null;
                 }
             }, null);
@@ -187,6 +191,7 @@ public class Query<ResultType> extends SQLStatement<Query<ResultType>> implement
                         ResultType row_value = mapper.map(idx++, rs, getContext());
                         this.ac = folder.fold(ac, row_value, ctl, getContext());
                     }
+                    getConcreteContext().setNbRows(idx);
                     return ac;
                 }
             }, null);
@@ -221,9 +226,12 @@ public class Query<ResultType> extends SQLStatement<Query<ResultType>> implement
                 @Override
                 public Void munge(ResultSet rs) throws SQLException
                 {
+                    int nbRows = 0;
                     while (rs.next()) {
                         acc.set(folder.fold(acc.get(), rs));
+                        nbRows++;
                     }
+                    getConcreteContext().setNbRows(nbRows);
                     return null;
                 }
             }, null);
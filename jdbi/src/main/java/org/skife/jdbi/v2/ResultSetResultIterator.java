@@ -59,6 +59,7 @@ class ResultSetResultIterator<Type> implements ResultIterator<Type>
             return;
         }
         closed = true;
+        jdbiStatement.getConcreteContext().setNbRows(count);
         jdbiStatement.cleanup();
     }
 
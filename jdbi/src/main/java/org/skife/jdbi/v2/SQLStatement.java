@@ -1230,6 +1230,20 @@ public abstract class SQLStatement<SelfType extends SQLStatement<SelfType>> exte
         return bind(name, getForeman().waffle(argumentClass, value, getContext()));
     }
 
+    /**
+     * Build the argument for a value by the class passed in, as {@link #dynamicBind(Class, String, Object)} would
+     * (useful for lazy {@link NamedArgumentFinder} implementations).
+     *
+     * @param argumentClass the class to lookup the argument factory for
+     * @param value         the value
+     *
+     * @return the argument
+     */
+    public final Argument toArgument(Class<?> argumentClass, Object value)
+    {
+        return getForeman().waffle(argumentClass, value, getContext());
+    }
+
     /**
      * Bind NULL to be set for a given argument.
      *
@@ -1320,8 +1334,13 @@ public abstract class SQLStatement<SelfType extends SQLStatement<SelfType>> exte
 
         getConcreteContext().setStatement(stmt);
 
+        final boolean isTimed = timingCollector != TimingCollector.NOP_TIMING_COLLECTOR;
         try {
+            final long startBinding = isTimed ? System.nanoTime() : 0;
             rewritten.bind(getParameters(), stmt);
+            if (isTimed) {
+                getConcreteContext().setBindingTime(System.nanoTime() - startBinding);
+            }
         }
         catch (SQLException e) {
             throw new UnableToExecuteStatementException("Unable to bind parameters to query", e, getContext());
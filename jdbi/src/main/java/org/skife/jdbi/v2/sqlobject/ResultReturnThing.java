@@ -33,6 +33,7 @@ import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 abstract class ResultReturnThing
 {
@@ -152,6 +153,9 @@ abstract class ResultReturnThing
 
     static class IteratorResultReturnThing extends ResultReturnThing
     {
+        // Each open iterator retains the handle under its own name, so that closing one doesn't release the handle under another
+        private static final AtomicLong ITERATOR_IDS = new AtomicLong();
+
         private final ResolvedType resolvedType;
 
         public IteratorResultReturnThing(ResolvedMethod method)
@@ -167,11 +171,12 @@ abstract class ResultReturnThing
         {
             final ResultIterator itty = q.iterator();
 
+            final String retentionName = "iterator-" + ITERATOR_IDS.incrementAndGet();
             final boolean isEmpty = !itty.hasNext();
             if (isEmpty) {
                 itty.close();
             } else {
-                baton.retain("iterator");
+                baton.retain(retentionName);
             }
 
             return new ResultIterator()
@@ -188,7 +193,7 @@ abstract class ResultReturnThing
                             itty.close();
                         }
                         finally {
-                            baton.release("iterator");
+                            baton.release(retentionName);
                         }
                     }
                 }
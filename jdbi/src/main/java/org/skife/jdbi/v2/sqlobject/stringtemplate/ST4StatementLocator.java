@@ -22,11 +22,15 @@ package org.skife.jdbi.v2.sqlobject.stringtemplate;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.killbill.commons.jdbi.statement.WeightedSqlCaches;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.slf4j.Logger;
@@ -41,6 +45,9 @@ import org.stringtemplate.v4.misc.STMessage;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableSet;
 
 public class ST4StatementLocator implements StatementLocator {
 
@@ -51,13 +58,49 @@ public class ST4StatementLocator implements StatementLocator {
     private static final Map<String, STGroup> CACHE = new ConcurrentHashMap<String, STGroup>();
     private static final String COMPOSITE_KEY_SEPARATOR = "___#___";
 
+    // Located SQL caches of all locators (1MB per locator by default)
+    private static final WeightedSqlCaches<String> LOCATED_SQL_CACHES = new WeightedSqlCaches<String>("org.killbill.jdbi.st4.locatedSqlCache.maxWeight", Functions.<String>identity());
+
+    // Statements rendered without looking at the cache (uncached or too many attributes), across all locators
+    private static final AtomicLong NB_BYPASSES = new AtomicLong();
+
     @VisibleForTesting
-    final Map<String, String> locatedSqlCache = new ConcurrentHashMap<String, String>();
+    final Cache<String, String> locatedSqlCache;
 
     private final STGroup group;
+    private final Set<String> uncachedAttributes;
 
     public ST4StatementLocator(final STGroup group) {
+        this(group, ImmutableSet.<String>of());
+    }
+
+    /**
+     * @param group              the template group
+     * @param uncachedAttributes attributes whose values have a high cardinality: statements defining any of them are always
+     *                           rendered and never cached
+     */
+    public ST4StatementLocator(final STGroup group, final Collection<String> uncachedAttributes) {
+        this(group, uncachedAttributes, LOCATED_SQL_CACHES.getDefaultMaxWeight());
+    }
+
+    public ST4StatementLocator(final STGroup group, final Collection<String> uncachedAttributes, final long locatedSqlCacheMaxWeight) {
         this.group = group;
+        this.uncachedAttributes = ImmutableSet.<String>copyOf(uncachedAttributes);
+        this.locatedSqlCache = LOCATED_SQL_CACHES.newCache(locatedSqlCacheMaxWeight);
+    }
+
+    /**
+     * @return the located SQL caches of all locators
+     */
+    public static WeightedSqlCaches<String> getLocatedSqlCaches() {
+        return LOCATED_SQL_CACHES;
+    }
+
+    /**
+     * @return the number of statements rendered without looking at the cache (uncached or too many attributes), across all locators
+     */
+    public static long getLocatedSqlCacheBypasses() {
+        return NB_BYPASSES.get();
     }
 
     /**
@@ -105,6 +148,14 @@ public class ST4StatementLocator implements StatementLocator {
     }
 
     public static StatementLocator forURL(final UseSTGroupCache useCache, final URL url) {
+        return forURL(useCache, url, ImmutableSet.<String>of());
+    }
+
+    /**
+     * Obtains a locator based on a URL. Statements defining any of the uncachedAttributes are always rendered (see
+     * {@link #ST4StatementLocator(STGroup, Collection)}).
+     */
+    public static StatementLocator forURL(final UseSTGroupCache useCache, final URL url, final Collection<String> uncachedAttributes) {
         final STGroup stg;
         if (useCache == UseSTGroupCache.YES) {
             stg = computeIfAbsent(CACHE, url.toString(), new Function<String, STGroup>() {
@@ -117,7 +168,7 @@ public class ST4StatementLocator implements StatementLocator {
             stg = urlToSTGroup(url.toString());
         }
 
-        return new ST4StatementLocator(stg);
+        return new ST4StatementLocator(stg, uncachedAttributes);
     }
 
     /**
@@ -245,18 +296,22 @@ public class ST4StatementLocator implements StatementLocator {
             return locateFromCache(name, name, ctx);
         } else {
             final Entry<String, Object> attribute1 = entryIterator.next();
-            if (!entryIterator.hasNext()) {
+            if (uncachedAttributes.contains(attribute1.getKey())) {
+                return bypassCache(name, ctx);
+            } else if (!entryIterator.hasNext()) {
                 final String compositeKey = buildCompositeCacheKey(name, attribute1);
                 return locateFromCache(compositeKey, name, ctx);
             } else {
                 final Entry<String, Object> attribute2 = entryIterator.next();
-                if (!entryIterator.hasNext()) {
+                if (uncachedAttributes.contains(attribute2.getKey())) {
+                    return bypassCache(name, ctx);
+                } else if (!entryIterator.hasNext()) {
                     // 2 attributes defined -- worth optimizing as it is heavily used for queue queries
                     final String compositeKey = buildCompositeCacheKey(name, attribute1, attribute2);
                     return locateFromCache(compositeKey, name, ctx);
                 } else {
                     // Too many attributes are defined, don't cache it
-                    return locateAndRender(name, ctx);
+                    return bypassCache(name, ctx);
                 }
             }
         }
@@ -275,21 +330,25 @@ public class ST4StatementLocator implements StatementLocator {
     }
 
     private String locateFromCache(final String cacheKey, final String name, final StatementContext ctx) {
-        String locatedSql = locatedSqlCache.get(cacheKey);
+        String locatedSql = locatedSqlCache.getIfPresent(cacheKey);
         if (locatedSql != null) {
             return locatedSql;
         } else {
             locatedSql = locateAndRender(name, ctx);
-            // Make sure the cache is bounded in case of lots of various attributes defined (shouldn't happen in Kill Bill though)
+            // The cache is bounded by weight, in case of lots of various attributes defined (shouldn't happen in Kill Bill though).
             // Note that when defining collections for instance, you must define a collection value that is not tied to the
             // values eventually bound (e.g. query.define("record_ids", ids)), instead define a collection of generic Strings (see @BindIn and TestST4StatementLocator)
-            if (locatedSqlCache.size() < 500) {
-                locatedSqlCache.put(cacheKey, locatedSql);
-            }
+            // or mark the attribute as uncached
+            locatedSqlCache.put(cacheKey, locatedSql);
             return locatedSql;
         }
     }
 
+    private String bypassCache(final String name, final StatementContext ctx) {
+        NB_BYPASSES.incrementAndGet();
+        return locateAndRender(name, ctx);
+    }
+
     private String locateAndRender(final String name, final StatementContext ctx) {
         ST st = this.group.getInstanceOf(name);
         if (st == null) {
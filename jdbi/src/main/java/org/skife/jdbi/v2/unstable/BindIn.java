@@ -44,6 +44,13 @@ public @interface BindIn
 {
     String value();
 
+    /**
+     * When true, the number of placeholders is rounded up to the next power of two (the extra placeholders are bound to
+     * the last value of the collection, which doesn't change the semantic of an IN clause). This way, a small fixed set
+     * of statements covers all collection sizes, which keeps statement caches (driver, server-side prepared statements, ...) effective.
+     */
+    boolean padToPowerOfTwo() default false;
+
     public static final class CustomizerFactory implements SqlStatementCustomizerFactory
     {
 
@@ -69,7 +76,8 @@ public @interface BindIn
             BindIn in = (BindIn) annotation;
             final String key = in.value();
             final List<String> ids = new ArrayList<String>();
-            for (int idx = 0; idx < coll.size(); idx++) {
+            final int nbPlaceholders = getNbPlaceholders(coll.size(), in.padToPowerOfTwo());
+            for (int idx = 0; idx < nbPlaceholders; idx++) {
                 ids.add("__" + key + "_" + idx);
             }
 
@@ -91,6 +99,14 @@ public @interface BindIn
                 }
             };
         }
+
+        static int getNbPlaceholders(final int size, final boolean padToPowerOfTwo)
+        {
+            if (!padToPowerOfTwo || size <= 1) {
+                return size;
+            }
+            return Integer.highestOneBit(size - 1) << 1;
+        }
     }
 
     public static class BindingFactory implements BinderFactory
@@ -100,6 +116,7 @@ public @interface BindIn
         {
             final BindIn in = (BindIn) annotation;
             final String key = in.value();
+            final boolean padToPowerOfTwo = in.padToPowerOfTwo();
 
             return new Binder()
             {
@@ -109,8 +126,17 @@ public @interface BindIn
                 {
                     Iterable<?> coll = (Iterable<?>) arg;
                     int idx = 0;
+                    Object last = null;
                     for (Object s : coll) {
                         q.bind("__" + key + "_" + idx++, s);
+                        last = s;
+                    }
+
+                    if (padToPowerOfTwo && idx > 0) {
+                        final int nbPlaceholders = CustomizerFactory.getNbPlaceholders(idx, true);
+                        while (idx < nbPlaceholders) {
+                            q.bind("__" + key + "_" + idx++, last);
+                        }
                     }
                 }
             };
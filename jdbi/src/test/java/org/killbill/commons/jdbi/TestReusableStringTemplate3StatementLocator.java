@@ -20,15 +20,31 @@
 package org.killbill.commons.jdbi;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.TestingStatementContext;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableMap;
+
 public class TestReusableStringTemplate3StatementLocator extends JDBITestBase {
 
+    private static final Logger logger = LoggerFactory.getLogger(TestReusableStringTemplate3StatementLocator.class);
+
     private static final String TABLE_NAME = "something";
 
     @BeforeMethod(groups = "slow")
@@ -59,6 +75,76 @@ public class TestReusableStringTemplate3StatementLocator extends JDBITestBase {
         somethingLiteralSqlDao.delete(TABLE_NAME);
     }
 
+    @Test(groups = "fast")
+    public void testConcurrentLocate() throws Exception {
+        final ReusableStringTemplate3StatementLocator locator = new ReusableStringTemplate3StatementLocator("/org/killbill/commons/jdbi/SomethingNonLiteralSqlDao.sql.stg", true, true);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 8; i++) {
+                final int threadNb = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 1000; j++) {
+                            final String tableName = "table_" + threadNb + "_" + (j % 10);
+                            Assert.assertEquals(locator.locate("delete", new TestingStatementContext(ImmutableMap.<String, Object>of("tableName", tableName))).trim(),
+                                                "delete from " + tableName + ";");
+                            Assert.assertEquals(locator.locate("select * from <tableName>", new TestingStatementContext(ImmutableMap.<String, Object>of("tableName", tableName))),
+                                                "select * from " + tableName);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 8 threads * 10 table names * 2 statements
+        Assert.assertEquals(locator.renderedSqlCache.size(), 160);
+    }
+
+    // Throughput of locate, from 1 to 32 threads
+    @Test(groups = "load", enabled = false)
+    public void testLocateThroughput() throws Exception {
+        final StatementLocator locator = new ReusableStringTemplate3StatementLocator("/org/killbill/commons/jdbi/SomethingNonLiteralSqlDao.sql.stg", true, true);
+        final int nbLocatesPerThread = 1000000;
+
+        for (int nbThreads = 1; nbThreads <= 32; nbThreads *= 2) {
+            final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+            try {
+                final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (int i = 0; i < nbThreads; i++) {
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            final TestingStatementContext ctx = new TestingStatementContext(ImmutableMap.<String, Object>of("tableName", TABLE_NAME));
+                            for (int j = 0; j < nbLocatesPerThread; j++) {
+                                locator.locate("delete", ctx);
+                            }
+                            return null;
+                        }
+                    });
+                }
+
+                final long startNanos = System.nanoTime();
+                for (final Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+                final long elapsedNanos = System.nanoTime() - startNanos;
+
+                logger.info("threads={}, locates/s={}", nbThreads, (long) nbThreads * nbLocatesPerThread * 1000000000L / elapsedNanos);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     private static interface SomethingNonLiteralSqlDao extends Transactional<SomethingLiteralSqlDao> {
 
         @SqlUpdate
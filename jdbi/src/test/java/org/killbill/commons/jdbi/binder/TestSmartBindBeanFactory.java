@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.jdbi.binder;
+
+import java.util.List;
+import java.util.Map;
+
+import org.killbill.commons.jdbi.JDBITestBase;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestSmartBindBeanFactory extends JDBITestBase {
+
+    @BeforeMethod(groups = "slow")
+    public void cleanupDb() throws Exception {
+        cleanupDb("drop table if exists something;\n" +
+                  "create table something (id int primary key, name varchar(100))");
+    }
+
+    @Test(groups = "fast")
+    public void testBindingPlan() {
+        final Map<String, SmartBindBeanFactory.PropertyGetter> bare = SmartBindBeanFactory.getBindingPlan(SomethingBean.class, null);
+        Assert.assertTrue(bare.containsKey("id"));
+        Assert.assertTrue(bare.containsKey("name"));
+        Assert.assertTrue(bare.containsKey("class"));
+        // Computed once
+        Assert.assertSame(SmartBindBeanFactory.getBindingPlan(SomethingBean.class, null), bare);
+
+        final Map<String, SmartBindBeanFactory.PropertyGetter> prefixed = SmartBindBeanFactory.getBindingPlan(SomethingBean.class, "s.");
+        Assert.assertTrue(prefixed.containsKey("s.id"));
+        Assert.assertFalse(prefixed.containsKey("id"));
+        Assert.assertSame(SmartBindBeanFactory.getBindingPlan(SomethingBean.class, "s."), prefixed);
+    }
+
+    @Test(groups = "slow")
+    public void testBind() throws Exception {
+        final SomethingSqlDao somethingSqlDao = dbi.onDemand(SomethingSqlDao.class);
+
+        somethingSqlDao.create(new SomethingBean(1, "pierre"));
+        somethingSqlDao.createWithPrefix(new SomethingBean(2, "stephane"));
+        somethingSqlDao.createAll(ImmutableList.<SomethingBean>of(new SomethingBean(3, "kevin"), new SomethingBean(4, "sylvain")));
+
+        Assert.assertEquals(somethingSqlDao.getNames(), ImmutableList.<String>of("pierre", "stephane", "kevin", "sylvain"));
+    }
+
+    @Test(groups = "slow")
+    public void testBindingPrecedence() throws Exception {
+        final SomethingSqlDao somethingSqlDao = dbi.onDemand(SomethingSqlDao.class);
+
+        // Explicit bindings win, regardless of the parameters order
+        somethingSqlDao.createWithNameThenBean("pierre", new SomethingBean(1, "ignored"));
+        somethingSqlDao.createWithBeanThenName(new SomethingBean(2, "ignored"), "stephane");
+
+        Assert.assertEquals(somethingSqlDao.getNames(), ImmutableList.<String>of("pierre", "stephane"));
+    }
+
+    @Test(groups = "slow")
+    public void testOnlyReferencedPropertiesAreRead() throws Exception {
+        final SomethingSqlDao somethingSqlDao = dbi.onDemand(SomethingSqlDao.class);
+
+        // getNotBindable isn't referenced by the statement, so it is never invoked
+        somethingSqlDao.createNotBindable(new NotBindableBean());
+        Assert.assertEquals(somethingSqlDao.getNames(), ImmutableList.<String>of("pierre"));
+
+        try {
+            somethingSqlDao.createReferencingNotBindable(new NotBindableBean());
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+        Assert.assertEquals(somethingSqlDao.getNames(), ImmutableList.<String>of("pierre"));
+    }
+
+    private interface SomethingSqlDao {
+
+        @SqlUpdate("insert into something (id, name) values (:id, :name)")
+        public void create(@SmartBindBean final SomethingBean something);
+
+        @SqlUpdate("insert into something (id, name) values (:s.id, :s.name)")
+        public void createWithPrefix(@SmartBindBean("s") final SomethingBean something);
+
+        @SqlUpdate("insert into something (id, name) values (:id, :name)")
+        public void createWithNameThenBean(@Bind("name") final String name, @SmartBindBean final SomethingBean something);
+
+        @SqlUpdate("insert into something (id, name) values (:id, :name)")
+        public void createWithBeanThenName(@SmartBindBean final SomethingBean something, @Bind("name") final String name);
+
+        @SqlUpdate("insert into something (id, name) values (1, 'pierre')")
+        public void createNotBindable(@SmartBindBean final NotBindableBean something);
+
+        @SqlUpdate("insert into something (id, name) values (2, :notBindable)")
+        public void createReferencingNotBindable(@SmartBindBean final NotBindableBean something);
+
+        @SqlBatch("insert into something (id, name) values (:id, :name)")
+        public void createAll(@SmartBindBean final Iterable<SomethingBean> somethings);
+
+        @SqlQuery("select name from something order by id")
+        public List<String> getNames();
+    }
+
+    // Needs to be public for the reflection magic
+    public static final class SomethingBean {
+
+        private final int id;
+        private final String name;
+
+        public SomethingBean(final int id, final String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final class NotBindableBean {
+
+        public Object getNotBindable() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
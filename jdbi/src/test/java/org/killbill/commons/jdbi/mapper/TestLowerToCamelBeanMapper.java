@@ -20,6 +20,7 @@
 package org.killbill.commons.jdbi.mapper;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.sqlobject.Bind;
@@ -68,6 +69,19 @@ public class TestLowerToCamelBeanMapper extends JDBITestBase {
         final SomethingBean foundStephane = somethingSqlDao.getSomething(2);
         Assert.assertEquals(foundStephane.getLowerCasedField(), "stephane");
         Assert.assertEquals(foundStephane.getAnotherLowerCasedField(), fieldBStephane);
+
+        // Several rows (mapping plan reused), different shapes
+        final List<SomethingBean> all = somethingSqlDao.getAll();
+        Assert.assertEquals(all.size(), 2);
+        Assert.assertEquals(all.get(0).getLowerCasedField(), "pierre");
+        Assert.assertEquals(all.get(0).getAnotherLowerCasedField(), fieldBPierre);
+        Assert.assertEquals(all.get(1).getLowerCasedField(), "stephane");
+        Assert.assertEquals(all.get(1).getAnotherLowerCasedField(), fieldBStephane);
+
+        final List<SomethingBean> allNames = somethingSqlDao.getAllNames();
+        Assert.assertEquals(allNames.size(), 2);
+        Assert.assertEquals(allNames.get(1).getLowerCasedField(), "stephane");
+        Assert.assertEquals(allNames.get(1).getAnotherLowerCasedField(), 0);
     }
 
     private interface SomethingSqlDao {
@@ -79,6 +93,12 @@ public class TestLowerToCamelBeanMapper extends JDBITestBase {
 
         @SqlQuery("select lower_cased_field, another_lower_cased_field from something where id = :id")
         public SomethingBean getSomething(@Bind("id") final int id);
+
+        @SqlQuery("select lower_cased_field, another_lower_cased_field from something order by id")
+        public List<SomethingBean> getAll();
+
+        @SqlQuery("select lower_cased_field from something order by id")
+        public List<SomethingBean> getAllNames();
     }
 
     // Needs to be public for the reflection magic
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.jdbi.notification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+public class TestDatabaseTransactionNotificationApi {
+
+    @Test(groups = "fast")
+    public void testEnlistedListeners() {
+        final DatabaseTransactionNotificationApi api = new DatabaseTransactionNotificationApi();
+        final RecordingListener enlisted = new RecordingListener();
+        final RecordingListener other = new RecordingListener();
+
+        // Enlisting twice in the same transaction notifies only once
+        api.enlistInCurrentTransaction(enlisted);
+        api.enlistInCurrentTransaction(enlisted);
+        api.dispatchNotification(DatabaseTransactionEvent.COMMIT);
+        Assert.assertEquals(enlisted.events.size(), 1);
+        Assert.assertEquals(enlisted.events.get(0).getType(), DatabaseTransactionEventType.COMMIT);
+        Assert.assertEquals(other.events.size(), 0);
+
+        // Not enlisted in the next transaction
+        api.dispatchNotification(DatabaseTransactionEvent.ROLLBACK);
+        Assert.assertEquals(enlisted.events.size(), 1);
+
+        api.enlistInCurrentTransaction(other);
+        api.dispatchNotification(DatabaseTransactionEvent.ROLLBACK);
+        Assert.assertEquals(enlisted.events.size(), 1);
+        Assert.assertEquals(other.events.size(), 1);
+        Assert.assertEquals(other.events.get(0).getType(), DatabaseTransactionEventType.ROLLBACK);
+    }
+
+    @Test(groups = "fast")
+    public void testRegisteredListeners() {
+        final DatabaseTransactionNotificationApi api = new DatabaseTransactionNotificationApi();
+        final RecordingListener typedListener = new RecordingListener();
+        final SubscriberListener subscriberListener = new SubscriberListener();
+        api.registerForNotification(typedListener);
+        api.registerForNotification(subscriberListener);
+
+        api.dispatchNotification(DatabaseTransactionEvent.COMMIT);
+        Assert.assertEquals(typedListener.events.size(), 1);
+        Assert.assertEquals(subscriberListener.events.size(), 1);
+
+        api.unregisterForNotification(typedListener);
+        api.unregisterForNotification(subscriberListener);
+        api.dispatchNotification(DatabaseTransactionEvent.COMMIT);
+        Assert.assertEquals(typedListener.events.size(), 1);
+        Assert.assertEquals(subscriberListener.events.size(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testFailingListener() {
+        final DatabaseTransactionNotificationApi api = new DatabaseTransactionNotificationApi();
+        final RecordingListener enlisted = new RecordingListener();
+        final RecordingListener typedListener = new RecordingListener();
+        final SubscriberListener subscriberListener = new SubscriberListener();
+        api.registerForNotification(new FailingListener());
+        api.registerForNotification(typedListener);
+        api.registerForNotification(subscriberListener);
+
+        api.enlistInCurrentTransaction(new FailingListener());
+        api.enlistInCurrentTransaction(enlisted);
+        api.dispatchNotification(DatabaseTransactionEvent.COMMIT);
+
+        // The other listeners are still notified
+        Assert.assertEquals(enlisted.events.size(), 1);
+        Assert.assertEquals(typedListener.events.size(), 1);
+        Assert.assertEquals(subscriberListener.events.size(), 1);
+    }
+
+    private static final class FailingListener implements DatabaseTransactionListener {
+
+        @Override
+        public void handleDatabaseTransactionEvent(final DatabaseTransactionEvent event) {
+            throw new IllegalStateException("Listener failure");
+        }
+    }
+
+    private static final class RecordingListener implements DatabaseTransactionListener {
+
+        private final List<DatabaseTransactionEvent> events = new ArrayList<DatabaseTransactionEvent>();
+
+        @Override
+        public void handleDatabaseTransactionEvent(final DatabaseTransactionEvent event) {
+            events.add(event);
+        }
+    }
+
+    public static final class SubscriberListener {
+
+        private final List<DatabaseTransactionEvent> events = new ArrayList<DatabaseTransactionEvent>();
+
+        @Subscribe
+        public void handleDatabaseTransactionEvent(final DatabaseTransactionEvent event) {
+            events.add(event);
+        }
+    }
+}
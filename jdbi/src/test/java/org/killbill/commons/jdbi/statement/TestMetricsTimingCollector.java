@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.jdbi.statement;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.commons.jdbi.JDBITestBase;
+import org.skife.jdbi.v2.ColonPrefixNamedParamStatementRewriter;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.ST4StatementLocator;
+import org.skife.jdbi.v2.util.IntegerMapper;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.google.common.collect.ImmutableList;
+
+public class TestMetricsTimingCollector extends JDBITestBase {
+
+    @BeforeMethod(groups = "slow")
+    public void cleanupDb() throws Exception {
+        cleanupDb("drop table if exists something;\n" +
+                  "create table something (id int primary key, name varchar(100))");
+    }
+
+    @Test(groups = "fast")
+    public void testReservoirQuantiles() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir();
+        for (int i = 1; i <= 10000; i++) {
+            reservoir.update(i * 1000L);
+        }
+
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(snapshot.size(), 10000);
+        assertWithinRelativeError(snapshot.getMedian(), 5000 * 1000L);
+        assertWithinRelativeError(snapshot.get99thPercentile(), 9900 * 1000L);
+        assertWithinRelativeError(snapshot.getMin(), 1000L);
+        assertWithinRelativeError(snapshot.getMax(), 10000 * 1000L);
+        assertWithinRelativeError(snapshot.getMean(), 5000.5 * 1000L);
+    }
+
+    @Test(groups = "fast")
+    public void testReservoirSmallValuesAreExact() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir();
+        for (int i = 0; i < 16; i++) {
+            reservoir.update(i);
+        }
+
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(snapshot.getMin(), 0);
+        Assert.assertEquals(snapshot.getMax(), 15);
+        Assert.assertEquals(snapshot.getValues().length, 16);
+    }
+
+    @Test(groups = "fast")
+    public void testReservoirForgetsOldIntervals() throws Exception {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(50, TimeUnit.MILLISECONDS);
+        reservoir.update(1);
+        Assert.assertEquals(reservoir.size(), 1);
+
+        // Still part of the previous interval
+        Thread.sleep(60);
+        reservoir.update(2);
+        Assert.assertEquals(reservoir.size(), 2);
+
+        Thread.sleep(250);
+        Assert.assertEquals(reservoir.size(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testCollectPerSqlObjectMethod() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        dbi.setTimingCollector(new MetricsTimingCollector(metricRegistry));
+
+        final SomethingSqlDao somethingSqlDao = dbi.onDemand(SomethingSqlDao.class);
+        somethingSqlDao.create(1, "pierre");
+        somethingSqlDao.create(2, "stephane");
+        somethingSqlDao.create(3, "kevin");
+        Assert.assertEquals(somethingSqlDao.getNames(), ImmutableList.<String>of("pierre", "stephane", "kevin"));
+
+        // Stop streaming after the first two rows
+        final ResultIterator<String> iterator = somethingSqlDao.iterateNames();
+        iterator.next();
+        iterator.next();
+        iterator.close();
+
+        Assert.assertEquals(metricRegistry.timer(MetricRegistry.name(SomethingSqlDao.class, "create", "executionTime")).getCount(), 3);
+        Assert.assertEquals(metricRegistry.timer(MetricRegistry.name(SomethingSqlDao.class, "create", "bindingTime")).getCount(), 3);
+        // Not a query
+        Assert.assertEquals(metricRegistry.histogram(MetricRegistry.name(SomethingSqlDao.class, "create", "rows")).getCount(), 0);
+
+        Assert.assertEquals(metricRegistry.timer(MetricRegistry.name(SomethingSqlDao.class, "getNames", "executionTime")).getCount(), 1);
+        Assert.assertEquals(metricRegistry.histogram(MetricRegistry.name(SomethingSqlDao.class, "getNames", "rows")).getSnapshot().getMax(), 3);
+        Assert.assertEquals(metricRegistry.histogram(MetricRegistry.name(SomethingSqlDao.class, "iterateNames", "rows")).getSnapshot().getMax(), 2);
+
+        // SQL caches statistics
+        Assert.assertTrue((Long) metricRegistry.getGauges().get(MetricRegistry.name(ColonPrefixNamedParamStatementRewriter.class, "parsedStatementCache", "misses")).getValue() > 0);
+        Assert.assertTrue(metricRegistry.getGauges().containsKey(MetricRegistry.name(ST4StatementLocator.class, "locatedSqlCache", "bypasses")));
+    }
+
+    @Test(groups = "slow")
+    public void testInlineSqlIsNotUsedAsKey() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        dbi.setTimingCollector(new MetricsTimingCollector(metricRegistry));
+
+        final Handle handle = dbi.open();
+        try {
+            handle.createQuery("select count(*) from something").map(IntegerMapper.FIRST).first();
+            handle.createQuery("select count(*) from something where id > 0").map(IntegerMapper.FIRST).first();
+        } finally {
+            handle.close();
+        }
+
+        Assert.assertEquals(metricRegistry.timer(MetricRegistry.name(MetricsTimingCollector.class, "unnamed", "executionTime")).getCount(), 2);
+    }
+
+    private static void assertWithinRelativeError(final double actual, final double expected) {
+        Assert.assertTrue(Math.abs(actual - expected) <= expected * 0.04, "actual=" + actual + ", expected=" + expected);
+    }
+
+    private interface SomethingSqlDao {
+
+        @SqlUpdate("insert into something (id, name) values (:id, :name)")
+        public void create(@Bind("id") final int id, @Bind("name") final String name);
+
+        @SqlQuery("select name from something order by id")
+        public List<String> getNames();
+
+        @SqlQuery("select name from something order by id")
+        public ResultIterator<String> iterateNames();
+    }
+}
@@ -21,12 +21,21 @@ package org.skife.jdbi.v2;
 
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.skife.jdbi.v2.exceptions.UnableToCreateStatementException;
 import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
@@ -37,6 +46,8 @@ import static org.junit.Assert.assertEquals;
 @Category(JDBITests.class)
 public class TestColonStatementRewriter
 {
+    private static final Logger logger = LoggerFactory.getLogger(TestColonStatementRewriter.class);
+
     private ColonPrefixNamedParamStatementRewriter rw;
 
     @Before
@@ -124,6 +135,84 @@ public class TestColonStatementRewriter
         assertEquals(1, ctr.get());
     }
 
+    @Test
+    public void testCachesFreshlyRenderedStatements() throws Exception
+    {
+        final AtomicInteger ctr = new AtomicInteger(0);
+        rw = new ColonPrefixNamedParamStatementRewriter()
+        {
+            @Override
+            protected ParsedStatement parseString(final String sql) throws IllegalArgumentException
+            {
+                ctr.incrementAndGet();
+                return super.parseString(sql);
+            }
+        };
+
+        // Rendered statements are new String instances, which nothing else references
+        rewrite(new StringBuilder("insert into something (id, name) ").append("values (:id, :name)").toString());
+        System.gc();
+        rewrite(new StringBuilder("insert into something (id, name) ").append("values (:id, :name)").toString());
+
+        assertEquals(1, ctr.get());
+        assertEquals(1, rw.cache.stats().hitCount());
+    }
+
+    @Test
+    public void testCacheIsBoundedByWeight() throws Exception
+    {
+        // Room for a couple of statements only
+        rw = new ColonPrefixNamedParamStatementRewriter(1024);
+
+        for (int i = 0; i < 100; i++) {
+            final RewrittenStatement rws = rewrite("select * from something where id = :id and name = '" + i + "'");
+            assertEquals("select * from something where id = ? and name = '" + i + "'", rws.getSql());
+        }
+
+        Assert.assertTrue(rw.cache.size() < 100);
+        Assert.assertTrue(rw.cache.stats().evictionCount() > 0);
+    }
+
+    // Throughput of rewrite, from 1 to 32 threads
+    @Ignore
+    @Test
+    public void testRewriteThroughput() throws Exception
+    {
+        final int nbRewritesPerThread = 1000000;
+
+        for (int nbThreads = 1; nbThreads <= 32; nbThreads *= 2) {
+            final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+            try {
+                final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (int i = 0; i < nbThreads; i++) {
+                    tasks.add(new Callable<Void>()
+                    {
+                        @Override
+                        public Void call() throws Exception
+                        {
+                            for (int j = 0; j < nbRewritesPerThread; j++) {
+                                // Like the statement locators, hand over a new String every time
+                                rewrite(new StringBuilder("select * from something where id = :id").append(" and name = :name").toString());
+                            }
+                            return null;
+                        }
+                    });
+                }
+
+                final long startNanos = System.nanoTime();
+                for (final Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+                final long elapsedNanos = System.nanoTime() - startNanos;
+
+                logger.info("threads={}, rewrites/s={}", nbThreads, (long) nbThreads * nbRewritesPerThread * 1000000000L / elapsedNanos);
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     public void testCommentQuote() throws Exception
     {
         rewrite("select 1 /* ' \" */");
@@ -53,6 +53,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @Category(JDBITests.class)
@@ -214,6 +215,28 @@ public class TestOnDemandSqlObject
         assertFalse( dbi.hasOpenedHandle() );
     }
 
+    @Test
+    public void testIteratorsOpenConcurrently() throws Exception {
+        HandleTrackerDBI dbi = new HandleTrackerDBI(ds);
+
+        Spiffy spiffy = SqlObjectBuilder.onDemand(dbi, Spiffy.class);
+        spiffy.insert(1, "Tom");
+        spiffy.insert(2, "Sam");
+
+        ResultIterator<Something> first = spiffy.findAll();
+        ResultIterator<Something> second = spiffy.findAll();
+        assertSame(spiffy.getHandle(), spiffy.getHandle());
+
+        // The handle is still needed by the second iterator
+        first.close();
+        assertTrue(dbi.hasOpenedHandle());
+        second.next();
+        second.next();
+        assertFalse(second.hasNext());
+
+        assertFalse(dbi.hasOpenedHandle());
+    }
+
     @Test
     public void testSqlFromExternalFileWorks() throws Exception
     {
@@ -27,6 +27,7 @@ import org.skife.jdbi.v2.JDBITests;
 import org.stringtemplate.v4.STGroupFile;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 @Category(JDBITests.class)
 public class TestST4StatementLocator {
@@ -38,15 +39,48 @@ public class TestST4StatementLocator {
 
         Assert.assertEquals("select * from foo where id in ()", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of())));
         Assert.assertEquals(1, statementLocator.locatedSqlCache.size());
-        Assert.assertEquals("select * from foo where id in ()", statementLocator.locatedSqlCache.get("get"));
+        Assert.assertEquals("select * from foo where id in ()", statementLocator.locatedSqlCache.getIfPresent("get"));
 
         // See @BindIn
         Assert.assertEquals("select * from foo where id in (:__ids_0)", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of("ids", ":__ids_0"))));
         Assert.assertEquals(2, statementLocator.locatedSqlCache.size());
-        Assert.assertEquals("select * from foo where id in (:__ids_0)", statementLocator.locatedSqlCache.get("get___#___ids___#___:__ids_0"));
+        Assert.assertEquals("select * from foo where id in (:__ids_0)", statementLocator.locatedSqlCache.getIfPresent("get___#___ids___#___:__ids_0"));
 
         Assert.assertEquals("select * from foo where id in (:__ids_0,:__ids_1)", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of("ids", ":__ids_0,:__ids_1"))));
         Assert.assertEquals(3, statementLocator.locatedSqlCache.size());
-        Assert.assertEquals("select * from foo where id in (:__ids_0,:__ids_1)", statementLocator.locatedSqlCache.get("get___#___ids___#___:__ids_0,:__ids_1"));
+        Assert.assertEquals("select * from foo where id in (:__ids_0,:__ids_1)", statementLocator.locatedSqlCache.getIfPresent("get___#___ids___#___:__ids_0,:__ids_1"));
+    }
+
+    @Test
+    public void testUncachedAttributes() throws Exception {
+        final ST4StatementLocator statementLocator = new ST4StatementLocator(new STGroupFile("org/skife/jdbi/v2/sqlobject/stringtemplate/Jun.sql.stg"), ImmutableSet.<String>of("ids"));
+        final long initialBypasses = ST4StatementLocator.getLocatedSqlCacheBypasses();
+
+        Assert.assertEquals("select * from foo where id in ()", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of())));
+        Assert.assertEquals(1, statementLocator.locatedSqlCache.size());
+
+        Assert.assertEquals("select * from foo where id in (:__ids_0)", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of("ids", ":__ids_0"))));
+        Assert.assertEquals("select * from foo where id in (:__ids_0,:__ids_1)", statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of("ids", ":__ids_0,:__ids_1"))));
+        Assert.assertEquals(1, statementLocator.locatedSqlCache.size());
+        Assert.assertTrue(ST4StatementLocator.getLocatedSqlCacheBypasses() >= initialBypasses + 2);
+    }
+
+    @Test
+    public void testCacheIsBoundedByWeight() throws Exception {
+        // Room for a handful of entries only
+        final ST4StatementLocator statementLocator = new ST4StatementLocator(new STGroupFile("org/skife/jdbi/v2/sqlobject/stringtemplate/Jun.sql.stg"), ImmutableSet.<String>of(), 1024);
+
+        final StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                ids.append(",");
+            }
+            ids.append(":__ids_").append(i);
+            final String expected = "select * from foo where id in (" + ids + ")";
+            Assert.assertEquals(expected, statementLocator.locate("get", new TestingStatementContext(ImmutableMap.<String, Object>of("ids", ids.toString()))));
+        }
+
+        Assert.assertTrue(statementLocator.locatedSqlCache.size() < 100);
+        Assert.assertTrue(statementLocator.locatedSqlCache.stats().evictionCount() > 0);
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.skife.jdbi.v2.st4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.JDBITests;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.ST4StatementLocator;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+import org.skife.jdbi.v2.unstable.BindIn;
+import org.stringtemplate.v4.STGroup;
+
+import com.google.common.collect.Sets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BindInTest {
+
+    @Rule
+    public final H2Rule h2 = new H2Rule();
+
+    @Test
+    @Category(JDBITests.class)
+    public void testPaddedInClause() throws Exception {
+        final Set<String> locatedSqls = Sets.newConcurrentHashSet();
+        final StatementLocator delegate = new ST4StatementLocator(new STGroup('<', '>'));
+        final DBI dbi = new DBI(h2);
+        dbi.setStatementLocator(new StatementLocator() {
+            @Override
+            public String locate(final String name, final StatementContext ctx) throws Exception {
+                final String sql = delegate.locate(name, ctx);
+                locatedSqls.add(sql);
+                return sql;
+            }
+        });
+
+        final Dao dao = dbi.onDemand(Dao.class);
+        dao.createSomethingTable();
+        for (int i = 1; i <= 8; i++) {
+            dao.insert(i, "name-" + i);
+        }
+        locatedSqls.clear();
+
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 1; i <= 8; i++) {
+            ids.add(i);
+            assertThat(dao.findNames(ids)).hasSize(i);
+            assertThat(dao.findPaddedNames(ids)).hasSize(i).containsExactlyElementsOf(dao.findNames(ids));
+        }
+
+        // 8 statements for the regular IN clause, 4 (1, 2, 4 and 8 placeholders) for the padded one
+        assertThat(locatedSqls).hasSize(8 + 4);
+    }
+
+    public interface Dao {
+
+        @SqlUpdate("create table something (id int primary key, name varchar)")
+        void createSomethingTable();
+
+        @SqlUpdate("insert into something (id, name) values (:id, :name)")
+        void insert(@Bind("id") int id, @Bind("name") String name);
+
+        @SqlQuery("select name from something where id in (<ids>) order by id")
+        List<String> findNames(@BindIn("ids") List<Integer> ids);
+
+        @SqlQuery("select name from something where id in (<ids>) order by id /* padded */")
+        List<String> findPaddedNames(@BindIn(value = "ids", padToPowerOfTwo = true) List<Integer> ids);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import java.util.List;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Locks acquired together (see {@link GlobalLocker#lockAll}), released together, in reverse order.
+ */
+public class CompositeGlobalLock implements GlobalLock {
+
+    private final List<GlobalLock> locks;
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public CompositeGlobalLock(final List<GlobalLock> locks) {
+        this.locks = locks;
+    }
+
+    @Override
+    public void release() {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).release();
+        }
+    }
+}
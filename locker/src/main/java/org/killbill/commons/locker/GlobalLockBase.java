@@ -72,6 +72,9 @@ public class GlobalLockBase implements GlobalLock {
                         logger.warn("Unable to close connection", e);
                     }
                 }
+                if (resetCallback != null) {
+                    resetCallback.lockReleased(lockName);
+                }
                 return null;
             }
         });
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Locks acquired together on a single connection (see {@link GlobalLockDao#lockAll}): releasing the batch releases
+ * all of them in one statement. Each lock also has its own handle ({@link #getLock(String)}), for re-entrant
+ * acquisitions: the connection is closed once all the locks have been released.
+ */
+public class GlobalLockBatch implements GlobalLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(GlobalLockBatch.class);
+
+    private final GlobalLockDao lockDao;
+    private final Connection connection;
+    private final ResetReentrantLockCallback resetCallback;
+    private final Profiling<Void, RuntimeException> prof;
+
+    // Guarded by this
+    private final Set<String> heldLockNames;
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public GlobalLockBatch(final Connection connection, final List<String> lockNames, final GlobalLockDao lockDao, final ResetReentrantLockCallback resetCallback) {
+        this.lockDao = lockDao;
+        this.connection = connection;
+        this.resetCallback = resetCallback;
+        this.heldLockNames = new LinkedHashSet<String>(lockNames);
+        this.prof = new Profiling<Void, RuntimeException>();
+    }
+
+    public GlobalLock getLock(final String lockName) {
+        return new GlobalLock() {
+            @Override
+            public void release() {
+                prof.executeWithProfiling(ProfilingFeatureType.GLOCK, "release", new WithProfilingCallback<Void, RuntimeException>() {
+                    @Override
+                    public Void execute() throws RuntimeException {
+                        if (resetCallback != null && !resetCallback.reset(lockName)) {
+                            return null;
+                        }
+                        releaseLocks(Collections.singletonList(lockName));
+                        return null;
+                    }
+                });
+            }
+        };
+    }
+
+    @Override
+    public void release() {
+        prof.executeWithProfiling(ProfilingFeatureType.GLOCK, "release", new WithProfilingCallback<Void, RuntimeException>() {
+            @Override
+            public Void execute() throws RuntimeException {
+                final List<String> lockNames;
+                synchronized (GlobalLockBatch.this) {
+                    lockNames = new ArrayList<String>(heldLockNames);
+                }
+
+                final List<String> freeLockNames = new ArrayList<String>(lockNames.size());
+                for (final String lockName : lockNames) {
+                    // Locks still used by re-entrant acquisitions are released through their own handle
+                    if (resetCallback == null || resetCallback.reset(lockName)) {
+                        freeLockNames.add(lockName);
+                    }
+                }
+                releaseLocks(freeLockNames);
+                return null;
+            }
+        });
+    }
+
+    private void releaseLocks(final List<String> lockNames) {
+        if (lockNames.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                lockDao.releaseLocks(connection, lockNames);
+            } catch (final SQLException e) {
+                logger.warn("Unable to release locks for " + lockNames, e);
+            }
+            heldLockNames.removeAll(lockNames);
+            if (heldLockNames.isEmpty()) {
+                try {
+                    connection.close();
+                } catch (final SQLException e) {
+                    logger.warn("Unable to close connection", e);
+                }
+            }
+        }
+
+        if (resetCallback != null) {
+            for (final String lockName : lockNames) {
+                resetCallback.lockReleased(lockName);
+            }
+        }
+    }
+}
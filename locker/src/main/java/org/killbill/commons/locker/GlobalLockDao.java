@@ -21,6 +21,8 @@ package org.killbill.commons.locker;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public interface GlobalLockDao {
@@ -29,5 +31,50 @@ public interface GlobalLockDao {
 
     boolean releaseLock(final Connection connection, final String lockName) throws SQLException;
 
+    /**
+     * @return true if {@link #lock(Connection, String, long, TimeUnit)} waits in the database up to that timeout (true by default)
+     */
+    default boolean waitsUpTo(final long timeout, final TimeUnit timeUnit) {
+        return true;
+    }
+
+    /**
+     * Acquire all the locks, in the given (canonical) order, without waiting: either all of them are acquired, or none.
+     * <p>
+     * By default, the locks are acquired one at a time: implementations can override it to acquire them in a single statement.
+     */
+    default boolean lockAll(final Connection connection, final List<String> lockNames) throws SQLException {
+        final List<String> obtained = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            final boolean lockObtained;
+            try {
+                lockObtained = lock(connection, lockName, 0, TimeUnit.MILLISECONDS);
+            } catch (final SQLException e) {
+                try {
+                    releaseLocks(connection, obtained);
+                } catch (final SQLException releaseException) {
+                    e.addSuppressed(releaseException);
+                }
+                throw e;
+            }
+
+            if (!lockObtained) {
+                releaseLocks(connection, obtained);
+                return false;
+            }
+            obtained.add(lockName);
+        }
+        return true;
+    }
+
+    /**
+     * By default, the locks are released one at a time.
+     */
+    default void releaseLocks(final Connection connection, final List<String> lockNames) throws SQLException {
+        for (final String lockName : lockNames) {
+            releaseLock(connection, lockName);
+        }
+    }
+
     boolean isLockFree(final Connection connection, final String lockName) throws SQLException;
 }
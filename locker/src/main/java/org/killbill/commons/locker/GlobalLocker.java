@@ -19,9 +19,38 @@
 
 package org.killbill.commons.locker;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
 public interface GlobalLocker {
 
     GlobalLock lockWithNumberOfTries(String service, String lockKey, int retry) throws LockFailedException;
 
+    /**
+     * Acquire the locks for all the keys (in a canonical order, to avoid deadlocks between callers), or none of them.
+     * <p>
+     * By default, the locks are acquired one at a time: implementations can override it to acquire them together.
+     *
+     * @return a lock releasing all of them
+     */
+    default GlobalLock lockAll(final String service, final Collection<String> lockKeys, final int retry) throws LockFailedException {
+        // Canonical order
+        final SortedSet<String> sortedLockKeys = new TreeSet<String>(lockKeys);
+
+        final List<GlobalLock> locks = new ArrayList<GlobalLock>(sortedLockKeys.size());
+        try {
+            for (final String lockKey : sortedLockKeys) {
+                locks.add(lockWithNumberOfTries(service, lockKey, retry));
+            }
+        } catch (final LockFailedException e) {
+            new CompositeGlobalLock(locks).release();
+            throw e;
+        }
+        return new CompositeGlobalLock(locks);
+    }
+
     boolean isFree(String service, String lockKey);
 }
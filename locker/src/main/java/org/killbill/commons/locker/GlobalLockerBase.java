@@ -19,8 +19,15 @@
 
 package org.killbill.commons.locker;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
+import org.killbill.commons.locker.LockWaitQueue.Waiter;
 import org.killbill.commons.locker.ReentrantLock.TryAcquireLockState;
 import org.killbill.commons.profiling.Profiling;
 import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
@@ -38,13 +45,17 @@ public abstract class GlobalLockerBase implements GlobalLocker {
     protected final TimeUnit timeUnit;
     protected final ReentrantLock lockTable;
 
+    private final LockWaitQueue lockWaitQueue;
     private final Profiling<GlobalLock, LockFailedException> prof;
+    private final Profiling<Void, RuntimeException> waitProf;
 
     public GlobalLockerBase(final long timeout, final TimeUnit timeUnit) {
         this.timeout = timeout;
         this.timeUnit = timeUnit;
         this.lockTable = new ReentrantLock();
+        this.lockWaitQueue = new LockWaitQueue();
         this.prof = new Profiling<GlobalLock, LockFailedException>();
+        this.waitProf = new Profiling<Void, RuntimeException>();
     }
 
     @Override
@@ -55,12 +66,18 @@ public abstract class GlobalLockerBase implements GlobalLocker {
                 final String lockName = getLockName(service, lockKey);
                 int tries_left = retry;
                 while (tries_left-- > 0) {
-                    final GlobalLock lock = lock(lockName);
-                    if (lock != null) {
-                        return lock;
-                    }
-                    if (tries_left > 0) {
-                        sleep();
+                    // Register first, so that a release right after the failed attempt still wakes us up
+                    final Waiter waiter = lockWaitQueue.register(lockName);
+                    try {
+                        final GlobalLock lock = lock(lockName);
+                        if (lock != null) {
+                            return lock;
+                        }
+                        if (tries_left > 0) {
+                            awaitRelease(waiter, lockName);
+                        }
+                    } finally {
+                        waiter.unregister();
                     }
                 }
 
@@ -70,6 +87,53 @@ public abstract class GlobalLockerBase implements GlobalLocker {
         });
     }
 
+    @Override
+    public GlobalLock lockAll(final String service, final Collection<String> lockKeys, final int retry) throws LockFailedException {
+        return prof.executeWithProfiling(ProfilingFeatureType.GLOCK, "lockAll", new WithProfilingCallback<GlobalLock, LockFailedException>() {
+            @Override
+            public GlobalLock execute() throws LockFailedException {
+                // Canonical order
+                final SortedSet<String> sortedLockNames = new TreeSet<String>();
+                for (final String lockKey : lockKeys) {
+                    sortedLockNames.add(getLockName(service, lockKey));
+                }
+                final List<String> lockNames = new ArrayList<String>(sortedLockNames);
+
+                int tries_left = retry;
+                while (tries_left-- > 0) {
+                    final List<Waiter> waiters = new ArrayList<Waiter>(lockNames.size());
+                    for (final String lockName : lockNames) {
+                        waiters.add(lockWaitQueue.register(lockName));
+                    }
+                    try {
+                        final GlobalLock lock = lockAll(lockNames);
+                        if (lock != null) {
+                            return lock;
+                        }
+                        if (tries_left > 0) {
+                            // Wait for a lock held on this node if any, the first one otherwise
+                            int waitIndex = 0;
+                            for (int i = 0; i < lockNames.size(); i++) {
+                                if (isHeldLocally(lockNames.get(i))) {
+                                    waitIndex = i;
+                                    break;
+                                }
+                            }
+                            awaitRelease(waiters.get(waitIndex), lockNames.get(waitIndex));
+                        }
+                    } finally {
+                        for (final Waiter waiter : waiters) {
+                            waiter.unregister();
+                        }
+                    }
+                }
+
+                logger.warn(String.format("Failed to acquire locks %s for service %s after %s retries", lockKeys, service, retry));
+                throw new LockFailedException();
+            }
+        });
+    }
+
     protected GlobalLock lock(final String lockName) {
         final TryAcquireLockState lockState = lockTable.tryAcquireLockForExistingOwner(lockName);
         if (lockState.getLockState() == ReentrantLock.ReentrantLockState.HELD_OWNER) {
@@ -77,13 +141,7 @@ public abstract class GlobalLockerBase implements GlobalLocker {
         }
 
         if (lockState.getLockState() == ReentrantLock.ReentrantLockState.HELD_NOT_OWNER) {
-            // In that case, we need to respect the provided timeout value
-            try {
-                Thread.sleep(TimeUnit.MILLISECONDS.convert(timeout, timeUnit));
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.warn("lock got interrupted", e);
-            }
+            // Held by another request on this node, the caller will wait for its release
             return null;
         }
 
@@ -92,14 +150,75 @@ public abstract class GlobalLockerBase implements GlobalLocker {
 
     protected abstract GlobalLock doLock(final String lockName);
 
+    /**
+     * Acquire all the locks (sorted), one at a time: implementations can override it to acquire them in fewer round trips.
+     *
+     * @return the composite lock, or null if any of them couldn't be acquired (none is held then)
+     */
+    protected GlobalLock lockAll(final List<String> lockNames) {
+        final List<GlobalLock> locks = new ArrayList<GlobalLock>(lockNames.size());
+        for (final String lockName : lockNames) {
+            final GlobalLock lock = lock(lockName);
+            if (lock == null) {
+                new CompositeGlobalLock(locks).release();
+                return null;
+            }
+            locks.add(lock);
+        }
+        return new CompositeGlobalLock(locks);
+    }
+
     protected abstract String getLockName(final String service, final String lockKey);
 
-    private void sleep() {
-        try {
-            Thread.sleep(TimeUnit.MILLISECONDS.convert(timeout, timeUnit));
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
-            logger.warn("GlobalLockerBase got interrupted", e);
+    /**
+     * Invoked by the locks, once released: wakes up the local threads waiting on it.
+     */
+    protected void lockReleased(final String lockName) {
+        lockWaitQueue.signal(lockName);
+    }
+
+    /**
+     * @return true if the lock is held by another thread on this node (the release will wake the waiters up)
+     */
+    protected boolean isHeldLocally(final String lockName) {
+        return lockTable.isHeld(lockName);
+    }
+
+    /**
+     * @return true if the lock attempts already waited up to the timeout in the database
+     */
+    protected boolean waitsOnDatabase() {
+        return false;
+    }
+
+    public LockWaitQueue getLockWaitQueue() {
+        return lockWaitQueue;
+    }
+
+    private void awaitRelease(final Waiter waiter, final String lockName) {
+        final long waitNanos = getWaitNanos(lockName);
+        waitProf.executeWithProfiling(ProfilingFeatureType.GLOCK, "wait", new WithProfilingCallback<Void, RuntimeException>() {
+            @Override
+            public Void execute() throws RuntimeException {
+                try {
+                    waiter.await(waitNanos, TimeUnit.NANOSECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("GlobalLockerBase got interrupted", e);
+                }
+                return null;
+            }
+        });
+    }
+
+    private long getWaitNanos(final String lockName) {
+        final long timeoutNanos = timeUnit.toNanos(timeout);
+        if (isHeldLocally(lockName)) {
+            return timeoutNanos;
         }
+        // Held by another node: jitter the backoff so that contending nodes don't retry in lockstep, and keep it short
+        // if the database already waited for us
+        final long minWaitNanos = waitsOnDatabase() ? 0 : timeoutNanos / 2;
+        return minWaitNanos + ThreadLocalRandom.current().nextLong(timeoutNanos / 2 + 1);
     }
 }
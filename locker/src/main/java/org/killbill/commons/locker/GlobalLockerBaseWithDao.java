@@ -21,10 +21,15 @@ package org.killbill.commons.locker;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
+import org.killbill.commons.locker.LockSessionManager.LockSession;
+import org.killbill.commons.locker.ReentrantLock.ReentrantLockState;
+import org.killbill.commons.locker.ReentrantLock.TryAcquireLockState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,16 +43,54 @@ public abstract class GlobalLockerBaseWithDao extends GlobalLockerBase {
     protected final GlobalLockDao globalLockDao;
 
     private final DataSource dataSource;
+    private final LockSessionManager lockSessionManager;
+    private final ResetReentrantLockCallback resetCallback;
 
     public GlobalLockerBaseWithDao(final DataSource dataSource, final GlobalLockDao globalLockDao, final long timeout, final TimeUnit timeUnit) {
+        this(dataSource, globalLockDao, timeout, timeUnit, null);
+    }
+
+    /**
+     * @param lockSessionManager when not null, locks are multiplexed onto its sessions instead of holding one
+     *                           connection of the {@code dataSource} each
+     */
+    public GlobalLockerBaseWithDao(final DataSource dataSource, final GlobalLockDao globalLockDao, final long timeout, final TimeUnit timeUnit, final LockSessionManager lockSessionManager) {
         super(timeout, timeUnit);
         this.dataSource = dataSource;
         this.globalLockDao = globalLockDao;
+        this.lockSessionManager = lockSessionManager;
+        this.resetCallback = new ResetReentrantLockCallback() {
+            @Override
+            public boolean reset(final String lockName) {
+                return lockTable.releaseLock(lockName);
+            }
+
+            @Override
+            public void lockReleased(final String lockName) {
+                GlobalLockerBaseWithDao.this.lockReleased(lockName);
+            }
+        };
+    }
+
+    public LockSessionManager getLockSessionManager() {
+        return lockSessionManager;
+    }
+
+    /**
+     * Closes the lock sessions, if any. Locks still held through them are dropped by the database.
+     */
+    public void close() {
+        if (lockSessionManager != null) {
+            lockSessionManager.close();
+        }
     }
 
     @Override
     public boolean isFree(final String service, final String lockKey) {
         final String lockName = getLockName(service, lockKey);
+        if (lockSessionManager != null && lockSessionManager.isHeld(lockName)) {
+            return false;
+        }
 
         Connection connection = null;
         try {
@@ -69,18 +112,17 @@ public abstract class GlobalLockerBaseWithDao extends GlobalLockerBase {
 
     @Override
     protected GlobalLock doLock(final String lockName) {
+        if (lockSessionManager != null) {
+            return doLockWithSession(lockName);
+        }
+
         Connection connection = null;
         boolean obtained = false;
         try {
             connection = dataSource.getConnection();
             obtained = globalLockDao.lock(connection, lockName, timeout, timeUnit);
             if (obtained) {
-                final GlobalLock lock = getGlobalLock(connection, lockName, new ResetReentrantLockCallback() {
-                    @Override
-                    public boolean reset(final String lockName) {
-                        return lockTable.releaseLock(lockName);
-                    }
-                });
+                final GlobalLock lock = getGlobalLock(connection, lockName, resetCallback);
                 lockTable.createLock(lockName, lock);
                 return lock;
             }
@@ -98,5 +140,104 @@ public abstract class GlobalLockerBaseWithDao extends GlobalLockerBase {
         return null;
     }
 
+    @Override
+    protected GlobalLock lockAll(final List<String> lockNames) {
+        if (lockNames.size() == 1) {
+            return super.lockAll(lockNames);
+        }
+
+        // Locks already held by the current request are re-entered, the others are acquired in a single statement
+        final List<GlobalLock> locks = new ArrayList<GlobalLock>(lockNames.size());
+        final List<String> lockNamesToAcquire = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            final TryAcquireLockState lockState = lockTable.tryAcquireLockForExistingOwner(lockName);
+            if (lockState.getLockState() == ReentrantLockState.HELD_OWNER) {
+                locks.add(lockState.getOriginalLock());
+            } else if (lockState.getLockState() == ReentrantLockState.HELD_NOT_OWNER) {
+                new CompositeGlobalLock(locks).release();
+                return null;
+            } else {
+                lockNamesToAcquire.add(lockName);
+            }
+        }
+
+        if (!lockNamesToAcquire.isEmpty()) {
+            final GlobalLock lock = doLockAll(lockNamesToAcquire);
+            if (lock == null) {
+                new CompositeGlobalLock(locks).release();
+                return null;
+            }
+            locks.add(lock);
+        }
+        return new CompositeGlobalLock(locks);
+    }
+
+    private GlobalLock doLockAll(final List<String> lockNames) {
+        if (lockSessionManager != null) {
+            return doLockAllWithSession(lockNames);
+        }
+
+        Connection connection = null;
+        boolean obtained = false;
+        try {
+            connection = dataSource.getConnection();
+            obtained = globalLockDao.lockAll(connection, lockNames);
+            if (obtained) {
+                final GlobalLockBatch batch = new GlobalLockBatch(connection, lockNames, globalLockDao, resetCallback);
+                for (final String lockName : lockNames) {
+                    lockTable.createLock(lockName, batch.getLock(lockName));
+                }
+                return batch;
+            }
+        } catch (final SQLException e) {
+            logger.warn("Unable to obtain locks for {}", lockNames, e);
+        } finally {
+            if (!obtained && connection != null) {
+                try {
+                    connection.close();
+                } catch (final SQLException e) {
+                    logger.warn("Unable to close connection", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected boolean isHeldLocally(final String lockName) {
+        return super.isHeldLocally(lockName) || (lockSessionManager != null && lockSessionManager.isHeld(lockName));
+    }
+
+    @Override
+    protected boolean waitsOnDatabase() {
+        // Lock sessions are shared, they never wait
+        return lockSessionManager == null && globalLockDao.waitsUpTo(timeout, timeUnit);
+    }
+
+    private GlobalLock doLockWithSession(final String lockName) {
+        final LockSession session = lockSessionManager.lock(lockName);
+        if (session == null) {
+            return null;
+        }
+        final GlobalLock lock = new LockSessionGlobalLock(lockSessionManager, session, lockName, resetCallback);
+        lockTable.createLock(lockName, lock);
+        return lock;
+    }
+
+    // All the locks of the batch are acquired through the same session
+    private GlobalLock doLockAllWithSession(final List<String> lockNames) {
+        final LockSession session = lockSessionManager.lockAll(lockNames);
+        if (session == null) {
+            return null;
+        }
+        final List<GlobalLock> locks = new ArrayList<GlobalLock>(lockNames.size());
+        for (final String lockName : lockNames) {
+            final GlobalLock lock = new LockSessionGlobalLock(lockSessionManager, session, lockName, resetCallback);
+            lockTable.createLock(lockName, lock);
+            locks.add(lock);
+        }
+        return new CompositeGlobalLock(locks);
+    }
+
     protected abstract GlobalLock getGlobalLock(final Connection connection, final String lockName, final ResetReentrantLockCallback resetCb);
 }
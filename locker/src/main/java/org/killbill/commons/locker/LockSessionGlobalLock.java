@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import org.killbill.commons.locker.LockSessionManager.LockSession;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Lock held through a {@link LockSessionManager}: releasing it keeps the underlying session open.
+ * <p>
+ * If the session is reset while the lock is held, the manager's {@link LostLockListener}s are notified.
+ */
+public class LockSessionGlobalLock implements GlobalLock {
+
+    private final LockSessionManager lockSessionManager;
+    private final LockSession session;
+    private final String lockName;
+    private final ResetReentrantLockCallback resetCallback;
+    private final Profiling<Void, RuntimeException> prof;
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public LockSessionGlobalLock(final LockSessionManager lockSessionManager, final LockSession session, final String lockName, final ResetReentrantLockCallback resetCallback) {
+        this.lockSessionManager = lockSessionManager;
+        this.session = session;
+        this.lockName = lockName;
+        this.resetCallback = resetCallback;
+        this.prof = new Profiling<Void, RuntimeException>();
+    }
+
+    @Override
+    public void release() {
+        prof.executeWithProfiling(ProfilingFeatureType.GLOCK, "release", new WithProfilingCallback<Void, RuntimeException>() {
+            @Override
+            public Void execute() throws RuntimeException {
+                if (resetCallback != null && !resetCallback.reset(lockName)) {
+                    // We are not the last one using that lock, bail early
+                    return null;
+                }
+                lockSessionManager.release(session, lockName);
+                if (resetCallback != null) {
+                    resetCallback.lockReleased(lockName);
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Multiplexes session scoped database locks (MySQL GET_LOCK, PostgreSQL advisory locks) onto a fixed number of
+ * dedicated connections, instead of pinning one connection of the pool per lock held.
+ * <p>
+ * Both databases let a session acquire the same lock more than once, so mutual exclusion between the threads of this
+ * node is enforced locally: a lock held through the manager is never requested again from the database until it
+ * has been released.
+ * <p>
+ * The connections are opened lazily from the provided {@code DataSource} (ideally a small pool dedicated to locking)
+ * and kept open until {@link #close()}. A session is only reset when its connection is no longer valid: the database
+ * then drops all the locks of the session, which are reported as lost to the registered {@link LostLockListener}s.
+ */
+public class LockSessionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(LockSessionManager.class);
+
+    private static final int VALIDATION_TIMEOUT_SEC = 5;
+
+    private final DataSource dataSource;
+    private final GlobalLockDao globalLockDao;
+    private final LockSession[] sessions;
+    private final Set<String> heldLocks;
+    private final List<LostLockListener> lostLockListeners;
+
+    private final AtomicLong nbLocksAcquired;
+    private final AtomicLong nbLocksFailed;
+    private final AtomicLong nbSessionsReset;
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public LockSessionManager(final DataSource dataSource, final GlobalLockDao globalLockDao, final int nbSessions) {
+        if (nbSessions <= 0) {
+            throw new IllegalArgumentException("Invalid number of lock sessions " + nbSessions);
+        }
+        this.dataSource = dataSource;
+        this.globalLockDao = globalLockDao;
+        this.sessions = new LockSession[nbSessions];
+        for (int i = 0; i < nbSessions; i++) {
+            sessions[i] = new LockSession();
+        }
+        this.heldLocks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.lostLockListeners = new CopyOnWriteArrayList<LostLockListener>();
+        this.nbLocksAcquired = new AtomicLong();
+        this.nbLocksFailed = new AtomicLong();
+        this.nbSessionsReset = new AtomicLong();
+    }
+
+    /**
+     * @return the session now holding the lock, or null if the lock could not be obtained
+     */
+    public LockSession lock(final String lockName) {
+        if (!heldLocks.add(lockName)) {
+            // Held by another thread on this node
+            nbLocksFailed.incrementAndGet();
+            return null;
+        }
+
+        final LockSession session = sessions[(lockName.hashCode() & Integer.MAX_VALUE) % sessions.length];
+        boolean obtained = false;
+        try {
+            obtained = session.lock(lockName);
+        } finally {
+            if (obtained) {
+                nbLocksAcquired.incrementAndGet();
+            } else {
+                heldLocks.remove(lockName);
+                nbLocksFailed.incrementAndGet();
+            }
+            notifyLostLocks(session);
+        }
+        return obtained ? session : null;
+    }
+
+    /**
+     * Acquire all the locks through a single session, in one {@link GlobalLockDao#lockAll(Connection, List)} call.
+     *
+     * @return the session now holding all the locks, or null if any of them could not be obtained (none is held then)
+     */
+    public LockSession lockAll(final List<String> lockNames) {
+        final List<String> added = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            if (!heldLocks.add(lockName)) {
+                // Held by another thread on this node
+                heldLocks.removeAll(added);
+                nbLocksFailed.incrementAndGet();
+                return null;
+            }
+            added.add(lockName);
+        }
+
+        // The batch can't be split across sessions: pick it from the first (canonical) lock name
+        final LockSession session = sessions[(lockNames.get(0).hashCode() & Integer.MAX_VALUE) % sessions.length];
+        boolean obtained = false;
+        try {
+            obtained = session.lockAll(lockNames);
+        } finally {
+            if (obtained) {
+                nbLocksAcquired.addAndGet(lockNames.size());
+            } else {
+                heldLocks.removeAll(lockNames);
+                nbLocksFailed.incrementAndGet();
+            }
+            notifyLostLocks(session);
+        }
+        return obtained ? session : null;
+    }
+
+    public void release(final LockSession session, final String lockName) {
+        try {
+            if (session.release(lockName)) {
+                heldLocks.remove(lockName);
+            }
+        } finally {
+            notifyLostLocks(session);
+        }
+    }
+
+    public void addLostLockListener(final LostLockListener listener) {
+        lostLockListeners.add(listener);
+    }
+
+    public void removeLostLockListener(final LostLockListener listener) {
+        lostLockListeners.remove(listener);
+    }
+
+    public boolean isHeld(final String lockName) {
+        return heldLocks.contains(lockName);
+    }
+
+    public void close() {
+        for (final LockSession session : sessions) {
+            session.reset();
+            notifyLostLocks(session);
+        }
+    }
+
+    // Outside of the session monitor, listeners may release their locks right away
+    private void notifyLostLocks(final LockSession session) {
+        final List<String> lostLockNames = session.takeLostLockNamesToNotify();
+        if (lostLockNames == null) {
+            return;
+        }
+        for (final String lockName : lostLockNames) {
+            for (final LostLockListener listener : lostLockListeners) {
+                try {
+                    listener.lockLost(lockName);
+                } catch (final RuntimeException e) {
+                    logger.warn("Listener {} failed to handle lost lock {}", listener, lockName, e);
+                }
+            }
+        }
+    }
+
+    public int getNbSessions() {
+        return sessions.length;
+    }
+
+    public int getNbOpenSessions() {
+        int nbOpenSessions = 0;
+        for (final LockSession session : sessions) {
+            if (session.isOpen()) {
+                nbOpenSessions++;
+            }
+        }
+        return nbOpenSessions;
+    }
+
+    public int getNbHeldLocks() {
+        return heldLocks.size();
+    }
+
+    public long getNbLocksAcquired() {
+        return nbLocksAcquired.get();
+    }
+
+    public long getNbLocksFailed() {
+        return nbLocksFailed.get();
+    }
+
+    public long getNbSessionsReset() {
+        return nbSessionsReset.get();
+    }
+
+    // JDBC connections aren't meant to be used concurrently: all calls are serialized on the session. Locks are
+    // requested without waiting on the database side, so the monitor is only held for one round trip.
+    public final class LockSession {
+
+        // Locks held in the database through this session
+        private final Set<String> lockNames = new HashSet<String>();
+        // Locks dropped by a reset, until their owner releases them
+        private final Set<String> lostLockNames = new HashSet<String>();
+        // Locks dropped by a reset, not reported to the listeners yet
+        private List<String> lostLockNamesToNotify;
+
+        private Connection connection;
+
+        private synchronized boolean lock(final String lockName) {
+            try {
+                // Never wait in the database, this would block the whole session
+                final boolean obtained = globalLockDao.lock(getConnection(), lockName, 0, TimeUnit.MILLISECONDS);
+                if (obtained) {
+                    lockNames.add(lockName);
+                }
+                return obtained;
+            } catch (final SQLException e) {
+                logger.warn("Unable to obtain lock for {}", lockName, e);
+                resetIfInvalid();
+                return false;
+            }
+        }
+
+        private synchronized boolean lockAll(final List<String> lockNamesToAcquire) {
+            try {
+                // Never waits in the database either
+                final boolean obtained = globalLockDao.lockAll(getConnection(), lockNamesToAcquire);
+                if (obtained) {
+                    lockNames.addAll(lockNamesToAcquire);
+                }
+                return obtained;
+            } catch (final SQLException e) {
+                logger.warn("Unable to obtain locks for {}", lockNamesToAcquire, e);
+                resetIfInvalid();
+                return false;
+            }
+        }
+
+        /**
+         * @return true if the lock is no longer held in the database
+         */
+        private synchronized boolean release(final String lockName) {
+            if (!lockNames.contains(lockName)) {
+                // The session was reset in the meantime, the database already dropped that lock
+                lostLockNames.remove(lockName);
+                return true;
+            }
+
+            try {
+                globalLockDao.releaseLock(connection, lockName);
+                lockNames.remove(lockName);
+                return true;
+            } catch (final SQLException e) {
+                if (resetIfInvalid()) {
+                    logger.warn("Unable to release lock for {}, session was reset", lockName, e);
+                    lostLockNames.remove(lockName);
+                    return true;
+                }
+                // Don't drop the other locks of the session: keep that one held, until the session is reset
+                logger.error("Unable to release lock for {}, it remains held by the session", lockName, e);
+                return false;
+            }
+        }
+
+        private synchronized List<String> takeLostLockNamesToNotify() {
+            final List<String> toNotify = lostLockNamesToNotify;
+            lostLockNamesToNotify = null;
+            return toNotify;
+        }
+
+        private synchronized boolean isOpen() {
+            return connection != null;
+        }
+
+        // Statement level errors (e.g. timeouts) leave the session and its other locks untouched
+        private boolean resetIfInvalid() {
+            if (connection == null) {
+                return false;
+            }
+            try {
+                if (connection.isValid(VALIDATION_TIMEOUT_SEC)) {
+                    return false;
+                }
+            } catch (final SQLException e) {
+                logger.warn("Unable to validate connection", e);
+            }
+            reset();
+            nbSessionsReset.incrementAndGet();
+            return true;
+        }
+
+        private synchronized void reset() {
+            if (!lockNames.isEmpty()) {
+                logger.error("Lock session reset, locks {} are lost", lockNames);
+                lostLockNames.addAll(lockNames);
+                if (lostLockNamesToNotify == null) {
+                    lostLockNamesToNotify = new ArrayList<String>(lockNames);
+                } else {
+                    lostLockNamesToNotify.addAll(lockNames);
+                }
+                lockNames.clear();
+            }
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                logger.warn("Unable to close connection", e);
+            } finally {
+                connection = null;
+            }
+        }
+
+        private Connection getConnection() throws SQLException {
+            if (connection == null) {
+                connection = dataSource.getConnection();
+            }
+            return connection;
+        }
+    }
+}
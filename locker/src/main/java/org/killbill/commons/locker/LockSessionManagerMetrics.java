@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.commons.locker;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Exposes the {@link LockSessionManager} statistics.
+ * <p>
+ * Kept separate from the manager, as the metrics library is an optional dependency.
+ */
+public final class LockSessionManagerMetrics {
+
+    private LockSessionManagerMetrics() {}
+
+    /**
+     * @param metricRegistry the Dropwizard MetricRegistry
+     * @param name           prefix of the gauges names, to tell multiple managers apart (e.g. the locker name)
+     */
+    public static void register(final MetricRegistry metricRegistry, final String name, final LockSessionManager lockSessionManager) {
+        metricRegistry.register(MetricRegistry.name(LockSessionManager.class, name, "openSessions"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return lockSessionManager.getNbOpenSessions();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(LockSessionManager.class, name, "heldLocks"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return lockSessionManager.getNbHeldLocks();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(LockSessionManager.class, name, "locksAcquired"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return lockSessionManager.getNbLocksAcquired();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(LockSessionManager.class, name, "locksFailed"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return lockSessionManager.getNbLocksFailed();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(LockSessionManager.class, name, "sessionsReset"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return lockSessionManager.getNbSessionsReset();
+            }
+        });
+    }
+}
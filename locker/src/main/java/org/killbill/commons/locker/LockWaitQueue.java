@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+
+/**
+ * In-JVM wait queue for global locks: threads failing to acquire a lock park here and are woken up as soon as a lock
+ * of the same name is released on this node, instead of sleeping for a fixed amount of time.
+ * <p>
+ * Waiters need to {@link #register(String) register} <i>before</i> attempting to acquire the lock, so that a release
+ * happening between a failed attempt and the wait isn't missed.
+ */
+public class LockWaitQueue {
+
+    // Wait times histogram: bucket i counts the waits shorter than 2^i ms, the last one the longer waits
+    public static final int NB_WAIT_TIME_BUCKETS = 16;
+
+    // The waiters count of a lock is only updated within compute calls (atomic per key, no global monitor)
+    private static final BiFunction<String, Waiters, Waiters> REGISTER = new BiFunction<String, Waiters, Waiters>() {
+        @Override
+        public Waiters apply(final String lockName, final Waiters existing) {
+            final Waiters waiters = existing == null ? new Waiters() : existing;
+            waiters.nbWaiters++;
+            return waiters;
+        }
+    };
+
+    private static final BiFunction<String, Waiters, Waiters> UNREGISTER = new BiFunction<String, Waiters, Waiters>() {
+        @Override
+        public Waiters apply(final String lockName, final Waiters existing) {
+            return --existing.nbWaiters == 0 ? null : existing;
+        }
+    };
+
+    private final ConcurrentHashMap<String, Waiters> waitersPerLock = new ConcurrentHashMap<String, Waiters>();
+
+    private final AtomicLong nbWaits = new AtomicLong();
+    private final AtomicLong nbWakeUps = new AtomicLong();
+    private final AtomicLong waitTimeNanos = new AtomicLong();
+    private final AtomicLongArray waitTimeBuckets = new AtomicLongArray(NB_WAIT_TIME_BUCKETS);
+
+    public Waiter register(final String lockName) {
+        final Waiters waiters = waitersPerLock.compute(lockName, REGISTER);
+        return new Waiter(lockName, waiters, waiters.getGeneration());
+    }
+
+    /**
+     * Wake up all the threads waiting on that lock.
+     */
+    public void signal(final String lockName) {
+        final Waiters waiters = waitersPerLock.get(lockName);
+        if (waiters != null) {
+            waiters.signal();
+        }
+    }
+
+    public int getNbWaitingLocks() {
+        return waitersPerLock.size();
+    }
+
+    public long getNbWaits() {
+        return nbWaits.get();
+    }
+
+    /**
+     * @return the number of waits cut short by a release of the lock on this node
+     */
+    public long getNbWakeUps() {
+        return nbWakeUps.get();
+    }
+
+    public long getWaitTimeNanos() {
+        return waitTimeNanos.get();
+    }
+
+    public long[] getWaitTimeHistogram() {
+        final long[] result = new long[NB_WAIT_TIME_BUCKETS];
+        for (int i = 0; i < NB_WAIT_TIME_BUCKETS; i++) {
+            result[i] = waitTimeBuckets.get(i);
+        }
+        return result;
+    }
+
+    private void unregister(final String lockName) {
+        waitersPerLock.computeIfPresent(lockName, UNREGISTER);
+    }
+
+    private void recordWait(final long waitedNanos, final boolean wokenUp) {
+        nbWaits.incrementAndGet();
+        if (wokenUp) {
+            nbWakeUps.incrementAndGet();
+        }
+        waitTimeNanos.addAndGet(waitedNanos);
+
+        final long waitedMillis = TimeUnit.NANOSECONDS.toMillis(waitedNanos);
+        final int bucket = 64 - Long.numberOfLeadingZeros(waitedMillis);
+        waitTimeBuckets.incrementAndGet(Math.min(bucket, NB_WAIT_TIME_BUCKETS - 1));
+    }
+
+    public final class Waiter {
+
+        private final String lockName;
+        private final Waiters waiters;
+        private final long generation;
+
+        private Waiter(final String lockName, final Waiters waiters, final long generation) {
+            this.lockName = lockName;
+            this.waiters = waiters;
+            this.generation = generation;
+        }
+
+        /**
+         * Wait until the lock is released on this node (since the registration) or the timeout expires.
+         *
+         * @return true if the lock was released
+         */
+        public boolean await(final long timeout, final TimeUnit timeUnit) throws InterruptedException {
+            final long startNanos = System.nanoTime();
+            final boolean released = waiters.await(generation, timeUnit.toNanos(timeout));
+            recordWait(System.nanoTime() - startNanos, released);
+            return released;
+        }
+
+        public void unregister() {
+            LockWaitQueue.this.unregister(lockName);
+        }
+    }
+
+    private static final class Waiters {
+
+        // Only updated by REGISTER and UNREGISTER
+        private int nbWaiters;
+
+        // Guarded by this
+        private long generation;
+
+        private synchronized long getGeneration() {
+            return generation;
+        }
+
+        private synchronized void signal() {
+            generation++;
+            notifyAll();
+        }
+
+        private synchronized boolean await(final long fromGeneration, final long timeoutNanos) throws InterruptedException {
+            final long deadlineNanos = System.nanoTime() + timeoutNanos;
+            long remainingNanos = timeoutNanos;
+            while (generation == fromGeneration && remainingNanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                remainingNanos = deadlineNanos - System.nanoTime();
+            }
+            return generation != fromGeneration;
+        }
+    }
+}
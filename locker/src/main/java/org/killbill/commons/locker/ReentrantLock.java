@@ -22,15 +22,19 @@ package org.killbill.commons.locker;
 import org.killbill.commons.request.Request;
 import org.killbill.commons.request.RequestData;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ReentrantLock {
 
-    private final Map<String, LockHolder> lockTable;
+    private static final TryAcquireLockState FREE_STATE = new TryAcquireLockState(ReentrantLockState.FREE);
+    private static final TryAcquireLockState HELD_NOT_OWNER_STATE = new TryAcquireLockState(ReentrantLockState.HELD_NOT_OWNER);
+
+    // Per-key state, removed on last release: callers only contend on the LockHolder of the lock they are interested in
+    private final ConcurrentMap<String, LockHolder> lockTable;
 
     public ReentrantLock() {
-        this.lockTable = new HashMap<String, LockHolder>();
+        this.lockTable = new ConcurrentHashMap<String, LockHolder>();
     }
 
     public enum ReentrantLockState {
@@ -70,17 +74,22 @@ public class ReentrantLock {
      */
     public TryAcquireLockState tryAcquireLockForExistingOwner(final String lockName) {
 
-        synchronized (lockTable) {
-            final LockHolder lockHolder = lockTable.get(lockName);
-            if (lockHolder == null) {
-                return new TryAcquireLockState(ReentrantLockState.FREE);
+        final LockHolder lockHolder = lockTable.get(lockName);
+        if (lockHolder == null) {
+            return FREE_STATE;
+        }
+
+        synchronized (lockHolder) {
+            if (lockHolder.isReleased()) {
+                // Released in the meantime
+                return FREE_STATE;
             }
 
             final String maybeNullRequestId = getRequestId();
             if (maybeNullRequestId == null || !lockHolder.getRequestId().equals(maybeNullRequestId)) {
-                return new TryAcquireLockState(ReentrantLockState.HELD_NOT_OWNER);
+                return HELD_NOT_OWNER_STATE;
             } else {
-                // Increment value before we return while we hold the lockTable lock.
+                // Increment value before we return while we hold the lockHolder lock.
                 lockHolder.increment();
                 return new TryAcquireLockState(ReentrantLockState.HELD_OWNER, lockHolder.getOriginalLock());
             }
@@ -100,15 +109,12 @@ public class ReentrantLock {
             return;
         }
 
-        synchronized (lockTable) {
-            LockHolder lockHolder = lockTable.get(lockName);
-            if (lockHolder != null) {
-                throw new IllegalStateException(String.format("ReentrantLock createLock %s : lock already current request = %s, owner request = %s", lockName, requestId, lockHolder.getRequestId()));
-            }
+        final LockHolder lockHolder = new LockHolder(requestId, originalLock);
+        lockHolder.increment();
 
-            lockHolder = new LockHolder(requestId, originalLock);
-            lockTable.put(lockName, lockHolder);
-            lockHolder.increment();
+        final LockHolder existingLockHolder = lockTable.putIfAbsent(lockName, lockHolder);
+        if (existingLockHolder != null) {
+            throw new IllegalStateException(String.format("ReentrantLock createLock %s : lock already current request = %s, owner request = %s", lockName, requestId, existingLockHolder.getRequestId()));
         }
     }
 
@@ -129,9 +135,13 @@ public class ReentrantLock {
             return true;
         }
 
-        synchronized (lockTable) {
-            final LockHolder lockHolder = lockTable.get(lockName);
-            if (lockHolder == null) {
+        final LockHolder lockHolder = lockTable.get(lockName);
+        if (lockHolder == null) {
+            throw new IllegalStateException(String.format("ReentrantLock releaseLock %s : cannot find lock in the table, current request = %s", lockName, requestId));
+        }
+
+        synchronized (lockHolder) {
+            if (lockHolder.isReleased()) {
                 throw new IllegalStateException(String.format("ReentrantLock releaseLock %s : cannot find lock in the table, current request = %s", lockName, requestId));
             }
 
@@ -140,18 +150,22 @@ public class ReentrantLock {
             }
             final boolean free = lockHolder.decrement();
             if (free) {
-                lockTable.remove(lockName);
+                lockTable.remove(lockName, lockHolder);
             }
             return free;
         }
     }
 
+    public boolean isHeld(final String lockName) {
+        return lockTable.containsKey(lockName);
+    }
 
     private String getRequestId() {
         final RequestData requestData = Request.getPerThreadRequestData();
         return requestData != null ? requestData.getRequestId() : null;
     }
 
+    // Guarded by its own monitor
     private static class LockHolder {
 
         private final String requestId;
@@ -175,6 +189,10 @@ public class ReentrantLock {
             return --refCount == 0;
         }
 
+        public boolean isReleased() {
+            return refCount == 0;
+        }
+
         public String getRequestId() {
             return requestId;
         }
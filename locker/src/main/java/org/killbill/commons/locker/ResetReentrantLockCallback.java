@@ -21,4 +21,10 @@ package org.killbill.commons.locker;
 
 public interface ResetReentrantLockCallback {
     boolean reset(String lockName);
+
+    /**
+     * Invoked once the underlying lock has been released (no-op by default).
+     */
+    default void lockReleased(final String lockName) {
+    }
 }
@@ -19,10 +19,9 @@
 
 package org.killbill.commons.locker.memory;
 
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.killbill.commons.locker.GlobalLock;
 import org.killbill.commons.locker.GlobalLocker;
@@ -30,44 +29,35 @@ import org.killbill.commons.locker.GlobalLockerBase;
 
 public class MemoryGlobalLocker extends GlobalLockerBase implements GlobalLocker {
 
-    private final Map<String, AtomicBoolean> locks = new ConcurrentHashMap<String, AtomicBoolean>();
+    // Locks currently held, removed on release
+    private final ConcurrentMap<String, GlobalLock> locks = new ConcurrentHashMap<String, GlobalLock>();
 
     public MemoryGlobalLocker() {
         super(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public synchronized boolean isFree(final String service, final String lockKey) {
+    public boolean isFree(final String service, final String lockKey) {
         final String lockName = getLockName(service, lockKey);
-        return isFree(lockName);
-    }
-
-    private synchronized Boolean isFree(final String lockName) {
-        final AtomicBoolean lock = locks.get(lockName);
-        return lock == null || !lock.get();
+        return !locks.containsKey(lockName);
     }
 
     @Override
-    protected synchronized GlobalLock doLock(final String lockName) {
-        if (!isFree(lockName)) {
-            return null;
-        }
-
-        if (locks.get(lockName) == null) {
-            locks.put(lockName, new AtomicBoolean(true));
-        } else {
-            locks.get(lockName).set(true);
-        }
-
+    protected GlobalLock doLock(final String lockName) {
         final GlobalLock lock = new GlobalLock() {
             @Override
             public void release() {
                 if (lockTable.releaseLock(lockName)) {
-                    locks.get(lockName).set(false);
+                    locks.remove(lockName, this);
+                    lockReleased(lockName);
                 }
             }
         };
 
+        if (locks.putIfAbsent(lockName, lock) != null) {
+            return null;
+        }
+
         lockTable.createLock(lockName, lock);
 
         return lock;
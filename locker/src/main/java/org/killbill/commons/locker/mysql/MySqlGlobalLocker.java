@@ -22,6 +22,7 @@ package org.killbill.commons.locker.mysql;
 import org.killbill.commons.locker.GlobalLock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.commons.locker.GlobalLockerBaseWithDao;
+import org.killbill.commons.locker.LockSessionManager;
 import org.killbill.commons.locker.ResetReentrantLockCallback;
 
 import javax.sql.DataSource;
@@ -39,6 +40,17 @@ public class MySqlGlobalLocker extends GlobalLockerBaseWithDao implements Global
         super(dataSource, new MysqlGlobalLockDao(), timeout, timeUnit);
     }
 
+    /**
+     * @param lockDataSource data source the {@code nbLockSessions} lock connections are taken from, ideally a small pool of its own
+     */
+    public MySqlGlobalLocker(final DataSource dataSource, final DataSource lockDataSource, final int nbLockSessions, final long timeout, final TimeUnit timeUnit) {
+        this(dataSource, new MysqlGlobalLockDao(), lockDataSource, nbLockSessions, timeout, timeUnit);
+    }
+
+    private MySqlGlobalLocker(final DataSource dataSource, final MysqlGlobalLockDao globalLockDao, final DataSource lockDataSource, final int nbLockSessions, final long timeout, final TimeUnit timeUnit) {
+        super(dataSource, globalLockDao, timeout, timeUnit, new LockSessionManager(lockDataSource, globalLockDao, nbLockSessions));
+    }
+
     @Override
     protected GlobalLock getGlobalLock(final Connection connection, final String lockName, final ResetReentrantLockCallback resetCb) {
         return new MysqlGlobalLock(connection, lockName, globalLockDao, resetCb);
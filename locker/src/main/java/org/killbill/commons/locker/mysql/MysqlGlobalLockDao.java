@@ -21,38 +21,132 @@ package org.killbill.commons.locker.mysql;
 
 import org.killbill.commons.locker.GlobalLockDao;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 // Note: the MySQL lock is connection specific (closing the connection releases the lock)
 public class MysqlGlobalLockDao implements GlobalLockDao {
 
+    private static final Pattern MARIADB_VERSION = Pattern.compile("^(\\d+)\\.(\\d+)\\.(\\d+).*MariaDB.*");
+
+    // Whether GET_LOCK accepts fractional timeouts (MariaDB 10.1.2+), unknown until the first lock attempt
+    private volatile Boolean fractionalTimeouts;
+
     @Override
     public boolean lock(final Connection connection, final String lockName, final long timeout, final TimeUnit timeUnit) throws SQLException {
+        if (fractionalTimeouts == null) {
+            fractionalTimeouts = supportsFractionalTimeouts(connection.getMetaData().getDatabaseProductVersion());
+        }
+
         //
-        // We pass 0 so as to not wait at all.
-        // This is not optimal but mysql only supports seconds and also it make the code more readable/symetrical
-        // by having the same implementation between mysql and postgreSQL (which does not have timeout)
+        // MySQL waits (natively) up to the timeout, expressed in seconds. Other servers truncate sub-second timeouts,
+        // i.e. a timeout below 1s doesn't wait at all (see waitsUpTo).
         //
-        final String sql = String.format("select GET_LOCK('%s', %d);", lockName.replace("'", "\'"), 0);
+        final String sql = String.format("select GET_LOCK('%s', %s);", lockName.replace("'", "\'"), toSeconds(timeout, timeUnit, fractionalTimeouts));
         return executeLockQuery(connection, sql);
     }
 
+    @Override
+    public boolean waitsUpTo(final long timeout, final TimeUnit timeUnit) {
+        return Boolean.TRUE.equals(fractionalTimeouts) || timeUnit.toMillis(timeout) >= 1000;
+    }
+
     @Override
     public boolean releaseLock(final Connection connection, final String lockName) throws SQLException {
         final String sql = String.format("select RELEASE_LOCK('%s');", lockName.replace("'", "\'"));
         return executeLockQuery(connection, sql);
     }
 
+    @Override
+    public boolean lockAll(final Connection connection, final List<String> lockNames) throws SQLException {
+        // Requires MySQL 5.7+ (older versions only support one lock per session)
+        final List<String> calls = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            calls.add(String.format("GET_LOCK('%s', 0)", lockName.replace("'", "\'")));
+        }
+        final boolean[] obtained = executeLockQueries(connection, calls);
+
+        final List<String> toRelease = new ArrayList<String>();
+        for (int i = 0; i < obtained.length; i++) {
+            if (obtained[i]) {
+                toRelease.add(lockNames.get(i));
+            }
+        }
+        if (toRelease.size() == lockNames.size()) {
+            return true;
+        }
+        releaseLocks(connection, toRelease);
+        return false;
+    }
+
+    @Override
+    public void releaseLocks(final Connection connection, final List<String> lockNames) throws SQLException {
+        final List<String> calls = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            calls.add(String.format("RELEASE_LOCK('%s')", lockName.replace("'", "\'")));
+        }
+        executeLockQueries(connection, calls);
+    }
+
     @Override
     public boolean isLockFree(final Connection connection, final String lockName) throws SQLException {
         final String sql = String.format("select IS_FREE_LOCK('%s');", lockName.replace("'", "\'"));
         return executeLockQuery(connection, sql);
     }
 
+    private static String toSeconds(final long timeout, final TimeUnit timeUnit, final boolean fractionalTimeouts) {
+        // A negative value would mean an infinite timeout
+        final long timeoutMillis = Math.max(0, timeUnit.toMillis(timeout));
+        if (fractionalTimeouts) {
+            return BigDecimal.valueOf(timeoutMillis, 3).toPlainString();
+        } else {
+            return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(timeoutMillis));
+        }
+    }
+
+    // E.g. 10.5.8-MariaDB or 5.5.5-10.5.8-MariaDB (MySQL drivers)
+    static boolean supportsFractionalTimeouts(final String databaseProductVersion) {
+        if (databaseProductVersion == null) {
+            return false;
+        }
+        final Matcher matcher = MARIADB_VERSION.matcher(databaseProductVersion.replaceFirst("^5\\.5\\.5-", ""));
+        if (!matcher.matches()) {
+            return false;
+        }
+        final int major = Integer.parseInt(matcher.group(1));
+        final int minor = Integer.parseInt(matcher.group(2));
+        final int patch = Integer.parseInt(matcher.group(3));
+        return major > 10 || (major == 10 && (minor > 1 || (minor == 1 && patch >= 2)));
+    }
+
+    private boolean[] executeLockQueries(final Connection connection, final List<String> calls) throws SQLException {
+        final boolean[] result = new boolean[calls.size()];
+        if (calls.isEmpty()) {
+            return result;
+        }
+        final StringBuilder query = new StringBuilder("select ");
+        for (int i = 0; i < calls.size(); i++) {
+            query.append(i == 0 ? "" : ", ").append(calls.get(i));
+        }
+        try (final Statement statement = connection.createStatement();
+             final ResultSet rs = statement.executeQuery(query.append(";").toString())) {
+            if (rs.next()) {
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = rs.getByte(i + 1) == 1;
+                }
+            }
+        }
+        return result;
+    }
+
     private boolean executeLockQuery(final Connection connection, final String query) throws SQLException {
         try (final Statement statement = connection.createStatement();
              final ResultSet rs = statement.executeQuery(query)) {
@@ -25,15 +25,35 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 // Note: the lock is connection specific (closing the connection releases the lock)
 public class PostgreSQLGlobalLockDao implements GlobalLockDao {
 
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
     @Override
     public boolean lock(final Connection connection, final String lockName, final long timeout, final TimeUnit timeUnit) throws SQLException {
-        final String sql = String.format("SELECT pg_try_advisory_lock(%s);", lockName);
-        return executeLockQuery(connection, sql);
+        final long timeoutMillis = timeUnit.toMillis(timeout);
+        // Hitting lock_timeout within a transaction would abort it
+        if (timeoutMillis <= 0 || !connection.getAutoCommit()) {
+            final String sql = String.format("SELECT pg_try_advisory_lock(%s);", lockName);
+            return executeLockQuery(connection, sql);
+        }
+
+        // Single round trip: the timeout is local to the (implicit) transaction of that statement, the subquery (volatile,
+        // thus not pulled up) sets it before the lock is requested
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute(String.format("SELECT pg_advisory_lock(%s) FROM (SELECT set_config('lock_timeout', '%d', true)) AS t;", lockName, timeoutMillis));
+            return true;
+        } catch (final SQLException e) {
+            if (LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        }
     }
 
     @Override
@@ -42,12 +62,62 @@ public class PostgreSQLGlobalLockDao implements GlobalLockDao {
         return executeLockQuery(connection, sql);
     }
 
+    @Override
+    public boolean lockAll(final Connection connection, final List<String> lockNames) throws SQLException {
+        final List<String> calls = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            calls.add(String.format("pg_try_advisory_lock(%s)", lockName));
+        }
+        final boolean[] obtained = executeLockQueries(connection, calls);
+
+        final List<String> toRelease = new ArrayList<String>();
+        for (int i = 0; i < obtained.length; i++) {
+            if (obtained[i]) {
+                toRelease.add(lockNames.get(i));
+            }
+        }
+        if (toRelease.size() == lockNames.size()) {
+            return true;
+        }
+        releaseLocks(connection, toRelease);
+        return false;
+    }
+
+    @Override
+    public void releaseLocks(final Connection connection, final List<String> lockNames) throws SQLException {
+        final List<String> calls = new ArrayList<String>(lockNames.size());
+        for (final String lockName : lockNames) {
+            calls.add(String.format("pg_advisory_unlock(%s)", lockName));
+        }
+        executeLockQueries(connection, calls);
+    }
+
     @Override
     public boolean isLockFree(final Connection connection, final String lockName) throws SQLException {
         final String sql = String.format("SELECT CASE WHEN pg_try_advisory_lock(%s) THEN pg_advisory_unlock(%s) ELSE FALSE END;", lockName, lockName);
         return executeLockQuery(connection, sql);
     }
 
+    private boolean[] executeLockQueries(final Connection connection, final List<String> calls) throws SQLException {
+        final boolean[] result = new boolean[calls.size()];
+        if (calls.isEmpty()) {
+            return result;
+        }
+        final StringBuilder query = new StringBuilder("SELECT ");
+        for (int i = 0; i < calls.size(); i++) {
+            query.append(i == 0 ? "" : ", ").append(calls.get(i));
+        }
+        try (final Statement statement = connection.createStatement();
+             final ResultSet rs = statement.executeQuery(query.append(";").toString())) {
+            if (rs.next()) {
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = rs.getBoolean(i + 1);
+                }
+            }
+        }
+        return result;
+    }
+
     private boolean executeLockQuery(final Connection connection, final String query) throws SQLException {
         try (final Statement statement = connection.createStatement();
              final ResultSet rs = statement.executeQuery(query)) {
@@ -30,6 +30,7 @@ import javax.sql.DataSource;
 import org.killbill.commons.locker.GlobalLock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.commons.locker.GlobalLockerBaseWithDao;
+import org.killbill.commons.locker.LockSessionManager;
 import org.killbill.commons.locker.ResetReentrantLockCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +49,17 @@ public class PostgreSQLGlobalLocker extends GlobalLockerBaseWithDao implements G
         super(dataSource, new PostgreSQLGlobalLockDao(), timeout, timeUnit);
     }
 
+    /**
+     * @param lockDataSource data source the {@code nbLockSessions} lock connections are taken from, ideally a small pool of its own
+     */
+    public PostgreSQLGlobalLocker(final DataSource dataSource, final DataSource lockDataSource, final int nbLockSessions, final long timeout, final TimeUnit timeUnit) {
+        this(dataSource, new PostgreSQLGlobalLockDao(), lockDataSource, nbLockSessions, timeout, timeUnit);
+    }
+
+    private PostgreSQLGlobalLocker(final DataSource dataSource, final PostgreSQLGlobalLockDao globalLockDao, final DataSource lockDataSource, final int nbLockSessions, final long timeout, final TimeUnit timeUnit) {
+        super(dataSource, globalLockDao, timeout, timeUnit, new LockSessionManager(lockDataSource, globalLockDao, nbLockSessions));
+    }
+
     @Override
     protected GlobalLock getGlobalLock(final Connection connection, final String lockName, final ResetReentrantLockCallback resetCb) {
         return new PostgreSQLGlobalLock(connection, lockName, globalLockDao, resetCb);
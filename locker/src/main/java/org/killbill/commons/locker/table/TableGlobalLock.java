@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker.table;
+
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.ResetReentrantLockCallback;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.killbill.commons.profiling.ProfilingFeature.ProfilingFeatureType;
+
+public class TableGlobalLock implements GlobalLock {
+
+    private final TableGlobalLocker locker;
+    private final String lockName;
+    private final String owner;
+    private final ResetReentrantLockCallback resetCallback;
+    private final Profiling<Void, RuntimeException> prof;
+
+    private volatile Long fencingToken;
+    private volatile boolean lost;
+    // Expiration time of the last lease recorded in the table
+    private volatile long leaseExpirationTime;
+
+    TableGlobalLock(final TableGlobalLocker locker, final String lockName, final String owner, final long leaseExpirationTime, final ResetReentrantLockCallback resetCallback) {
+        this.locker = locker;
+        this.lockName = lockName;
+        this.owner = owner;
+        this.leaseExpirationTime = leaseExpirationTime;
+        this.resetCallback = resetCallback;
+        this.prof = new Profiling<Void, RuntimeException>();
+    }
+
+    @Override
+    public void release() {
+        prof.executeWithProfiling(ProfilingFeatureType.GLOCK, "release", new WithProfilingCallback<Void, RuntimeException>() {
+            @Override
+            public Void execute() throws RuntimeException {
+                if (resetCallback != null && !resetCallback.reset(lockName)) {
+                    // We are not the last one using that lock, bail early
+                    return null;
+                }
+                locker.release(TableGlobalLock.this);
+                if (resetCallback != null) {
+                    resetCallback.lockReleased(lockName);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Token incremented each time the lock changes hands: resources protected by the lock can reject writes carrying
+     * a token lower than the last one they have seen, in case this lock expired without us knowing.
+     *
+     * @return the fencing token, or null if the lease of this lock was lost
+     */
+    public Long getFencingToken() {
+        if (fencingToken == null && !lost) {
+            fencingToken = locker.getFencingToken(this);
+        }
+        return fencingToken;
+    }
+
+    /**
+     * @return true if the lease couldn't be renewed (e.g. expired and taken over by another node)
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    String getLockName() {
+        return lockName;
+    }
+
+    String getOwner() {
+        return owner;
+    }
+
+    long getLeaseExpirationTime() {
+        return leaseExpirationTime;
+    }
+
+    void setLeaseExpirationTime(final long leaseExpirationTime) {
+        this.leaseExpirationTime = leaseExpirationTime;
+    }
+
+    void markLost() {
+        lost = true;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker.table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+// Note: unlike the MySQL and PostgreSQL locks, the lock isn't tied to the connection (a lease is recorded in the table).
+// Fencing tokens start from the acquisition time (in ms) and are incremented at least by one at each acquisition, so
+// that they keep increasing even after the row of a lock has been purged (rows are purged a while after that time).
+public class TableGlobalLockDao {
+
+    // Released (or never acquired) locks have an expiration time of 0
+    private static final long RELEASED = 0L;
+
+    private final String acquireSql;
+    private final String insertSql;
+    private final String renewSql;
+    private final String releaseSql;
+    private final String expirationTimeSql;
+    private final String leaseSql;
+    private final String fencingTokenSql;
+    private final String purgeSql;
+
+    public TableGlobalLockDao(final String tableName) {
+        this.acquireSql = String.format("update %s set owner = ?, fencing_token = greatest(fencing_token + 1, ?), expiration_time = ? where lock_name = ? and expiration_time < ?", tableName);
+        this.insertSql = String.format("insert into %s (lock_name, owner, fencing_token, expiration_time) values (?, ?, ?, ?)", tableName);
+        // Not released, and nobody took it over (even if the lease expired in the meantime)
+        this.renewSql = String.format("update %s set expiration_time = ? where lock_name = ? and owner = ? and expiration_time <> %d", tableName, RELEASED);
+        this.releaseSql = String.format("update %s set expiration_time = %d where lock_name = ? and owner = ?", tableName, RELEASED);
+        this.expirationTimeSql = String.format("select expiration_time from %s where lock_name = ?", tableName);
+        this.leaseSql = String.format("select expiration_time from %s where lock_name = ? and owner = ?", tableName);
+        this.fencingTokenSql = String.format("select fencing_token from %s where lock_name = ? and owner = ?", tableName);
+        this.purgeSql = String.format("delete from %s where expiration_time < ? and fencing_token < ?", tableName);
+    }
+
+    /**
+     * Take over the lock if it is free or its lease has expired, creating it otherwise.
+     *
+     * @return true if the lock was acquired
+     */
+    public boolean lock(final Connection connection, final String lockName, final String owner, final long now, final long expirationTime) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(acquireSql)) {
+            statement.setString(1, owner);
+            statement.setLong(2, now);
+            statement.setLong(3, expirationTime);
+            statement.setString(4, lockName);
+            statement.setLong(5, now);
+            if (statement.executeUpdate() == 1) {
+                return true;
+            }
+        }
+
+        // Either held, or first time we see that lock
+        try (final PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            statement.setString(1, lockName);
+            statement.setString(2, owner);
+            statement.setLong(3, now);
+            statement.setLong(4, expirationTime);
+            return statement.executeUpdate() == 1;
+        } catch (final SQLException e) {
+            if (isIntegrityConstraintViolation(e)) {
+                // Held by somebody else
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Extend the leases of the given locks (lock name to owner), as long as they are still ours.
+     *
+     * @return the names of the locks whose lease could not be extended
+     */
+    public List<String> renewLeases(final Connection connection, final Map<String, String> ownerPerLockName, final long expirationTime) throws SQLException {
+        final List<String> lockNames = new ArrayList<String>(ownerPerLockName.size());
+        final int[] results;
+        try (final PreparedStatement statement = connection.prepareStatement(renewSql)) {
+            for (final Entry<String, String> entry : ownerPerLockName.entrySet()) {
+                lockNames.add(entry.getKey());
+                statement.setLong(1, expirationTime);
+                statement.setString(2, entry.getKey());
+                statement.setString(3, entry.getValue());
+                statement.addBatch();
+            }
+            results = statement.executeBatch();
+        }
+
+        final List<String> lostLocks = new ArrayList<String>();
+        for (int i = 0; i < results.length; i++) {
+            final String lockName = lockNames.get(i);
+            if (results[i] == 0) {
+                lostLocks.add(lockName);
+            } else if (results[i] < 0 && !hasLease(connection, lockName, ownerPerLockName.get(lockName), expirationTime)) {
+                // The driver didn't report the number of rows affected (Statement.SUCCESS_NO_INFO, e.g. MySQL with
+                // rewriteBatchedStatements), or that statement failed: check the row
+                lostLocks.add(lockName);
+            }
+        }
+        return lostLocks;
+    }
+
+    private boolean hasLease(final Connection connection, final String lockName, final String owner, final long expirationTime) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(leaseSql)) {
+            statement.setString(1, lockName);
+            statement.setString(2, owner);
+            try (final ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getLong(1) == expirationTime;
+            }
+        }
+    }
+
+    public boolean releaseLock(final Connection connection, final String lockName, final String owner) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(releaseSql)) {
+            statement.setString(1, lockName);
+            statement.setString(2, owner);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    public boolean isLockFree(final Connection connection, final String lockName, final long now) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(expirationTimeSql)) {
+            statement.setString(1, lockName);
+            try (final ResultSet rs = statement.executeQuery()) {
+                return !rs.next() || rs.getLong(1) < now;
+            }
+        }
+    }
+
+    /**
+     * @return the fencing token of the lock, or null if the owner doesn't hold it anymore
+     */
+    public Long getFencingToken(final Connection connection, final String lockName, final String owner) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(fencingTokenSql)) {
+            statement.setString(1, lockName);
+            statement.setString(2, owner);
+            try (final ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Delete the locks which expired (or were released), and were last acquired, before the given time: a lock acquired
+     * again afterwards gets a greater fencing token, as long as the clocks didn't go back that far.
+     */
+    public int purgeExpiredLocks(final Connection connection, final long expiredBefore) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement(purgeSql)) {
+            statement.setLong(1, expiredBefore);
+            statement.setLong(2, expiredBefore);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static boolean isIntegrityConstraintViolation(final SQLException e) {
+        // SQLSTATE class 23: integrity constraint violation (e.g. duplicate key)
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker.table;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.killbill.commons.concurrent.Executors;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.GlobalLockerBase;
+import org.killbill.commons.locker.ResetReentrantLockCallback;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * GlobalLocker for engines without advisory locks (e.g. H2), backed by a lock table (see ddl.sql).
+ * <p>
+ * Each lock is a lease, recorded with its owner and a fencing token: acquiring a lock is a conditional update (or an
+ * insert the first time), no connection is held while the lock is. A background heartbeat extends the leases of the
+ * locks held by this node, so that the locks of a node which died expire automatically after the lease duration.
+ * <p>
+ * If the leases can't be renewed (e.g. the database is unreachable), the locks are reported as lost once their last
+ * lease has run out (see {@link TableGlobalLock#isLost()}).
+ * <p>
+ * The lease expiration relies on the clocks of the nodes being synchronized (to well within the lease duration).
+ */
+public class TableGlobalLocker extends GlobalLockerBase implements GlobalLocker {
+
+    public static final String DEFAULT_TABLE_NAME = "global_locks";
+
+    protected static final long DEFAULT_LEASE_MILLIS = 30000L;
+
+    // Locks are kept for a day after their last acquisition (their fencing token is based on that time)
+    private static final long PURGE_DELAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final DataSource dataSource;
+    private final TableGlobalLockDao globalLockDao;
+    private final long leaseMillis;
+    private final String nodeId;
+    private final AtomicLong ownerSequence;
+    private final ConcurrentMap<String, TableGlobalLock> heldLocks;
+    private final ResetReentrantLockCallback resetCallback;
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    private long lastPurgeTime;
+
+    public TableGlobalLocker(final DataSource dataSource) {
+        this(dataSource, DEFAULT_TABLE_NAME, DEFAULT_LEASE_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public TableGlobalLocker(final DataSource dataSource, final String tableName, final long leaseDuration, final TimeUnit leaseUnit, final long timeout, final TimeUnit timeUnit) {
+        super(timeout, timeUnit);
+        this.dataSource = dataSource;
+        this.globalLockDao = new TableGlobalLockDao(tableName);
+        this.leaseMillis = leaseUnit.toMillis(leaseDuration);
+        this.nodeId = UUID.randomUUID().toString();
+        this.ownerSequence = new AtomicLong();
+        this.heldLocks = new ConcurrentHashMap<String, TableGlobalLock>();
+        this.resetCallback = new ResetReentrantLockCallback() {
+            @Override
+            public boolean reset(final String lockName) {
+                return lockTable.releaseLock(lockName);
+            }
+
+            @Override
+            public void lockReleased(final String lockName) {
+                TableGlobalLocker.this.lockReleased(lockName);
+            }
+        };
+        this.lastPurgeTime = System.currentTimeMillis();
+
+        // Renew well before the leases expire
+        final long heartbeatMillis = Math.max(1, leaseMillis / 3);
+        this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor("TableGlobalLocker-heartbeat");
+        this.heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isFree(final String service, final String lockKey) {
+        final String lockName = getLockName(service, lockKey);
+        if (heldLocks.containsKey(lockName)) {
+            return false;
+        }
+
+        try (final Connection connection = dataSource.getConnection()) {
+            return globalLockDao.isLockFree(connection, lockName, System.currentTimeMillis());
+        } catch (final SQLException e) {
+            logger.warn("Unable to check if lock is free", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops the heartbeat. Locks still held aren't released, they will expire at the end of their lease.
+     */
+    public void close() {
+        heartbeatExecutor.shutdownNow();
+    }
+
+    @Override
+    protected GlobalLock doLock(final String lockName) {
+        final String owner = nodeId + "-" + ownerSequence.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        final long expirationTime = now + leaseMillis;
+        try (final Connection connection = dataSource.getConnection()) {
+            if (!globalLockDao.lock(connection, lockName, owner, now, expirationTime)) {
+                return null;
+            }
+        } catch (final SQLException e) {
+            logger.warn("Unable to obtain lock for {}", lockName, e);
+            return null;
+        }
+
+        final TableGlobalLock lock = new TableGlobalLock(this, lockName, owner, expirationTime, resetCallback);
+        heldLocks.put(lockName, lock);
+        lockTable.createLock(lockName, lock);
+        return lock;
+    }
+
+    @Override
+    protected boolean isHeldLocally(final String lockName) {
+        return super.isHeldLocally(lockName) || heldLocks.containsKey(lockName);
+    }
+
+    @Override
+    protected String getLockName(final String service, final String lockKey) {
+        return service + "-" + lockKey;
+    }
+
+    void release(final TableGlobalLock lock) {
+        heldLocks.remove(lock.getLockName(), lock);
+        try (final Connection connection = dataSource.getConnection()) {
+            globalLockDao.releaseLock(connection, lock.getLockName(), lock.getOwner());
+        } catch (final SQLException e) {
+            logger.warn("Unable to release lock for {}, it will expire at the end of its lease", lock.getLockName(), e);
+        }
+    }
+
+    Long getFencingToken(final TableGlobalLock lock) {
+        try (final Connection connection = dataSource.getConnection()) {
+            return globalLockDao.getFencingToken(connection, lock.getLockName(), lock.getOwner());
+        } catch (final SQLException e) {
+            logger.warn("Unable to retrieve fencing token for {}", lock.getLockName(), e);
+            return null;
+        }
+    }
+
+    private void heartbeat() {
+        final long now = System.currentTimeMillis();
+        final boolean shouldPurge = now - lastPurgeTime >= PURGE_INTERVAL_MILLIS;
+        if (heldLocks.isEmpty() && !shouldPurge) {
+            return;
+        }
+
+        final Map<String, String> ownerPerLockName = new HashMap<String, String>();
+        for (final TableGlobalLock lock : heldLocks.values()) {
+            ownerPerLockName.put(lock.getLockName(), lock.getOwner());
+        }
+
+        try (final Connection connection = dataSource.getConnection()) {
+            if (!ownerPerLockName.isEmpty()) {
+                final long expirationTime = now + leaseMillis;
+                final List<String> lostLocks = globalLockDao.renewLeases(connection, ownerPerLockName, expirationTime);
+                for (final Map.Entry<String, String> entry : ownerPerLockName.entrySet()) {
+                    final TableGlobalLock lock = heldLocks.get(entry.getKey());
+                    // Ignore locks released (and possibly re-acquired) in the meantime
+                    if (lock == null || !lock.getOwner().equals(entry.getValue())) {
+                        continue;
+                    }
+                    if (lostLocks.contains(entry.getKey())) {
+                        markLost(lock, "Lease lost for lock {}");
+                    } else {
+                        lock.setLeaseExpirationTime(expirationTime);
+                    }
+                }
+            }
+
+            if (shouldPurge) {
+                lastPurgeTime = now;
+                globalLockDao.purgeExpiredLocks(connection, now - PURGE_DELAY_MILLIS);
+            }
+        } catch (final SQLException e) {
+            logger.warn("Unable to renew the lock leases", e);
+
+            // Retried at the next heartbeat, but the leases which ran out in the meantime may be taken over
+            final long failureTime = System.currentTimeMillis();
+            for (final TableGlobalLock lock : heldLocks.values()) {
+                if (failureTime >= lock.getLeaseExpirationTime()) {
+                    markLost(lock, "Lease expired for lock {}, unable to renew it");
+                }
+            }
+        }
+    }
+
+    private void markLost(final TableGlobalLock lock, final String message) {
+        if (heldLocks.remove(lock.getLockName(), lock)) {
+            logger.error(message, lock.getLockName());
+            lock.markLost();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*! SET default_storage_engine=INNODB */;
+
+DROP TABLE IF EXISTS global_locks;
+CREATE TABLE global_locks (
+    lock_name varchar(255) NOT NULL,
+    owner varchar(128) NOT NULL,
+    fencing_token bigint NOT NULL,
+    expiration_time bigint NOT NULL,
+    PRIMARY KEY(lock_name)
+);
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.commons.locker;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.killbill.commons.locker.LockSessionManager.LockSession;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class TestLockSessionManager {
+
+    private boolean isConnectionValid;
+    private FailingGlobalLockDao globalLockDao;
+    private LockSessionManager lockSessionManager;
+    private List<String> lostLockNames;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() {
+        isConnectionValid = true;
+        globalLockDao = new FailingGlobalLockDao();
+        // Single session: all the locks share the same connection
+        lockSessionManager = new LockSessionManager(dataSource(), globalLockDao, 1);
+        lostLockNames = new ArrayList<String>();
+        lockSessionManager.addLostLockListener(new LostLockListener() {
+            @Override
+            public void lockLost(final String lockName) {
+                lostLockNames.add(lockName);
+            }
+        });
+    }
+
+    @Test(groups = "fast")
+    public void testStatementErrorKeepsOtherLocks() {
+        final LockSessionGlobalLock lock1 = lock("lock1");
+        final LockSessionGlobalLock lock2 = lock("lock2");
+
+        // The connection is still valid: only that lock attempt fails
+        globalLockDao.failingLockNames.add("lock3");
+        Assert.assertNull(lockSessionManager.lock("lock3"));
+        Assert.assertFalse(lockSessionManager.isHeld("lock3"));
+
+        Assert.assertEquals(lockSessionManager.getNbSessionsReset(), 0);
+        Assert.assertEquals(lockSessionManager.getNbOpenSessions(), 1);
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 2);
+
+        // Same for a failed release, the lock remains held
+        globalLockDao.failingLockNames.add("lock2");
+        lock2.release();
+        Assert.assertTrue(lockSessionManager.isHeld("lock2"));
+        Assert.assertEquals(lockSessionManager.getNbSessionsReset(), 0);
+
+        lock1.release();
+        Assert.assertFalse(lockSessionManager.isHeld("lock1"));
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 1);
+        Assert.assertTrue(lostLockNames.isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidConnectionLosesLocks() {
+        final LockSessionGlobalLock lock1 = lock("lock1");
+        final LockSessionGlobalLock lock2 = lock("lock2");
+
+        isConnectionValid = false;
+        globalLockDao.failingLockNames.add("lock3");
+        Assert.assertNull(lockSessionManager.lock("lock3"));
+
+        Assert.assertEquals(lockSessionManager.getNbSessionsReset(), 1);
+        Assert.assertEquals(lockSessionManager.getNbOpenSessions(), 0);
+        Assert.assertEquals(new HashSet<String>(lostLockNames), new HashSet<String>(Arrays.asList("lock1", "lock2")));
+        // Still held locally, until released by their owner
+        Assert.assertTrue(lockSessionManager.isHeld("lock1"));
+        Assert.assertNull(lockSessionManager.lock("lock1"));
+
+        isConnectionValid = true;
+        lock1.release();
+        lock2.release();
+        Assert.assertFalse(lockSessionManager.isHeld("lock1"));
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 0);
+
+        // The session is re-opened on demand
+        final LockSessionGlobalLock lock1Again = lock("lock1");
+        Assert.assertEquals(lockSessionManager.getNbOpenSessions(), 1);
+        lock1Again.release();
+        // Reported once
+        Assert.assertEquals(lostLockNames.size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testLostLockListenerCanRelease() {
+        final LockSessionGlobalLock lock1 = lock("lock1");
+        lockSessionManager.addLostLockListener(new LostLockListener() {
+            @Override
+            public void lockLost(final String lockName) {
+                // Invoked outside of the session monitor
+                lock1.release();
+            }
+        });
+
+        isConnectionValid = false;
+        globalLockDao.failingLockNames.add("lock2");
+        Assert.assertNull(lockSessionManager.lock("lock2"));
+
+        Assert.assertEquals(lostLockNames, Arrays.asList("lock1"));
+        Assert.assertFalse(lockSessionManager.isHeld("lock1"));
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testMetrics() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        LockSessionManagerMetrics.register(metricRegistry, "test", lockSessionManager);
+
+        final LockSessionGlobalLock lock1 = lock("lock1");
+        isConnectionValid = false;
+        globalLockDao.failingLockNames.add("lock2");
+        Assert.assertNull(lockSessionManager.lock("lock2"));
+
+        Assert.assertEquals(getGaugeValue(metricRegistry, "openSessions"), 0);
+        Assert.assertEquals(getGaugeValue(metricRegistry, "heldLocks"), 1);
+        Assert.assertEquals(getGaugeValue(metricRegistry, "locksAcquired"), 1);
+        Assert.assertEquals(getGaugeValue(metricRegistry, "locksFailed"), 1);
+        Assert.assertEquals(getGaugeValue(metricRegistry, "sessionsReset"), 1);
+
+        lock1.release();
+        Assert.assertEquals(getGaugeValue(metricRegistry, "heldLocks"), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testLockAll() {
+        lockSessionManager = new LockSessionManager(dataSource(), globalLockDao, 4);
+        final List<String> lockNames = Arrays.asList("lock1", "lock2", "lock3");
+
+        final LockSession session = lockSessionManager.lockAll(lockNames);
+        Assert.assertNotNull(session);
+        // A single session holds the whole batch
+        Assert.assertEquals(lockSessionManager.getNbOpenSessions(), 1);
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 3);
+        Assert.assertEquals(lockSessionManager.getNbLocksAcquired(), 3);
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 3);
+
+        // Held by another thread on this node
+        Assert.assertNull(lockSessionManager.lockAll(Arrays.asList("lock0", "lock3")));
+        Assert.assertFalse(lockSessionManager.isHeld("lock0"));
+        Assert.assertEquals(lockSessionManager.getNbLocksFailed(), 1);
+
+        for (final String lockName : lockNames) {
+            new LockSessionGlobalLock(lockSessionManager, session, lockName, null).release();
+        }
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 0);
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 0);
+
+        // Held by another node: all or nothing
+        globalLockDao.dbLocks.add("lock3");
+        Assert.assertNull(lockSessionManager.lockAll(lockNames));
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 0);
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 1);
+
+        // Statement error, the connection is still valid
+        globalLockDao.dbLocks.clear();
+        globalLockDao.failingLockNames.add("lock2");
+        Assert.assertNull(lockSessionManager.lockAll(lockNames));
+        Assert.assertEquals(lockSessionManager.getNbHeldLocks(), 0);
+        Assert.assertEquals(lockSessionManager.getNbSessionsReset(), 0);
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testDefaultLockAll() throws SQLException {
+        final Connection connection = connection();
+        Assert.assertTrue(globalLockDao.lockAll(connection, Arrays.asList("lock1", "lock2")));
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 2);
+        globalLockDao.releaseLocks(connection, Arrays.asList("lock1", "lock2"));
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 0);
+
+        // All or nothing
+        globalLockDao.dbLocks.add("lock3");
+        Assert.assertFalse(globalLockDao.lockAll(connection, Arrays.asList("lock1", "lock2", "lock3")));
+        Assert.assertEquals(globalLockDao.dbLocks.size(), 1);
+
+        globalLockDao.failingLockNames.add("lock4");
+        try {
+            globalLockDao.lockAll(connection, Arrays.asList("lock1", "lock4"));
+            Assert.fail();
+        } catch (final SQLException e) {
+            Assert.assertEquals(globalLockDao.dbLocks.size(), 1);
+        }
+    }
+
+    private long getGaugeValue(final MetricRegistry metricRegistry, final String name) {
+        return ((Number) metricRegistry.getGauges().get(MetricRegistry.name(LockSessionManager.class, "test", name)).getValue()).longValue();
+    }
+
+    private LockSessionGlobalLock lock(final String lockName) {
+        final LockSession session = lockSessionManager.lock(lockName);
+        Assert.assertNotNull(session);
+        return new LockSessionGlobalLock(lockSessionManager, session, lockName, null);
+    }
+
+    private DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getConnection".equals(method.getName())) {
+                    return connection();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("isValid".equals(method.getName())) {
+                    return isConnectionValid;
+                } else if ("close".equals(method.getName())) {
+                    // The database drops the locks of the session
+                    globalLockDao.dbLocks.clear();
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static final class FailingGlobalLockDao implements GlobalLockDao {
+
+        private final Set<String> dbLocks = new HashSet<String>();
+        private final Set<String> failingLockNames = new HashSet<String>();
+
+        @Override
+        public boolean lock(final Connection connection, final String lockName, final long timeout, final TimeUnit timeUnit) throws SQLException {
+            failIfNeeded(lockName);
+            return dbLocks.add(lockName);
+        }
+
+        @Override
+        public boolean releaseLock(final Connection connection, final String lockName) throws SQLException {
+            failIfNeeded(lockName);
+            return dbLocks.remove(lockName);
+        }
+
+        @Override
+        public boolean isLockFree(final Connection connection, final String lockName) {
+            return !dbLocks.contains(lockName);
+        }
+
+        private void failIfNeeded(final String lockName) throws SQLException {
+            if (failingLockNames.contains(lockName)) {
+                throw new SQLException("Lock wait timeout exceeded");
+            }
+        }
+    }
+}
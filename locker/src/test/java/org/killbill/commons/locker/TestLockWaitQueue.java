@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.commons.locker.LockWaitQueue.Waiter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLockWaitQueue {
+
+    @Test(groups = "fast")
+    public void testTimeout() throws InterruptedException {
+        final LockWaitQueue lockWaitQueue = new LockWaitQueue();
+
+        final Waiter waiter = lockWaitQueue.register("lock");
+        Assert.assertEquals(lockWaitQueue.getNbWaitingLocks(), 1);
+        Assert.assertFalse(waiter.await(10, TimeUnit.MILLISECONDS));
+        waiter.unregister();
+
+        Assert.assertEquals(lockWaitQueue.getNbWaitingLocks(), 0);
+        Assert.assertEquals(lockWaitQueue.getNbWaits(), 1);
+        Assert.assertEquals(lockWaitQueue.getNbWakeUps(), 0);
+        Assert.assertTrue(lockWaitQueue.getWaitTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test(groups = "fast")
+    public void testSignalBeforeAwaitIsNotLost() throws InterruptedException {
+        final LockWaitQueue lockWaitQueue = new LockWaitQueue();
+
+        final Waiter waiter = lockWaitQueue.register("lock");
+        // Released between the failed attempt and the wait
+        lockWaitQueue.signal("lock");
+        // Other locks don't matter
+        lockWaitQueue.signal("other-lock");
+
+        Assert.assertTrue(waiter.await(1, TimeUnit.MINUTES));
+        waiter.unregister();
+        Assert.assertEquals(lockWaitQueue.getNbWakeUps(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testSignalWakesUpAllWaiters() throws InterruptedException {
+        final LockWaitQueue lockWaitQueue = new LockWaitQueue();
+        final Waiter otherLockWaiter = lockWaitQueue.register("other-lock");
+
+        final int nbWaiters = 5;
+        final CountDownLatch registered = new CountDownLatch(nbWaiters);
+        final CountDownLatch wokenUp = new CountDownLatch(nbWaiters);
+        final Thread[] threads = new Thread[nbWaiters];
+        for (int i = 0; i < nbWaiters; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Waiter waiter = lockWaitQueue.register("lock");
+                    registered.countDown();
+                    try {
+                        if (waiter.await(1, TimeUnit.MINUTES)) {
+                            wokenUp.countDown();
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        waiter.unregister();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        Assert.assertTrue(registered.await(10, TimeUnit.SECONDS));
+        lockWaitQueue.signal("lock");
+        Assert.assertTrue(wokenUp.await(10, TimeUnit.SECONDS));
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(otherLockWaiter.await(0, TimeUnit.MILLISECONDS));
+        otherLockWaiter.unregister();
+        Assert.assertEquals(lockWaitQueue.getNbWaitingLocks(), 0);
+    }
+}
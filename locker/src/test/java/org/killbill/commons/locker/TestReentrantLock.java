@@ -142,4 +142,25 @@ public class TestReentrantLock {
         lockState = lockTable.tryAcquireLockForExistingOwner("snoopy");
         Assert.assertEquals(lockState.getLockState(), ReentrantLockState.HELD_NOT_OWNER);
     }
+
+    @Test(groups = "fast")
+    public void testLockRemovedOnLastRelease() {
+
+        Request.setPerThreadRequestData(new RequestData("12345"));
+
+        lockTable.createLock("foo", null);
+        Assert.assertTrue(lockTable.isHeld("foo"));
+        Assert.assertEquals(lockTable.tryAcquireLockForExistingOwner("foo").getLockState(), ReentrantLockState.HELD_OWNER);
+
+        Assert.assertFalse(lockTable.releaseLock("foo"));
+        Assert.assertTrue(lockTable.isHeld("foo"));
+        Assert.assertTrue(lockTable.releaseLock("foo"));
+        Assert.assertFalse(lockTable.isHeld("foo"));
+
+        // Another request can now create it
+        Request.setPerThreadRequestData(new RequestData("54321"));
+        Assert.assertEquals(lockTable.tryAcquireLockForExistingOwner("foo").getLockState(), ReentrantLockState.FREE);
+        lockTable.createLock("foo", null);
+        Assert.assertTrue(lockTable.releaseLock("foo"));
+    }
 }
@@ -20,18 +20,28 @@
 package org.killbill.commons.locker.memory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.killbill.commons.locker.GlobalLock;
 import org.killbill.commons.locker.GlobalLocker;
 import org.killbill.commons.locker.LockFailedException;
 import org.killbill.commons.request.Request;
 import org.killbill.commons.request.RequestData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 public class TestMemoryGlobalLocker {
 
+    private static final Logger logger = LoggerFactory.getLogger(TestMemoryGlobalLocker.class);
+
     @Test(groups = "fast")
     public void testReentrantLockInOrder() throws IOException, LockFailedException {
         final String serviceLock = "MY_LOCK_2";
@@ -110,4 +120,255 @@ public class TestMemoryGlobalLocker {
         reentrantLock2.release();
         Assert.assertTrue(locker.isFree(serviceLock, lockName));
     }
+
+    @Test(groups = "fast")
+    public void testWaiterGetsReleasedLock() throws Exception {
+        final String serviceLock = "MY_CONTENDED_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        Request.resetPerThreadRequestData();
+
+        final MemoryGlobalLocker locker = new MemoryGlobalLocker();
+        final GlobalLock lock = locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+
+        final AtomicReference<GlobalLock> waiterLock = new AtomicReference<GlobalLock>();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    waiterLock.set(locker.lockWithNumberOfTries(serviceLock, lockName, 100));
+                } catch (final LockFailedException ignored) {
+                }
+            }
+        });
+        waiter.start();
+
+        // Let the waiter fail at least once
+        while (locker.getLockWaitQueue().getNbWaitingLocks() == 0 && waiter.isAlive()) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        lock.release();
+
+        waiter.join(10000);
+        Assert.assertNotNull(waiterLock.get());
+        Assert.assertFalse(locker.isFree(serviceLock, lockName));
+
+        waiterLock.get().release();
+        Assert.assertTrue(locker.isFree(serviceLock, lockName));
+        Assert.assertEquals(locker.getLockWaitQueue().getNbWaitingLocks(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testConcurrentRequests() throws Exception {
+        final String serviceLock = "MY_CONCURRENT_LOCK";
+        final int nbThreads = 16;
+        final int nbKeys = 64;
+        final int nbIterations = 500;
+
+        final MemoryGlobalLocker locker = new MemoryGlobalLocker();
+        final AtomicInteger[] holders = new AtomicInteger[nbKeys];
+        for (int i = 0; i < nbKeys; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        final AtomicInteger nbViolations = new AtomicInteger();
+
+        final Thread[] threads = new Thread[nbThreads];
+        for (int t = 0; t < nbThreads; t++) {
+            final int threadNb = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Random random = new Random(threadNb);
+                    for (int i = 0; i < nbIterations; i++) {
+                        Request.setPerThreadRequestData(new RequestData(threadNb + "-" + i));
+                        final int key = random.nextInt(nbKeys);
+                        try {
+                            final GlobalLock lock = locker.lockWithNumberOfTries(serviceLock, String.valueOf(key), 1);
+                            // Re-entrant acquisition by the same request
+                            final GlobalLock reentrantLock = locker.lockWithNumberOfTries(serviceLock, String.valueOf(key), 1);
+                            if (holders[key].incrementAndGet() != 1) {
+                                nbViolations.incrementAndGet();
+                            }
+                            holders[key].decrementAndGet();
+                            reentrantLock.release();
+                            lock.release();
+                        } catch (final LockFailedException ignored) {
+                            // Contended
+                        } finally {
+                            Request.resetPerThreadRequestData();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(nbViolations.get(), 0);
+        for (int i = 0; i < nbKeys; i++) {
+            Assert.assertTrue(locker.isFree(serviceLock, String.valueOf(i)));
+        }
+    }
+
+    // Benchmarks the lock table itself (doLock and release), without the wait queue and profiling of lockWithNumberOfTries.
+    // Scaling beyond the number of available processors only measures the cost of contention, not parallel throughput.
+    @Test(groups = "load", enabled = false)
+    public void testAcquireReleaseThroughput() throws Exception {
+        final String serviceLock = "MY_LOAD_LOCK";
+        final int nbKeys = 4096;
+        final int nbOperationsPerThread = 1000000;
+
+        logger.info("{} available processors", Runtime.getRuntime().availableProcessors());
+        for (int nbThreads = 1; nbThreads <= 64; nbThreads *= 2) {
+            final MemoryGlobalLocker locker = new MemoryGlobalLocker();
+            final String[] lockNames = new String[nbKeys];
+            for (int i = 0; i < nbKeys; i++) {
+                lockNames[i] = locker.getLockName(serviceLock, UUID.randomUUID().toString());
+            }
+
+            final AtomicLong nbFailures = new AtomicLong();
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] threads = new Thread[nbThreads];
+            for (int t = 0; t < nbThreads; t++) {
+                final int threadNb = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Request.setPerThreadRequestData(new RequestData("request-" + threadNb));
+                        final Random random = new Random(threadNb);
+                        try {
+                            start.await();
+                            for (int i = 0; i < nbOperationsPerThread; i++) {
+                                final GlobalLock lock = locker.doLock(lockNames[random.nextInt(nbKeys)]);
+                                if (lock == null) {
+                                    nbFailures.incrementAndGet();
+                                } else {
+                                    lock.release();
+                                }
+                            }
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+
+            final long ini = System.nanoTime();
+            start.countDown();
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            final long elapsedNanos = System.nanoTime() - ini;
+
+            final long nbOperations = (long) nbThreads * nbOperationsPerThread;
+            logger.info("{} threads: {} acquire/release per second ({} contended)",
+                        nbThreads, nbOperations * 1000000000L / elapsedNanos, nbFailures.get());
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testLockAll() throws Exception {
+        final String serviceLock = "MY_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+        final String key3 = UUID.randomUUID().toString();
+
+        Request.resetPerThreadRequestData();
+
+        final MemoryGlobalLocker locker = new MemoryGlobalLocker();
+        final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key3, key1, key2, key1), 1);
+        Assert.assertFalse(locker.isFree(serviceLock, key1));
+        Assert.assertFalse(locker.isFree(serviceLock, key2));
+        Assert.assertFalse(locker.isFree(serviceLock, key3));
+
+        lock.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+        Assert.assertTrue(locker.isFree(serviceLock, key2));
+        Assert.assertTrue(locker.isFree(serviceLock, key3));
+
+        // All or nothing
+        final GlobalLock lock2 = locker.lockWithNumberOfTries(serviceLock, key2, 1);
+        boolean gotException = false;
+        try {
+            locker.lockAll(serviceLock, Arrays.asList(key1, key2, key3), 2);
+        } catch (final LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+        Assert.assertTrue(locker.isFree(serviceLock, key3));
+
+        lock2.release();
+        locker.lockAll(serviceLock, Arrays.asList(key1, key2, key3), 1).release();
+    }
+
+    @Test(groups = "fast")
+    public void testDefaultLockAll() throws Exception {
+        final String serviceLock = "MY_DEFAULT_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+
+        Request.resetPerThreadRequestData();
+
+        // External implementation, relying on the default lockAll
+        final MemoryGlobalLocker delegate = new MemoryGlobalLocker();
+        final GlobalLocker locker = new GlobalLocker() {
+            @Override
+            public GlobalLock lockWithNumberOfTries(final String service, final String lockKey, final int retry) throws LockFailedException {
+                return delegate.lockWithNumberOfTries(service, lockKey, retry);
+            }
+
+            @Override
+            public boolean isFree(final String service, final String lockKey) {
+                return delegate.isFree(service, lockKey);
+            }
+        };
+
+        final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key2, key1, key2), 1);
+        Assert.assertFalse(locker.isFree(serviceLock, key1));
+        Assert.assertFalse(locker.isFree(serviceLock, key2));
+        lock.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+        Assert.assertTrue(locker.isFree(serviceLock, key2));
+
+        // All or nothing
+        final GlobalLock lock2 = locker.lockWithNumberOfTries(serviceLock, key2, 1);
+        boolean gotException = false;
+        try {
+            locker.lockAll(serviceLock, Arrays.asList(key1, key2), 1);
+        } catch (final LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+        lock2.release();
+    }
+
+    @Test(groups = "fast")
+    public void testReentrantLockAll() throws Exception {
+        final String serviceLock = "MY_REENTRANT_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+
+        Request.setPerThreadRequestData(new RequestData("12345"));
+
+        final MemoryGlobalLocker locker = new MemoryGlobalLocker();
+        final GlobalLock lock1 = locker.lockWithNumberOfTries(serviceLock, key1, 1);
+        final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key1, key2), 1);
+        final GlobalLock reentrantLock2 = locker.lockWithNumberOfTries(serviceLock, key2, 1);
+
+        lock.release();
+        Assert.assertFalse(locker.isFree(serviceLock, key1));
+        Assert.assertFalse(locker.isFree(serviceLock, key2));
+
+        reentrantLock2.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key2));
+
+        lock1.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+    }
 }
@@ -33,7 +33,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class TestPostgreSQLGlobalLocker {
 
@@ -107,4 +111,129 @@ public class TestPostgreSQLGlobalLocker {
         Assert.assertTrue(locker.isFree(serviceLock, lockName));
     }
 
+    @Test(groups = "postgresql")
+    public void testLockSessions() throws IOException, LockFailedException {
+        final String serviceLock = "MY_MULTIPLEXED_LOCK";
+
+        final PostgreSQLGlobalLocker locker = new PostgreSQLGlobalLocker(embeddedDB.getDataSource(), embeddedDB.getDataSource(), 2, 100L, TimeUnit.MILLISECONDS);
+        try {
+            final List<String> lockNames = new ArrayList<String>();
+            final List<GlobalLock> locks = new ArrayList<GlobalLock>();
+            for (int i = 0; i < 10; i++) {
+                final String lockName = UUID.randomUUID().toString();
+                lockNames.add(lockName);
+                locks.add(locker.lockWithNumberOfTries(serviceLock, lockName, 1));
+                Assert.assertFalse(locker.isFree(serviceLock, lockName));
+            }
+            // 10 locks held on (at most) 2 connections
+            Assert.assertEquals(locker.getLockSessionManager().getNbHeldLocks(), 10);
+            Assert.assertTrue(locker.getLockSessionManager().getNbOpenSessions() <= 2);
+
+            // The database would let the session acquire the lock again: make sure another caller can't
+            boolean gotException = false;
+            try {
+                locker.lockWithNumberOfTries(serviceLock, lockNames.get(0), 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            // Another node (i.e. another session) can't either
+            final GlobalLocker otherLocker = new PostgreSQLGlobalLocker(embeddedDB.getDataSource());
+            gotException = false;
+            try {
+                otherLocker.lockWithNumberOfTries(serviceLock, lockNames.get(1), 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            for (int i = 0; i < 10; i++) {
+                locks.get(i).release();
+                Assert.assertTrue(locker.isFree(serviceLock, lockNames.get(i)));
+            }
+            Assert.assertEquals(locker.getLockSessionManager().getNbHeldLocks(), 0);
+            Assert.assertEquals(locker.getLockSessionManager().getNbLocksAcquired(), 10);
+            Assert.assertEquals(locker.getLockSessionManager().getNbSessionsReset(), 0);
+
+            // Released locks can be taken again, from anywhere
+            otherLocker.lockWithNumberOfTries(serviceLock, lockNames.get(0), 1).release();
+            locker.lockWithNumberOfTries(serviceLock, lockNames.get(0), 1).release();
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "postgresql")
+    public void testLockAll() throws IOException, LockFailedException {
+        final String serviceLock = "MY_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+        final String key3 = UUID.randomUUID().toString();
+
+        final GlobalLocker locker = new PostgreSQLGlobalLocker(embeddedDB.getDataSource());
+        final GlobalLocker otherLocker = new PostgreSQLGlobalLocker(embeddedDB.getDataSource());
+
+        final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key3, key1, key2), 1);
+        Assert.assertFalse(otherLocker.isFree(serviceLock, key1));
+        Assert.assertFalse(otherLocker.isFree(serviceLock, key2));
+        Assert.assertFalse(otherLocker.isFree(serviceLock, key3));
+
+        boolean gotException = false;
+        try {
+            otherLocker.lockWithNumberOfTries(serviceLock, key2, 1);
+        } catch (final LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+
+        lock.release();
+        Assert.assertTrue(otherLocker.isFree(serviceLock, key1));
+        Assert.assertTrue(otherLocker.isFree(serviceLock, key2));
+        Assert.assertTrue(otherLocker.isFree(serviceLock, key3));
+
+        // All or nothing
+        final GlobalLock otherLock = otherLocker.lockWithNumberOfTries(serviceLock, key2, 1);
+        gotException = false;
+        try {
+            locker.lockAll(serviceLock, Arrays.asList(key1, key2, key3), 2);
+        } catch (final LockFailedException e) {
+            gotException = true;
+        }
+        Assert.assertTrue(gotException);
+        Assert.assertTrue(otherLocker.isFree(serviceLock, key1));
+        Assert.assertTrue(otherLocker.isFree(serviceLock, key3));
+
+        otherLock.release();
+        locker.lockAll(serviceLock, Arrays.asList(key1, key2, key3), 1).release();
+    }
+
+    @Test(groups = "postgresql")
+    public void testReentrantLockAll() throws IOException, LockFailedException {
+        final String serviceLock = "MY_REENTRANT_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+        final String key3 = UUID.randomUUID().toString();
+
+        Request.setPerThreadRequestData(new RequestData("12345"));
+
+        final GlobalLocker locker = new PostgreSQLGlobalLocker(embeddedDB.getDataSource());
+        final GlobalLock lock1 = locker.lockWithNumberOfTries(serviceLock, key1, 1);
+        Assert.assertTrue(lock1 instanceof PostgreSQLGlobalLock);
+
+        // key1 is re-entered, key2 and key3 are acquired together
+        final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key1, key2, key3), 1);
+        final GlobalLock reentrantLock2 = locker.lockWithNumberOfTries(serviceLock, key2, 1);
+
+        lock.release();
+        Assert.assertFalse(locker.isFree(serviceLock, key1));
+        Assert.assertFalse(locker.isFree(serviceLock, key2));
+        Assert.assertTrue(locker.isFree(serviceLock, key3));
+
+        reentrantLock2.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key2));
+
+        lock1.release();
+        Assert.assertTrue(locker.isFree(serviceLock, key1));
+    }
 }
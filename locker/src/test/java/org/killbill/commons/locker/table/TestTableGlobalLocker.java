@@ -0,0 +1,477 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.commons.locker.table;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.LockFailedException;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class TestTableGlobalLocker {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestTableGlobalLocker.class);
+
+    private H2EmbeddedDB embeddedDB;
+
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        Request.resetPerThreadRequestData();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void afterMethod() throws Exception {
+        Request.resetPerThreadRequestData();
+    }
+
+    @BeforeClass(groups = "slow")
+    public void setUp() throws Exception {
+        embeddedDB = new H2EmbeddedDB();
+        embeddedDB.initialize();
+        embeddedDB.start();
+
+        try (final InputStream inputStream = TestTableGlobalLocker.class.getResourceAsStream("/org/killbill/commons/locker/table/ddl.sql");
+             final Scanner scanner = new Scanner(inputStream, UTF_8.name())) {
+            embeddedDB.executeScript(scanner.useDelimiter("\\A").next());
+        }
+    }
+
+    @AfterClass(groups = "slow")
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testSimpleLocking() throws IOException, LockFailedException {
+        final String serviceLock = "MY_AWESOME_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        final TableGlobalLocker otherLocker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            Assert.assertTrue(locker.isFree(serviceLock, lockName));
+            final GlobalLock lock = locker.lockWithNumberOfTries(serviceLock, lockName, 3);
+            Assert.assertFalse(locker.isFree(serviceLock, lockName));
+            Assert.assertFalse(otherLocker.isFree(serviceLock, lockName));
+
+            boolean gotException = false;
+            try {
+                locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            gotException = false;
+            try {
+                otherLocker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            lock.release();
+            Assert.assertTrue(locker.isFree(serviceLock, lockName));
+            Assert.assertTrue(otherLocker.isFree(serviceLock, lockName));
+
+            otherLocker.lockWithNumberOfTries(serviceLock, lockName, 1).release();
+        } finally {
+            locker.close();
+            otherLocker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testReentrantLock() throws IOException, LockFailedException {
+        final String serviceLock = "MY_REENTRANT_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        Request.setPerThreadRequestData(new RequestData("12345"));
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            final GlobalLock lock = locker.lockWithNumberOfTries(serviceLock, lockName, 3);
+            Assert.assertTrue(lock instanceof TableGlobalLock);
+
+            final GlobalLock reentrantLock = locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            Assert.assertSame(reentrantLock, lock);
+
+            lock.release();
+            Assert.assertFalse(locker.isFree(serviceLock, lockName));
+
+            reentrantLock.release();
+            Assert.assertTrue(locker.isFree(serviceLock, lockName));
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testFencingToken() throws IOException, LockFailedException {
+        final String serviceLock = "MY_FENCED_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            final TableGlobalLock lock1 = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            final Long fencingToken1 = lock1.getFencingToken();
+            Assert.assertNotNull(fencingToken1);
+            lock1.release();
+
+            // Re-acquired right away (same millisecond or not)
+            final TableGlobalLock lock2 = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            Assert.assertTrue(lock2.getFencingToken() > fencingToken1);
+            lock2.release();
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testFencingTokenIncreasesAfterPurge() throws Exception {
+        final String serviceLock = "MY_PURGED_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        final TableGlobalLockDao globalLockDao = new TableGlobalLockDao(TableGlobalLocker.DEFAULT_TABLE_NAME);
+        try {
+            final TableGlobalLock lock1 = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            final Long fencingToken1 = lock1.getFencingToken();
+            lock1.release();
+
+            try (final Connection connection = embeddedDB.getDataSource().getConnection()) {
+                // Rows are only purged a while after their last acquisition (a day, shortened here)
+                Thread.sleep(10);
+                final long now = System.currentTimeMillis();
+                Assert.assertTrue(globalLockDao.purgeExpiredLocks(connection, now - 5) >= 1);
+                Assert.assertNull(globalLockDao.getFencingToken(connection, locker.getLockName(serviceLock, lockName), lock1.getOwner()));
+            }
+
+            final TableGlobalLock lock2 = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            Assert.assertTrue(lock2.getFencingToken() > fencingToken1);
+            lock2.release();
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testStaleLockExpires() throws Exception {
+        final String serviceLock = "MY_STALE_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final TableGlobalLocker deadLocker = new TableGlobalLocker(embeddedDB.getDataSource(), TableGlobalLocker.DEFAULT_TABLE_NAME, 500, TimeUnit.MILLISECONDS, 100, TimeUnit.MILLISECONDS);
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            final TableGlobalLock staleLock = (TableGlobalLock) deadLocker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            final Long staleFencingToken = staleLock.getFencingToken();
+            // The node dies: no more heartbeat
+            deadLocker.close();
+
+            boolean gotException = false;
+            try {
+                locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            Thread.sleep(600);
+            Assert.assertTrue(locker.isFree(serviceLock, lockName));
+            final TableGlobalLock lock = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            Assert.assertTrue(lock.getFencingToken() > staleFencingToken);
+
+            // A late release by the previous owner doesn't affect the new one
+            staleLock.release();
+            Assert.assertFalse(locker.isFree(serviceLock, lockName));
+
+            lock.release();
+            Assert.assertTrue(locker.isFree(serviceLock, lockName));
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testHeartbeatRenewsLease() throws Exception {
+        final String serviceLock = "MY_RENEWED_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource(), TableGlobalLocker.DEFAULT_TABLE_NAME, 300, TimeUnit.MILLISECONDS, 100, TimeUnit.MILLISECONDS);
+        final TableGlobalLocker otherLocker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            final TableGlobalLock lock = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+
+            // Several times the lease duration
+            Thread.sleep(1000);
+            Assert.assertFalse(lock.isLost());
+            Assert.assertFalse(otherLocker.isFree(serviceLock, lockName));
+
+            boolean gotException = false;
+            try {
+                otherLocker.lockWithNumberOfTries(serviceLock, lockName, 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+
+            lock.release();
+            otherLocker.lockWithNumberOfTries(serviceLock, lockName, 1).release();
+        } finally {
+            locker.close();
+            otherLocker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testLeaseLostWhenRenewalsFail() throws Exception {
+        final String serviceLock = "MY_UNRENEWED_LOCK";
+        final String lockName = UUID.randomUUID().toString();
+
+        final AtomicBoolean isDatabaseDown = new AtomicBoolean(false);
+        final DataSource dataSource = failingDataSource(embeddedDB.getDataSource(), isDatabaseDown);
+        final TableGlobalLocker locker = new TableGlobalLocker(dataSource, TableGlobalLocker.DEFAULT_TABLE_NAME, 300, TimeUnit.MILLISECONDS, 100, TimeUnit.MILLISECONDS);
+        try {
+            final TableGlobalLock lock = (TableGlobalLock) locker.lockWithNumberOfTries(serviceLock, lockName, 1);
+
+            // Renewals fail for longer than the lease
+            isDatabaseDown.set(true);
+            Thread.sleep(600);
+            Assert.assertTrue(lock.isLost());
+
+            isDatabaseDown.set(false);
+            lock.release();
+        } finally {
+            locker.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testRenewLeasesWithoutUpdateCounts() throws Exception {
+        final TableGlobalLockDao globalLockDao = new TableGlobalLockDao(TableGlobalLocker.DEFAULT_TABLE_NAME);
+        final String lockName = UUID.randomUUID().toString();
+        final String otherLockName = UUID.randomUUID().toString();
+
+        try (final Connection connection = noUpdateCountsConnection(embeddedDB.getDataSource().getConnection())) {
+            final long now = System.currentTimeMillis();
+            Assert.assertTrue(globalLockDao.lock(connection, lockName, "owner", now, now + 10000));
+            Assert.assertTrue(globalLockDao.lock(connection, otherLockName, "other-owner", now, now + 10000));
+
+            final Map<String, String> ownerPerLockName = new HashMap<String, String>();
+            ownerPerLockName.put(lockName, "owner");
+            // Held by somebody else
+            ownerPerLockName.put(otherLockName, "owner");
+            Assert.assertEquals(globalLockDao.renewLeases(connection, ownerPerLockName, now + 20000), Arrays.asList(otherLockName));
+
+            globalLockDao.releaseLock(connection, lockName, "owner");
+            globalLockDao.releaseLock(connection, otherLockName, "other-owner");
+        }
+    }
+
+    private static DataSource failingDataSource(final DataSource dataSource, final AtomicBoolean isDatabaseDown) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[]{DataSource.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getConnection".equals(method.getName()) && isDatabaseDown.get()) {
+                    throw new SQLException("Connection refused");
+                }
+                try {
+                    return method.invoke(dataSource, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+
+    // Mimics MySQL with rewriteBatchedStatements: batches succeed, but report Statement.SUCCESS_NO_INFO
+    private static Connection noUpdateCountsConnection(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final Object result;
+                try {
+                    result = method.invoke(connection, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (!"prepareStatement".equals(method.getName())) {
+                    return result;
+                }
+
+                final PreparedStatement statement = (PreparedStatement) result;
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class[]{PreparedStatement.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                        final Object result;
+                        try {
+                            result = method.invoke(statement, args);
+                        } catch (final InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if ("executeBatch".equals(method.getName())) {
+                            final int[] updateCounts = (int[]) result;
+                            Arrays.fill(updateCounts, Statement.SUCCESS_NO_INFO);
+                        }
+                        return result;
+                    }
+                });
+            }
+        });
+    }
+
+    @Test(groups = "load", enabled = false)
+    public void testContention() throws Exception {
+        final String serviceLock = "MY_CONTENDED_LOCK";
+        final int nbNodes = 2;
+        final int nbThreadsPerNode = 32;
+        final int nbKeys = 256;
+        final int nbOperationsPerThread = 1000;
+
+        final TableGlobalLocker[] lockers = new TableGlobalLocker[nbNodes];
+        for (int i = 0; i < nbNodes; i++) {
+            lockers[i] = new TableGlobalLocker(embeddedDB.getDataSource());
+        }
+        final AtomicInteger[] holders = new AtomicInteger[nbKeys];
+        for (int i = 0; i < nbKeys; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        final AtomicLong nbAcquired = new AtomicLong();
+        final AtomicLong nbFailures = new AtomicLong();
+        final AtomicLong nbViolations = new AtomicLong();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[nbNodes * nbThreadsPerNode];
+        for (int t = 0; t < threads.length; t++) {
+            final TableGlobalLocker locker = lockers[t % nbNodes];
+            final int threadNb = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Random random = new Random(threadNb);
+                    try {
+                        start.await();
+                        for (int i = 0; i < nbOperationsPerThread; i++) {
+                            final int key = random.nextInt(nbKeys);
+                            try {
+                                final GlobalLock lock = locker.lockWithNumberOfTries(serviceLock, String.valueOf(key), 10);
+                                if (holders[key].incrementAndGet() != 1) {
+                                    nbViolations.incrementAndGet();
+                                }
+                                holders[key].decrementAndGet();
+                                lock.release();
+                                nbAcquired.incrementAndGet();
+                            } catch (final LockFailedException e) {
+                                nbFailures.incrementAndGet();
+                            }
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        final long ini = System.nanoTime();
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long elapsedNanos = System.nanoTime() - ini;
+
+        for (final TableGlobalLocker locker : lockers) {
+            logger.info("Lock waits: {} ({} woken up), {} ms",
+                        locker.getLockWaitQueue().getNbWaits(),
+                        locker.getLockWaitQueue().getNbWakeUps(),
+                        TimeUnit.NANOSECONDS.toMillis(locker.getLockWaitQueue().getWaitTimeNanos()));
+            locker.close();
+        }
+        logger.info("{} threads: {} acquire/release per second ({} failures)",
+                    threads.length, nbAcquired.get() * 1000000000L / elapsedNanos, nbFailures.get());
+        Assert.assertEquals(nbViolations.get(), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testLockAll() throws IOException, LockFailedException {
+        final String serviceLock = "MY_LOCK_ALL";
+        final String key1 = UUID.randomUUID().toString();
+        final String key2 = UUID.randomUUID().toString();
+
+        final TableGlobalLocker locker = new TableGlobalLocker(embeddedDB.getDataSource());
+        final TableGlobalLocker otherLocker = new TableGlobalLocker(embeddedDB.getDataSource());
+        try {
+            final GlobalLock otherLock = otherLocker.lockWithNumberOfTries(serviceLock, key2, 1);
+            boolean gotException = false;
+            try {
+                locker.lockAll(serviceLock, Arrays.asList(key1, key2), 1);
+            } catch (final LockFailedException e) {
+                gotException = true;
+            }
+            Assert.assertTrue(gotException);
+            Assert.assertTrue(locker.isFree(serviceLock, key1));
+
+            otherLock.release();
+            final GlobalLock lock = locker.lockAll(serviceLock, Arrays.asList(key1, key2), 1);
+            Assert.assertFalse(otherLocker.isFree(serviceLock, key1));
+            Assert.assertFalse(otherLocker.isFree(serviceLock, key2));
+
+            lock.release();
+            Assert.assertTrue(otherLocker.isFree(serviceLock, key1));
+            Assert.assertTrue(otherLocker.isFree(serviceLock, key2));
+        } finally {
+            locker.close();
+            otherLocker.close();
+        }
+    }
+}
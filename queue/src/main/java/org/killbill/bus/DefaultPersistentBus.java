@@ -56,6 +56,7 @@ import org.killbill.queue.InTransaction;
 import org.killbill.queue.api.PersistentQueueConfig.PersistentQueueMode;
 import org.killbill.queue.api.QueueEvent;
 import org.killbill.queue.dao.EventEntryModelDao;
+import org.killbill.queue.dao.ResultIterators;
 import org.killbill.queue.dispatching.BlockingRejectionExecutionHandler;
 import org.killbill.queue.dispatching.CallableCallbackBase;
 import org.killbill.queue.dispatching.Dispatcher;
@@ -70,7 +71,7 @@ import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.eventbus.EventBusThatThrowsException;
 
 public class DefaultPersistentBus extends DefaultQueueLifecycle implements PersistentBus {
@@ -143,7 +144,8 @@ public class DefaultPersistentBus extends DefaultQueueLifecycle implements Persi
                                            new BlockingRejectionExecutionHandler(),
                                            clock,
                                            busCallableCallback,
-                                           this);
+                                           this,
+                                           metricRegistry);
 
     }
 
@@ -285,6 +287,7 @@ public class DefaultPersistentBus extends DefaultQueueLifecycle implements Persi
                 final BusEventModelDao entry = new BusEventModelDao(CreatorName.get(), clock.getUTCNow(), event.getClass().getName(), json,
                                                                     event.getUserToken(), event.getSearchKey1(), event.getSearchKey2());
                 dao.insertEntry(entry);
+                signalNewEntries();
 
             } else {
                 log.warn("Attempting to post event " + event + " in a non initialized bus");
@@ -327,6 +330,7 @@ public class DefaultPersistentBus extends DefaultQueueLifecycle implements Persi
         };
 
         InTransaction.execute(dbi, connection, handler, PersistentBusSqlDao.class);
+        signalNewEntries();
     }
 
     @Override
@@ -484,9 +488,16 @@ public class DefaultPersistentBus extends DefaultQueueLifecycle implements Persi
                 return new Iterable<BusEventModelDao>() {
                     @Override
                     public Iterator<BusEventModelDao> iterator() {
-                        return searchKey1 != null ?
-                               transactionalDao.getHistoricalQueueEntriesForSearchKeys(searchKey1, searchKey2, config.getHistoryTableName()) :
-                               transactionalDao.getHistoricalQueueEntriesForSearchKey2(minCreatedDate, searchKey2, config.getHistoryTableName());
+                        // Entries are moved to the history after being created, so older history tables can be skipped
+                        final List<String> historyTableNames = dao.getHistoryTableNames(minCreatedDate);
+                        return ResultIterators.concat(Iterators.transform(historyTableNames.iterator(), new Function<String, Iterator<BusEventModelDao>>() {
+                            @Override
+                            public Iterator<BusEventModelDao> apply(final String historyTableName) {
+                                return searchKey1 != null ?
+                                       transactionalDao.getHistoricalQueueEntriesForSearchKeys(searchKey1, searchKey2, historyTableName) :
+                                       transactionalDao.getHistoricalQueueEntriesForSearchKey2(minCreatedDate, searchKey2, historyTableName);
+                            }
+                        }));
                     }
                 };
             }
@@ -494,17 +505,17 @@ public class DefaultPersistentBus extends DefaultQueueLifecycle implements Persi
     }
 
     private <T extends BusEvent> Iterable<BusEventWithMetadata<T>> toBusEventWithMetadata(final Iterable<BusEventModelDao> entries) {
-        return Iterables.<BusEventModelDao, BusEventWithMetadata<T>>transform(entries,
-                                                                              new Function<BusEventModelDao, BusEventWithMetadata<T>>() {
-                                                                                  @Override
-                                                                                  public BusEventWithMetadata<T> apply(final BusEventModelDao input) {
-                                                                                      return toBusEventWithMetadata(input);
-                                                                                  }
-                                                                              });
+        return ResultIterators.<BusEventModelDao, BusEventWithMetadata<T>>transform(entries,
+                                                                                    new Function<BusEventModelDao, BusEventWithMetadata<T>>() {
+                                                                                        @Override
+                                                                                        public BusEventWithMetadata<T> apply(final BusEventModelDao input) {
+                                                                                            return toBusEventWithMetadata(input);
+                                                                                        }
+                                                                                    });
     }
 
     private <T extends BusEvent> BusEventWithMetadata<T> toBusEventWithMetadata(final BusEventModelDao entry) {
-        final T event = CallableCallbackBase.deserializeEvent(entry, objectMapper);
+        final T event = CallableCallbackBase.deserializeEvent(entry, eventReaderCache);
         return new BusEventWithMetadata<T>(entry.getRecordId(),
                                            entry.getUserToken(),
                                            entry.getCreatedDate(),
@@ -25,7 +25,11 @@ import org.joda.time.DateTime;
 import org.killbill.queue.api.QueueLifecycle;
 
 /**
- * When an Iterable is returned, the client must iterate through all results to close the DB connection.
+ * When an Iterable is returned, the results are streamed from the database: the DB connection is held until the client
+ * has iterated through all results. To release it earlier, close the iterator (database-backed implementations return
+ * iterators implementing {@link java.io.Closeable}).
+ * The iterator should be consumed by the thread which created it. For the *FromTransaction* variants, the results are
+ * streamed on the connection passed by the client, and must be consumed before that transaction ends.
  */
 public interface PersistentBus extends QueueLifecycle {
 
@@ -194,4 +198,11 @@ public interface PersistentBus extends QueueLifecycle {
      * @return the number of ready entries
      */
     long getNbReadyEntries(final DateTime maxCreatedDate);
+
+    /**
+     * Forget the event classes (and their readers) cached to deserialize bus events, e.g. when plugins are reloaded,
+     * so that their class loaders can be garbage collected
+     */
+    default void invalidateEventReaderCache() {
+    }
 }
@@ -72,9 +72,17 @@ public abstract class PersistentBusConfig implements PersistentQueueConfig {
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.sleep")
     @Default("3000")
-    @Description("Time in milliseconds to sleep between runs (only valid in STICKY_POLLING, POLLING)")
+    @Description("Time in milliseconds to sleep between runs (only valid in STICKY_POLLING, POLLING, SKIP_LOCKED_POLLING)")
     public abstract long getPollingSleepTimeMs();
 
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.sleep.adaptive")
+    @Default("false")
+    @Description("Whether to poll again immediately after a full batch and back off exponentially (up to the sleep time) when nothing is found (only valid in STICKY_POLLING, POLLING, SKIP_LOCKED_POLLING)")
+    public boolean isAdaptivePollingEnabled() {
+        return false;
+    }
+
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.off")
     @Default("false")
@@ -87,6 +95,22 @@ public abstract class PersistentBusConfig implements PersistentQueueConfig {
     @Description("Max number of dispatch threads to use")
     public abstract int geMaxDispatchThreads();
 
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.nbDispatchLanes")
+    @Default("0")
+    @Description("Number of serial dispatch lanes, keyed on search_key1, to use instead of the shared dispatch thread pool (0 to disable)")
+    public int getNbDispatchLanes() {
+        return 0;
+    }
+
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.virtualThreads.maxConcurrency")
+    @Default("0")
+    @Description("Max number of handlers to run concurrently on virtual threads, JDK 21+ only (0 to use the dispatch thread pool)")
+    public int getVirtualThreadsMaxConcurrency() {
+        return 0;
+    }
+
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.lifecycle.dispatch.nbThreads")
     @Default("1")
@@ -99,12 +123,28 @@ public abstract class PersistentBusConfig implements PersistentQueueConfig {
     @Description("Max number of lifecycle complete threads to use")
     public abstract int geNbLifecycleCompleteThreads();
 
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.lifecycle.complete.batchSize")
+    @Default("15")
+    @Description("Max number of completed bus events to move to the history table at once")
+    public int getCompletionBatchSize() {
+        return 15;
+    }
+
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.queue.capacity")
     @Default("30000")
     @Description("Size of the inflight queue (only valid in STICKY_EVENTS mode)")
     public abstract int getEventQueueCapacity();
 
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.inflight.queue.type")
+    @Default("LINKED_BLOCKING_QUEUE")
+    @Description("Implementation of the inflight queue (only valid in STICKY_EVENTS mode)")
+    public InflightQueueType getInflightQueueType() {
+        return InflightQueueType.LINKED_BLOCKING_QUEUE;
+    }
+
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.tableName")
     @Default("bus_events")
@@ -117,6 +157,23 @@ public abstract class PersistentBusConfig implements PersistentQueueConfig {
     @Description("Bus events history table name")
     public abstract String getHistoryTableName();
 
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.historyTableRotation")
+    @Default("NONE")
+    @Description("Whether to split the bus events history table in monthly tables")
+    public HistoryTableRotation getHistoryTableRotation() {
+        return HistoryTableRotation.NONE;
+    }
+
+    @Override
+    @Config("org.killbill.persistent.bus.${instanceName}.historyTableRetention")
+    @Default("0")
+    @Description("Number of monthly bus events history tables to keep, including the current month (0 to keep them all, only valid with MONTHLY rotation)")
+    public int getHistoryTableRetention() {
+        return 0;
+    }
+
+
     @Override
     @Config("org.killbill.persistent.bus.${instanceName}.reapThreshold")
     @Default("10m")
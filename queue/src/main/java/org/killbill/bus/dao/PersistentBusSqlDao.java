@@ -20,7 +20,6 @@
 package org.killbill.bus.dao;
 
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -29,6 +28,7 @@ import org.joda.time.DateTime;
 import org.killbill.commons.jdbi.statement.SmartFetchSize;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.killbill.queue.dao.QueueSqlDao;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
@@ -46,38 +46,38 @@ public interface PersistentBusSqlDao extends QueueSqlDao<BusEventModelDao> {
                                 @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getReadyQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
-                                                                        @Bind("searchKey2") final Long searchKey2,
-                                                                        @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getReadyQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
+                                                                              @Bind("searchKey2") final Long searchKey2,
+                                                                              @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getReadyQueueEntriesForSearchKey2(@Bind("maxCreatedDate") final DateTime maxCreatedDate,
-                                                                        @Bind("searchKey2") final Long searchKey2,
-                                                                        @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getReadyQueueEntriesForSearchKey2(@Bind("maxCreatedDate") final DateTime maxCreatedDate,
+                                                                              @Bind("searchKey2") final Long searchKey2,
+                                                                              @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
-                                                                                      @Bind("searchKey2") final Long searchKey2,
-                                                                                      @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
+                                                                                            @Bind("searchKey2") final Long searchKey2,
+                                                                                            @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKey2(@Bind("maxCreatedDate") final DateTime maxCreatedDate,
-                                                                                      @Bind("searchKey2") final Long searchKey2,
-                                                                                      @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKey2(@Bind("maxCreatedDate") final DateTime maxCreatedDate,
+                                                                                            @Bind("searchKey2") final Long searchKey2,
+                                                                                            @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getHistoricalQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
-                                                                             @Bind("searchKey2") final Long searchKey2,
-                                                                             @Define("historyTableName") final String historyTableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getHistoricalQueueEntriesForSearchKeys(@Bind("searchKey1") final Long searchKey1,
+                                                                                   @Bind("searchKey2") final Long searchKey2,
+                                                                                   @Define("historyTableName") final String historyTableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    public Iterator<BusEventModelDao> getHistoricalQueueEntriesForSearchKey2(@Bind("minCreatedDate") final DateTime minCreatedDate,
-                                                                             @Bind("searchKey2") final Long searchKey2,
-                                                                             @Define("historyTableName") final String historyTableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    public ResultIterator<BusEventModelDao> getHistoricalQueueEntriesForSearchKey2(@Bind("minCreatedDate") final DateTime minCreatedDate,
+                                                                                   @Bind("searchKey2") final Long searchKey2,
+                                                                                   @Define("historyTableName") final String historyTableName);
 }
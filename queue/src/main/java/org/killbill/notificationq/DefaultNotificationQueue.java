@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -47,8 +48,11 @@ import org.killbill.queue.InTransaction;
 import org.killbill.queue.QueueObjectMapper;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
 import org.killbill.queue.dao.QueueSqlDao;
+import org.killbill.queue.dao.ResultIterators;
 import org.killbill.queue.dispatching.CallableCallbackBase;
+import org.killbill.queue.dispatching.EventReaderCache;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionStatus;
 import org.slf4j.Logger;
@@ -57,7 +61,6 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 
 public class DefaultNotificationQueue implements NotificationQueue {
@@ -71,6 +74,7 @@ public class DefaultNotificationQueue implements NotificationQueue {
     private final NotificationQueueHandler handler;
     private final NotificationQueueService notificationQueueService;
     private final ObjectMapper objectMapper;
+    private final EventReaderCache eventReaderCache;
     private final Clock clock;
     private final NotificationQueueConfig config;
     private final Profiling<Iterable<NotificationEventModelDao>, RuntimeException> prof;
@@ -87,6 +91,12 @@ public class DefaultNotificationQueue implements NotificationQueue {
     public DefaultNotificationQueue(final String svcName, final String queueName, final NotificationQueueHandler handler,
                                     final DBI dbi, final DBBackedQueue<NotificationEventModelDao> dao, final NotificationQueueService notificationQueueService,
                                     final Clock clock, final NotificationQueueConfig config, final ObjectMapper objectMapper) {
+        this(svcName, queueName, handler, dbi, dao, notificationQueueService, clock, config, objectMapper, new EventReaderCache(objectMapper));
+    }
+
+    public DefaultNotificationQueue(final String svcName, final String queueName, final NotificationQueueHandler handler,
+                                    final DBI dbi, final DBBackedQueue<NotificationEventModelDao> dao, final NotificationQueueService notificationQueueService,
+                                    final Clock clock, final NotificationQueueConfig config, final ObjectMapper objectMapper, final EventReaderCache eventReaderCache) {
         this.isStarted = new AtomicBoolean(false);
         this.isInitialized = new AtomicBoolean(false);
         this.dbi = dbi;
@@ -96,6 +106,7 @@ public class DefaultNotificationQueue implements NotificationQueue {
         this.dao = dao;
         this.notificationQueueService = notificationQueueService;
         this.objectMapper = objectMapper;
+        this.eventReaderCache = eventReaderCache;
         this.clock = clock;
         this.config = config;
         this.prof = new Profiling<Iterable<NotificationEventModelDao>, RuntimeException>();
@@ -108,6 +119,7 @@ public class DefaultNotificationQueue implements NotificationQueue {
         final Long searchKey2WithNull = MoreObjects.firstNonNull(searchKey2, 0L);
         final NotificationEventModelDao notification = new NotificationEventModelDao(CreatorName.get(), clock.getUTCNow(), event.getClass().getName(), eventJson, userToken, searchKey1, searchKey2WithNull, futureUserToken, futureNotificationTime, getFullQName());
         dao.insertEntry(notification);
+        signalReadyNotification(futureNotificationTime);
     }
 
     @Override
@@ -126,6 +138,14 @@ public class DefaultNotificationQueue implements NotificationQueue {
             }
         };
         InTransaction.execute(dbi, connection, handler, NotificationSqlDao.class);
+        signalReadyNotification(futureNotificationTime);
+    }
+
+    // Let the dispatcher know right away about notifications which are already ready for processing
+    private void signalReadyNotification(final DateTime futureNotificationTime) {
+        if (notificationQueueService instanceof NotificationQueueDispatcher && !futureNotificationTime.isAfter(clock.getUTCNow())) {
+            ((NotificationQueueDispatcher) notificationQueueService).signalNewEntries();
+        }
     }
 
     @Override
@@ -290,9 +310,17 @@ public class DefaultNotificationQueue implements NotificationQueue {
                 return new Iterable<NotificationEventModelDao>() {
                     @Override
                     public Iterator<NotificationEventModelDao> iterator() {
-                        return searchKey1 != null ?
-                               transactionalDao.getHistoricalQueueEntriesForSearchKeys(getFullQName(), searchKey1, searchKey2, config.getHistoryTableName()) :
-                               transactionalDao.getHistoricalQueueEntriesForSearchKey2(getFullQName(), minEffectiveDate, searchKey2, config.getHistoryTableName());
+                        // The effective date isn't correlated with the date notifications are moved to the history (e.g. removed future notifications),
+                        // so all history tables need to be searched
+                        final List<String> historyTableNames = dao.getHistoryTableNames(null);
+                        return ResultIterators.concat(Iterators.transform(historyTableNames.iterator(), new Function<String, Iterator<NotificationEventModelDao>>() {
+                            @Override
+                            public Iterator<NotificationEventModelDao> apply(final String historyTableName) {
+                                return searchKey1 != null ?
+                                       transactionalDao.getHistoricalQueueEntriesForSearchKeys(getFullQName(), searchKey1, searchKey2, historyTableName) :
+                                       transactionalDao.getHistoricalQueueEntriesForSearchKey2(getFullQName(), minEffectiveDate, searchKey2, historyTableName);
+                            }
+                        }));
                     }
                 };
             }
@@ -300,17 +328,17 @@ public class DefaultNotificationQueue implements NotificationQueue {
     }
 
     private <T extends NotificationEvent> Iterable<NotificationEventWithMetadata<T>> toNotificationEventWithMetadata(final Iterable<NotificationEventModelDao> entries) {
-        return Iterables.<NotificationEventModelDao, NotificationEventWithMetadata<T>>transform(entries,
-                                                                                                new Function<NotificationEventModelDao, NotificationEventWithMetadata<T>>() {
-                                                                                                    @Override
-                                                                                                    public NotificationEventWithMetadata<T> apply(final NotificationEventModelDao input) {
-                                                                                                        return toNotificationEventWithMetadata(input);
-                                                                                                    }
-                                                                                                });
+        return ResultIterators.<NotificationEventModelDao, NotificationEventWithMetadata<T>>transform(entries,
+                                                                                                      new Function<NotificationEventModelDao, NotificationEventWithMetadata<T>>() {
+                                                                                                          @Override
+                                                                                                          public NotificationEventWithMetadata<T> apply(final NotificationEventModelDao input) {
+                                                                                                              return toNotificationEventWithMetadata(input);
+                                                                                                          }
+                                                                                                      });
     }
 
     private <T extends NotificationEvent> NotificationEventWithMetadata<T> toNotificationEventWithMetadata(final NotificationEventModelDao cur) {
-        final T event = CallableCallbackBase.deserializeEvent(cur, objectMapper);
+        final T event = CallableCallbackBase.deserializeEvent(cur, eventReaderCache);
         return new NotificationEventWithMetadata<T>(cur.getRecordId(), cur.getUserToken(), cur.getCreatedDate(), cur.getSearchKey1(), cur.getSearchKey2(), event,
                                                     cur.getFutureUserToken(), cur.getEffectiveDate(), cur.getQueueName());
     }
@@ -352,10 +380,10 @@ public class DefaultNotificationQueue implements NotificationQueue {
                 final Collection<NotificationEventModelDao> currentBatch = new ArrayList<NotificationEventModelDao>(batchSize);
 
                 // Note that we don't claim them here, so it could be possible that some of these entries end up being processed nonetheless
-                final Iterator<NotificationEventModelDao> futureQueueEntriesForSearchKeys = ((NotificationSqlDao) transactional).getReadyQueueEntriesForSearchKeys(getFullQName(),
-                                                                                                                                                                   searchKey1,
-                                                                                                                                                                   searchKey2,
-                                                                                                                                                                   config.getTableName());
+                final ResultIterator<NotificationEventModelDao> futureQueueEntriesForSearchKeys = ((NotificationSqlDao) transactional).getReadyQueueEntriesForSearchKeys(getFullQName(),
+                                                                                                                                                                         searchKey1,
+                                                                                                                                                                         searchKey2,
+                                                                                                                                                                         config.getTableName());
                 try {
                     while (futureQueueEntriesForSearchKeys.hasNext()) {
                         final NotificationEventModelDao notificationEventModelDao = futureQueueEntriesForSearchKeys.next();
@@ -368,11 +396,11 @@ public class DefaultNotificationQueue implements NotificationQueue {
                         }
                     }
                 } finally {
-                    // This will go through all results to close the connection
-                    final int nbNotificationsLeft = Iterators.size(futureQueueEntriesForSearchKeys);
-                    if (nbNotificationsLeft > 0) {
-                        logger.warn("Unable to remove {} notifications for searchKey1={}, searchKey2={}", searchKey1, searchKey2);
+                    // Close the result set right away, rather than streaming all remaining rows
+                    if (futureQueueEntriesForSearchKeys.hasNext()) {
+                        logger.warn("Unable to remove all notifications for searchKey1={}, searchKey2={}", searchKey1, searchKey2);
                     }
+                    futureQueueEntriesForSearchKeys.close();
                 }
 
                 return null;
@@ -76,6 +76,7 @@ public class DefaultNotificationQueueService extends NotificationQueueServiceBas
     protected NotificationQueue createNotificationQueueInternal(final String svcName,
                                                                 final String queueName,
                                                                 final NotificationQueueHandler handler) {
-        return new DefaultNotificationQueue(svcName, queueName, handler, dbi, dao, this, clock, config);
+        // All the queues share the service's cache, see invalidateEventReaderCache
+        return new DefaultNotificationQueue(svcName, queueName, handler, dbi, dao, this, clock, config, objectMapper, eventReaderCache);
     }
 }
@@ -130,7 +130,8 @@ public class NotificationQueueDispatcher extends DefaultQueueLifecycle {
                                            new BlockingRejectionExecutionHandler(),
                                            clock,
                                            notificationCallableCallback,
-                                           this);
+                                           this,
+                                           metricRegistry);
     }
 
     @Override
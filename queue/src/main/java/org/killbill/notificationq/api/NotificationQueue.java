@@ -31,7 +31,11 @@ import org.killbill.queue.api.QueueLifecycle;
 /**
  * A NotificationQueue offers a persistent queue with a set of API to record future notifications along with their callbacks.
  *
- * When an Iterable is returned, the client must iterate through all results to close the DB connection.
+ * When an Iterable is returned, the results are streamed from the database: the DB connection is held until the client
+ * has iterated through all results. To release it earlier, close the iterator (database-backed implementations return
+ * iterators implementing {@link java.io.Closeable}).
+ * The iterator should be consumed by the thread which created it. For the *FromTransaction* variants, the results are
+ * streamed on the connection passed by the client, and must be consumed before that transaction ends.
  */
 public interface NotificationQueue extends QueueLifecycle {
 
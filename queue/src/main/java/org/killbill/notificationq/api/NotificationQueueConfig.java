@@ -77,6 +77,14 @@ public abstract class NotificationQueueConfig implements PersistentQueueConfig {
     @Description("Time in milliseconds to sleep between runs")
     public abstract long getPollingSleepTimeMs();
 
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.sleep.adaptive")
+    @Default("false")
+    @Description("Whether to poll again immediately after a full batch and back off exponentially (up to the sleep time) when nothing is found")
+    public boolean isAdaptivePollingEnabled() {
+        return false;
+    }
+
     @Override
     @Config("org.killbill.notificationq.${instanceName}.notification.off")
     @Default("false")
@@ -89,6 +97,22 @@ public abstract class NotificationQueueConfig implements PersistentQueueConfig {
     @Description("Number of threads to use")
     public abstract int geMaxDispatchThreads();
 
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.notification.nbDispatchLanes")
+    @Default("0")
+    @Description("Number of serial dispatch lanes, keyed on search_key1, to use instead of the shared dispatch thread pool (0 to disable)")
+    public int getNbDispatchLanes() {
+        return 0;
+    }
+
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.notification.virtualThreads.maxConcurrency")
+    @Default("0")
+    @Description("Max number of handlers to run concurrently on virtual threads, JDK 21+ only (0 to use the dispatch thread pool)")
+    public int getVirtualThreadsMaxConcurrency() {
+        return 0;
+    }
+
     @Override
     @Config("org.killbill.notificationq.${instanceName}.lifecycle.dispatch.nbThreads")
     @Default("1")
@@ -101,12 +125,28 @@ public abstract class NotificationQueueConfig implements PersistentQueueConfig {
     @Description("Max number of lifecycle complete threads to use")
     public abstract int geNbLifecycleCompleteThreads();
 
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.lifecycle.complete.batchSize")
+    @Default("15")
+    @Description("Max number of completed notifications to move to the history table at once")
+    public int getCompletionBatchSize() {
+        return 15;
+    }
+
     @Override
     @Config("org.killbill.notificationq.${instanceName}.queue.capacity")
     @Default("100")
     @Description("Capacity for the worker queue")
     public abstract int getEventQueueCapacity();
 
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.inflight.queue.type")
+    @Default("LINKED_BLOCKING_QUEUE")
+    @Description("Set to LINKED_BLOCKING_QUEUE, not available for NotificationQueue")
+    public InflightQueueType getInflightQueueType() {
+        return InflightQueueType.LINKED_BLOCKING_QUEUE;
+    }
+
     @Override
     @Config("org.killbill.notificationq.${instanceName}.tableName")
     @Default("notifications")
@@ -119,6 +159,23 @@ public abstract class NotificationQueueConfig implements PersistentQueueConfig {
     @Description("Notifications history table name")
     public abstract String getHistoryTableName();
 
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.historyTableRotation")
+    @Default("NONE")
+    @Description("Whether to split the notifications history table in monthly tables")
+    public HistoryTableRotation getHistoryTableRotation() {
+        return HistoryTableRotation.NONE;
+    }
+
+    @Override
+    @Config("org.killbill.notificationq.${instanceName}.historyTableRetention")
+    @Default("0")
+    @Description("Number of monthly notifications history tables to keep, including the current month (0 to keep them all, only valid with MONTHLY rotation)")
+    public int getHistoryTableRetention() {
+        return 0;
+    }
+
+
     @Override
     @Config("org.killbill.notificationq.${instanceName}.reapThreshold")
     @Default("10m")
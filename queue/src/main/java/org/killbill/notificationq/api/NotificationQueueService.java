@@ -101,4 +101,11 @@ public interface NotificationQueueService extends QueueLifecycle {
      * @return
      */
     List<NotificationQueue> getNotificationQueues();
+
+    /**
+     * Forget the event classes (and their readers) cached to deserialize notification events, e.g. when plugins are reloaded,
+     * so that their class loaders can be garbage collected
+     */
+    default void invalidateEventReaderCache() {
+    }
 }
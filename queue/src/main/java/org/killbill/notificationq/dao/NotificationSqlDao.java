@@ -19,12 +19,11 @@
 
 package org.killbill.notificationq.dao;
 
-import java.util.Iterator;
-
 import org.joda.time.DateTime;
 import org.killbill.commons.jdbi.statement.SmartFetchSize;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.killbill.queue.dao.QueueSqlDao;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
@@ -34,46 +33,46 @@ import org.skife.jdbi.v2.sqlobject.customizers.Define;
 public interface NotificationSqlDao extends QueueSqlDao<NotificationEventModelDao> {
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getReadyQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
-                                                                          @Bind("searchKey1") final Long searchKey1,
-                                                                          @Bind("searchKey2") final Long searchKey2,
-                                                                          @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getReadyQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
+                                                                                @Bind("searchKey1") final Long searchKey1,
+                                                                                @Bind("searchKey2") final Long searchKey2,
+                                                                                @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getReadyQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
-                                                                          @Bind("maxEffectiveDate") final DateTime maxEffectiveDate,
-                                                                          @Bind("searchKey2") final Long searchKey2,
-                                                                          @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getReadyQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
+                                                                                @Bind("maxEffectiveDate") final DateTime maxEffectiveDate,
+                                                                                @Bind("searchKey2") final Long searchKey2,
+                                                                                @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
-                                                                                        @Bind("searchKey1") final Long searchKey1,
-                                                                                        @Bind("searchKey2") final Long searchKey2,
-                                                                                        @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
+                                                                                              @Bind("searchKey1") final Long searchKey1,
+                                                                                              @Bind("searchKey2") final Long searchKey2,
+                                                                                              @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
-                                                                                        @Bind("maxEffectiveDate") final DateTime maxEffectiveDate,
-                                                                                        @Bind("searchKey2") final Long searchKey2,
-                                                                                        @Define("tableName") final String tableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getReadyOrInProcessingQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
+                                                                                              @Bind("maxEffectiveDate") final DateTime maxEffectiveDate,
+                                                                                              @Bind("searchKey2") final Long searchKey2,
+                                                                                              @Define("tableName") final String tableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getHistoricalQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
-                                                                               @Bind("searchKey1") final Long searchKey1,
-                                                                               @Bind("searchKey2") final Long searchKey2,
-                                                                               @Define("historyTableName") final String historyTableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getHistoricalQueueEntriesForSearchKeys(@Bind("queueName") String queueName,
+                                                                                     @Bind("searchKey1") final Long searchKey1,
+                                                                                     @Bind("searchKey2") final Long searchKey2,
+                                                                                     @Define("historyTableName") final String historyTableName);
 
     @SqlQuery
-    @SmartFetchSize(shouldStream = true)
-    Iterator<NotificationEventModelDao> getHistoricalQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
-                                                                               @Bind("minEffectiveDate") final DateTime minEffectiveDate,
-                                                                               @Bind("searchKey2") final Long searchKey2,
-                                                                               @Define("historyTableName") final String historyTableName);
+    @SmartFetchSize(value = SEARCH_FETCH_SIZE, shouldStream = true)
+    ResultIterator<NotificationEventModelDao> getHistoricalQueueEntriesForSearchKey2(@Bind("queueName") String queueName,
+                                                                                     @Bind("minEffectiveDate") final DateTime minEffectiveDate,
+                                                                                     @Bind("searchKey2") final Long searchKey2,
+                                                                                     @Define("historyTableName") final String historyTableName);
 
     @SqlUpdate
     void updateEntry(@Bind("recordId") Long id,
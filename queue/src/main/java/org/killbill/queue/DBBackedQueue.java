@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.killbill.CreatorName;
 import org.killbill.clock.Clock;
@@ -75,6 +77,7 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
     protected final QueueSqlDao<T> sqlDao;
     protected final Clock clock;
     protected final PersistentQueueConfig config;
+    protected final HistoryTables historyTables;
 
     //
     // All these *raw* time measurement only measure the query time *not* including the transaction and the time to acquire DB connection
@@ -83,12 +86,14 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
     protected final Timer rawGetEntriesTime;
     // Time to insert one entry in the DB
     protected final Timer rawInsertEntryTime;
-    // Time to claim the batch of entries (STICKY_POLLING)
+    // Time to claim the batch of entries (STICKY_POLLING, SKIP_LOCKED_POLLING)
     protected final Timer rawClaimEntriesTime;
     // Time to claim one entry (POLLING mode)
     protected final Timer rawClaimEntryTime;
     // Time to move a batch of entries (delete from table + insert into history)
     protected final Timer rawDeleteEntriesTime;
+    // Time to move a batch of entries, divided by the number of entries in the batch
+    protected final Timer rawDeleteEntriesTimePerEntry;
     // Time to move one entry (delete from table + insert into history)
     protected final Timer rawDeleteEntryTime;
 
@@ -106,12 +111,14 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
         this.config = config;
         this.clock = clock;
         this.prof = new Profiling<Long, RuntimeException>();
+        this.historyTables = new HistoryTables(clock, dbi, config, "DBBackedQueue-" + dbBackedQId);
 
         this.rawGetEntriesTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawGetEntriesTime"));
         this.rawInsertEntryTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawInsertEntryTime"));
         this.rawClaimEntriesTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawClaimEntriesTime"));
         this.rawClaimEntryTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawClaimEntryTime"));
         this.rawDeleteEntriesTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawDeleteEntriesTime"));
+        this.rawDeleteEntriesTimePerEntry = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawDeleteEntriesTimePerEntry"));
         this.rawDeleteEntryTime = metricRegistry.timer(MetricRegistry.name(DBBackedQueue.class, dbBackedQId, "rawDeleteEntryTime"));
 
         this.DB_QUEUE_LOG_ID = "DBBackedQueue-" + dbBackedQId;
@@ -184,7 +191,7 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
             log.debug("{} Moving entry into history: recordId={}, className={}, json={}", DB_QUEUE_LOG_ID, entry.getRecordId(), entry.getClassName(), entry.getEventJson());
 
             long ini = System.nanoTime();
-            transactional.insertEntry(entry, config.getHistoryTableName());
+            transactional.insertEntry(entry, historyTables.getHistoryTableName(clock.getUTCNow()));
             transactional.removeEntry(entry.getRecordId(), config.getTableName());
             rawDeleteEntryTime.update(System.nanoTime() - ini, TimeUnit.NANOSECONDS);
 
@@ -226,16 +233,20 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
             log.debug("{} Moving entry into history: recordId={}, className={}, json={}", DB_QUEUE_LOG_ID, cur.getRecordId(), cur.getClassName(), cur.getEventJson());
         }
 
-        final Iterable<Long> toBeRemovedRecordIds = Iterables.<T, Long>transform(entries, new Function<T, Long>() {
+        final List<Long> toBeRemovedRecordIds = ImmutableList.<Long>copyOf(Iterables.<T, Long>transform(entries, new Function<T, Long>() {
             @Override
             public Long apply(final T input) {
                 return input == null ? Long.valueOf(-1) : input.getRecordId();
             }
-        });
+        }));
         final long ini = System.nanoTime();
-        transactional.insertEntries(entries, config.getHistoryTableName());
-        transactional.removeEntries(ImmutableList.<Long>copyOf(toBeRemovedRecordIds), config.getTableName());
-        rawDeleteEntriesTime.update(System.nanoTime() - ini, TimeUnit.NANOSECONDS);
+        // Note: when batched statements rewriting is enabled in the driver (see DaoConfig#isRewriteBatchedStatementsEnabled),
+        // the history insert is sent as a single multi-row INSERT
+        transactional.insertEntries(entries, historyTables.getHistoryTableName(clock.getUTCNow()));
+        transactional.removeEntries(toBeRemovedRecordIds, config.getTableName());
+        final long elapsed = System.nanoTime() - ini;
+        rawDeleteEntriesTime.update(elapsed, TimeUnit.NANOSECONDS);
+        rawDeleteEntriesTimePerEntry.update(elapsed / toBeRemovedRecordIds.size(), TimeUnit.NANOSECONDS);
     }
 
     protected long getNbReadyEntries() {
@@ -244,7 +255,7 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
     }
 
     public long getNbReadyEntries(final Date now) {
-        final String owner = config.getPersistentQueueMode() == PersistentQueueMode.POLLING ? null : CreatorName.get();
+        final String owner = getReadyEntriesOwner();
         return executeQuery(new Query<Long, QueueSqlDao<T>>() {
             @Override
             public Long execute(final QueueSqlDao<T> queueSqlDao) {
@@ -253,6 +264,12 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
         });
     }
 
+    // In non sticky modes, entries can be picked up by any node
+    protected String getReadyEntriesOwner() {
+        final PersistentQueueMode mode = config.getPersistentQueueMode();
+        return mode == PersistentQueueMode.POLLING || mode == PersistentQueueMode.SKIP_LOCKED_POLLING ? null : CreatorName.get();
+    }
+
     protected Long safeInsertEntry(final QueueSqlDao<T> transactional, final T entry) {
         return prof.executeWithProfiling(ProfilingFeature.ProfilingFeatureType.DAO, "QueueSqlDao:insert", new Profiling.WithProfilingCallback<Long, RuntimeException>() {
 
@@ -274,6 +291,11 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
         });
     }
 
+    // Called at startup and periodically by the reaper (only when the history table rotation is enabled)
+    public void rotateHistoryTables() {
+        historyTables.rotate();
+    }
+
     // It is a good idea to monitor reapEntries in logs as these entries should rarely happen
     public void reapEntries(final Date reapingDate) {
         executeTransaction(new Transaction<Void, QueueSqlDao<T>>() {
@@ -376,6 +398,11 @@ public abstract class DBBackedQueue<T extends EventEntryModelDao> {
         U execute(QueueSqlDao sqlDao);
     }
 
+    // History tables to search, in chronological order (see PersistentQueueConfig#getHistoryTableRotation)
+    public List<String> getHistoryTableNames(@Nullable final DateTime minMovedDate) {
+        return historyTables.getHistoryTableNames(minMovedDate);
+    }
+
     public QueueSqlDao<T> getSqlDao() {
         return sqlDao;
     }
@@ -22,9 +22,12 @@ package org.killbill.queue;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.joda.time.DateTime;
 import org.killbill.CreatorName;
@@ -32,11 +35,18 @@ import org.killbill.bus.dao.PersistentBusSqlDao;
 import org.killbill.clock.Clock;
 import org.killbill.commons.jdbi.notification.DatabaseTransactionEvent;
 import org.killbill.commons.jdbi.notification.DatabaseTransactionEventType;
+import org.killbill.commons.jdbi.notification.DatabaseTransactionListener;
 import org.killbill.commons.jdbi.notification.DatabaseTransactionNotificationApi;
 import org.killbill.queue.api.PersistentQueueConfig;
+import org.killbill.queue.api.PersistentQueueConfig.InflightQueueType;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
 import org.killbill.queue.dao.EventEntryModelDao;
 import org.killbill.queue.dao.QueueSqlDao;
+import org.killbill.queue.inflight.InflightQueue;
+import org.killbill.queue.inflight.LinkedBlockingInflightQueue;
+import org.killbill.queue.inflight.LongHashSet;
+import org.killbill.queue.inflight.RingBufferInflightQueue;
+import org.killbill.queue.inflight.RingBufferInflightQueue.WaitStrategy;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionStatus;
@@ -48,10 +58,8 @@ import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.eventbus.AllowConcurrentEvents;
-import com.google.common.eventbus.Subscribe;
 
-public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extends DBBackedQueue<T> {
+public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extends DBBackedQueue<T> implements DatabaseTransactionListener {
 
     private static final Logger log = LoggerFactory.getLogger(DBBackedQueueWithInflightQueue.class);
 
@@ -61,7 +69,31 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
     // Drain inflightQ using getMaxInFlightEntries() config at a time and sleep for a maximum of 100 mSec if there is nothing to do
     private static final long INFLIGHT_POLLING_TIMEOUT_MSEC = 100;
 
-    private final LinkedBlockingQueue<Long> inflightEvents;
+    private final InflightQueue inflightEvents;
+
+    //
+    // Overflow handling: when an entry cannot be pushed into the inflightQ, we stop pushing altogether and switch to catch-up mode,
+    // where recordIds are read back from the table (keyset paging, starting at catchUpFromRecordId). Once a page comes back empty,
+    // we go back to push mode.
+    //
+    // Pages are read without any lock. The lock only makes sure that no transaction commit is in the middle of deciding whether to push
+    // or divert its entries while the lifecycle thread moves the catch-up position (read lock: commit handlers, write lock: lifecycle thread):
+    // if anything was diverted while the page was read, the page is discarded (position moved back) or the switch back to push mode is deferred.
+    //
+    private final ReadWriteLock catchUpLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean catchingUp = new AtomicBoolean(false);
+    private final AtomicLong catchUpFromRecordId = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxDivertedRecordId = new AtomicLong(-1);
+    private final AtomicLong nbOverflows = new AtomicLong(0);
+    private final AtomicLong nbDiverted = new AtomicLong(0);
+    //
+    // Entries handed out to the dispatcher and not completed yet (still AVAILABLE in the table, so they would show up in catch-up reads).
+    // Only tracked when the inflightQ is bounded (null otherwise), as an unbounded one never overflows. Entries handed out in push mode
+    // are tracked as well: they can still be in progress when the catch-up reads start. They are removed once the transaction moving
+    // them to the history (or updating them on error, or reaping them) completes, so that a catch-up read cannot see them as ready
+    // before the commit. Entries still in progress when the queue is closed are forgotten.
+    //
+    private final LongHashSet dispatchedRecordIds;
 
     private final DatabaseTransactionNotificationApi databaseTransactionNotificationApi;
 
@@ -72,6 +104,8 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
     private static final AtomicInteger QUEUE_ID_CNT = new AtomicInteger(0);
     private final int queueId;
     private final TransientInflightQRowIdCache transientInflightQRowIdCache;
+    // Entries completed (or updated on error) in the current transaction, to remove from dispatchedRecordIds
+    private final TransientInflightQRowIdCache transientCompletedRowIdCache;
 
     public DBBackedQueueWithInflightQueue(final Clock clock,
                                           final IDBI dbi,
@@ -85,11 +119,11 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
         Preconditions.checkArgument(config.getMinInFlightEntries() <= config.getMaxInFlightEntries());
 
         this.queueId = QUEUE_ID_CNT.incrementAndGet();
-        // We use an unboundedQ - the risk of running OUtOfMemory exists for a very large number of entries showing a more systematic problem...
-        this.inflightEvents = new LinkedBlockingQueue<Long>();
+        this.inflightEvents = createInflightQueue(config);
+        this.dispatchedRecordIds = config.getInflightQueueType() == InflightQueueType.LINKED_BLOCKING_QUEUE ? null : new LongHashSet(config.getMaxInFlightEntries());
 
+        // We enlist in the transactions inserting entries, see trackRowIdInCurrentTransaction
         this.databaseTransactionNotificationApi = databaseTransactionNotificationApi;
-        databaseTransactionNotificationApi.registerForNotification(this);
 
         // Metrics the size of the inflightQ
         metricRegistry.register(MetricRegistry.name(DBBackedQueueWithInflightQueue.class, dbBackedQId, "inflightQ", "size"), new Gauge<Integer>() {
@@ -99,12 +133,40 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
             }
         });
 
+        // Metrics the number of times the inflightQ overflowed and how far behind we are while catching up
+        metricRegistry.register(MetricRegistry.name(DBBackedQueueWithInflightQueue.class, dbBackedQId, "inflightQ", "overflows"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return nbOverflows.get();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(DBBackedQueueWithInflightQueue.class, dbBackedQId, "inflightQ", "catchUpLag"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getCatchUpLag();
+            }
+        });
+
         this.transientInflightQRowIdCache = new TransientInflightQRowIdCache(queueId);
+        this.transientCompletedRowIdCache = new TransientInflightQRowIdCache(queueId);
+    }
+
+    private static InflightQueue createInflightQueue(final PersistentQueueConfig config) {
+        switch (config.getInflightQueueType()) {
+            case RING_BUFFER_PARK:
+                return new RingBufferInflightQueue(config.getEventQueueCapacity(), WaitStrategy.PARK);
+            case RING_BUFFER_SPIN_THEN_PARK:
+                return new RingBufferInflightQueue(config.getEventQueueCapacity(), WaitStrategy.SPIN_THEN_PARK);
+            case LINKED_BLOCKING_QUEUE:
+            default:
+                return new LinkedBlockingInflightQueue();
+        }
     }
 
     @Override
     public void initialize() {
 
+        rotateHistoryTables();
         initializeInflightQueue();
         log.info("{} Initialized with queueId={}, mode={}",
                  DB_QUEUE_LOG_ID, queueId, config.getPersistentQueueMode());
@@ -112,7 +174,9 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
 
     @Override
     public void close() {
-        databaseTransactionNotificationApi.unregisterForNotification(this);
+        if (dispatchedRecordIds != null) {
+            dispatchedRecordIds.clear();
+        }
     }
 
 
@@ -127,7 +191,13 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
         // The current thread is in the middle of  a transaction and this is the only times it knows about the recordId for the queue event;
         // It keeps track of it as a per thread data. Very soon, when the transaction gets committed/rolled back it can then extract the info
         // and insert the recordId into a blockingQ that is highly optimized to dispatch events.
-        transientInflightQRowIdCache.addRowId(lastInsertId);
+        trackRowIdInCurrentTransaction(lastInsertId);
+    }
+
+    private void trackRowIdInCurrentTransaction(final Long rowId) {
+        transientInflightQRowIdCache.addRowId(rowId);
+        // Only get notified of the outcome of transactions touching that queue
+        databaseTransactionNotificationApi.enlistInCurrentTransaction(this);
     }
 
     private long pollEntriesFromInflightQ(final List<Long> result) {
@@ -138,10 +208,10 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
             try {
                 long beforePollTime = System.nanoTime();
                 // We block until we see the first entry or reach the timeout (in which case we will rerun the doDispatchEvents() loop and come back here).
-                final Long entryId = inflightEvents.poll(INFLIGHT_POLLING_TIMEOUT_MSEC, TimeUnit.MILLISECONDS);
+                final long entryId = inflightEvents.poll(INFLIGHT_POLLING_TIMEOUT_MSEC, TimeUnit.MILLISECONDS);
                 // Maybe there was at least one entry and we did not sleep at all, in which case this time is close to 0.
                 pollSleepTime = System.nanoTime() - beforePollTime;
-                if (entryId != null) {
+                if (entryId != InflightQueue.NO_RECORD_ID) {
                     result.add(entryId);
                 }
             } catch (final InterruptedException e) {
@@ -160,9 +230,21 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
         long pollSleepTime = 0;
 
         final List<Long> recordIds = new ArrayList<Long>(config.getMaxInFlightEntries());
-        do {
-            pollSleepTime += pollEntriesFromInflightQ(recordIds);
-        } while (recordIds.size() < config.getMinInFlightEntries() && pollSleepTime < INFLIGHT_POLLING_TIMEOUT_MSEC);
+        if (catchingUp.get()) {
+            // Entries pushed before the overflow go first, then we page through the table
+            inflightEvents.drainTo(recordIds, config.getMaxInFlightEntries());
+            if (recordIds.isEmpty()) {
+                recordIds.addAll(fetchCatchUpRecordIds());
+            }
+            if (recordIds.isEmpty()) {
+                // Remaining entries are still being processed (or we just went back to push mode)
+                pollSleepTime += pollEntriesFromInflightQ(recordIds);
+            }
+        } else {
+            do {
+                pollSleepTime += pollEntriesFromInflightQ(recordIds);
+            } while (recordIds.size() < config.getMinInFlightEntries() && pollSleepTime < INFLIGHT_POLLING_TIMEOUT_MSEC);
+        }
 
 
         List<T> entries = ImmutableList.<T>of();
@@ -179,23 +261,119 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
                     return result;
                 }
             });
+            if (dispatchedRecordIds != null) {
+                for (final T entry : entries) {
+                    dispatchedRecordIds.add(entry.getRecordId());
+                }
+            }
         }
         return new ReadyEntriesWithMetrics<T>(entries, (System.nanoTime() - ini) - pollSleepTime);
 
     }
 
+    private List<Long> fetchCatchUpRecordIds() {
+        // Something was pushed before we switched modes and has not been drained yet
+        if (inflightEvents.size() > 0) {
+            return ImmutableList.<Long>of();
+        }
+
+        final long fromRecordId = catchUpFromRecordId.get();
+        final long nbDivertedBefore = nbDiverted.get();
+        final List<Long> readyIds = ((PersistentBusSqlDao) sqlDao).getReadyEntryIds(clock.getUTCNow().toDate(), fromRecordId, config.getMaxInFlightEntries(), CreatorName.get(), config.getTableName());
+
+        catchUpLock.writeLock().lock();
+        try {
+            if (readyIds.isEmpty()) {
+                // Entries diverted since the read may not have been seen: stay in catch-up mode and read again
+                if (nbDiverted.get() != nbDivertedBefore || catchUpFromRecordId.get() != fromRecordId) {
+                    return ImmutableList.<Long>of();
+                }
+
+                // All caught up: commits from now on will push their entries into the inflightQ again
+                catchUpFromRecordId.set(Long.MAX_VALUE);
+                maxDivertedRecordId.set(-1);
+                catchingUp.set(false);
+                log.info("{} Inflight Q caught up, switching back to push mode", DB_QUEUE_LOG_ID);
+                return ImmutableList.<Long>of();
+            }
+
+            // An entry before the page was diverted in the meantime: read again from there
+            if (!catchUpFromRecordId.compareAndSet(fromRecordId, readyIds.get(readyIds.size() - 1) + 1)) {
+                return ImmutableList.<Long>of();
+            }
+        } finally {
+            catchUpLock.writeLock().unlock();
+        }
+
+        final List<Long> result = new ArrayList<Long>(readyIds.size());
+        for (final Long readyId : readyIds) {
+            if (dispatchedRecordIds == null || !dispatchedRecordIds.contains(readyId)) {
+                result.add(readyId);
+            }
+        }
+        return result;
+    }
+
+    // Entry was not pushed into the inflightQ: make sure the catch-up reads will cover it
+    private void divertToCatchUp(final Long recordId) {
+        nbDiverted.incrementAndGet();
+        long cur;
+        do {
+            cur = catchUpFromRecordId.get();
+        } while (recordId < cur && !catchUpFromRecordId.compareAndSet(cur, recordId));
+        do {
+            cur = maxDivertedRecordId.get();
+        } while (recordId > cur && !maxDivertedRecordId.compareAndSet(cur, recordId));
+
+        if (catchingUp.compareAndSet(false, true)) {
+            nbOverflows.incrementAndGet();
+            log.warn("{} Inflight Q overflowed, switching to catch-up mode from recordId={}", DB_QUEUE_LOG_ID, recordId);
+        }
+    }
+
+    private long getCatchUpLag() {
+        if (!catchingUp.get()) {
+            return 0L;
+        }
+        return Math.max(0L, maxDivertedRecordId.get() - catchUpFromRecordId.get() + 1);
+    }
+
+    @Override
+    public void moveEntryToHistoryFromTransaction(final QueueSqlDao<T> transactional, final T entry) {
+        super.moveEntryToHistoryFromTransaction(transactional, entry);
+        trackCompletedRowIdInCurrentTransaction(entry.getRecordId());
+    }
+
+    @Override
+    public void moveEntriesToHistoryFromTransaction(final QueueSqlDao<T> transactional, final Iterable<T> entries) {
+        super.moveEntriesToHistoryFromTransaction(transactional, entries);
+        for (final T entry : entries) {
+            trackCompletedRowIdInCurrentTransaction(entry.getRecordId());
+        }
+    }
+
     @Override
     public void updateOnError(final T entry) {
+        // The entry goes back to the inflightQ (or is picked up by the catch-up reads)
         executeTransaction(new Transaction<Void, QueueSqlDao<T>>() {
             @Override
             public Void inTransaction(final QueueSqlDao<T> transactional, final TransactionStatus status) throws Exception {
                 transactional.updateOnError(entry.getRecordId(), clock.getUTCNow().toDate(), entry.getErrorCount(), config.getTableName());
-                transientInflightQRowIdCache.addRowId(entry.getRecordId());
+                trackCompletedRowIdInCurrentTransaction(entry.getRecordId());
+                trackRowIdInCurrentTransaction(entry.getRecordId());
                 return null;
             }
         });
     }
 
+    private void trackCompletedRowIdInCurrentTransaction(final Long rowId) {
+        if (dispatchedRecordIds == null || rowId == null) {
+            return;
+        }
+        transientCompletedRowIdCache.addRowId(rowId);
+        databaseTransactionNotificationApi.enlistInCurrentTransaction(this);
+    }
+
     @Override
     protected void insertReapedEntriesFromTransaction(final QueueSqlDao<T> transactional, final List<T> entriesLeftBehind, final DateTime now) {
         for (final T entry : entriesLeftBehind) {
@@ -207,34 +385,54 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
         }
     }
 
-    @AllowConcurrentEvents
-    @Subscribe
+    @Override
     public void handleDatabaseTransactionEvent(final DatabaseTransactionEvent event) {
+        final boolean hasCompletedEntries = transientCompletedRowIdCache != null && transientCompletedRowIdCache.isValid();
+        final boolean hasNewEntries = transientInflightQRowIdCache != null && transientInflightQRowIdCache.isValid();
         // Either a transaction we are not interested in, or for the wrong queue; just return.
-        if (transientInflightQRowIdCache == null || !transientInflightQRowIdCache.isValid()) {
-            return;
-        }
-
-        // This is a ROLLBACK, clear the threadLocal and return
-        if (event.getType() == DatabaseTransactionEventType.ROLLBACK) {
-            transientInflightQRowIdCache.reset();
+        if (!hasCompletedEntries && !hasNewEntries) {
             return;
         }
 
+        catchUpLock.readLock().lock();
         try {
-            // Add entry in the inflightQ and clear threadlocal
+            // Under the lock, so that an entry updated on error cannot be read back by the catch-up reads before being diverted below
+            if (hasCompletedEntries) {
+                releaseCompletedEntries();
+            }
+
+            // This is a ROLLBACK, clear the threadLocal and return
+            if (!hasNewEntries || event.getType() == DatabaseTransactionEventType.ROLLBACK) {
+                return;
+            }
+
+            // Add entry in the inflightQ (unless we are catching up) and clear threadlocal
             final Iterator<Long> entries = transientInflightQRowIdCache.iterator();
             while (entries.hasNext()) {
                 final Long entry = entries.next();
-                final boolean result = inflightEvents.offer(entry);
-                if (result) {
+                if (!catchingUp.get() && inflightEvents.offer(entry)) {
                     log.debug("{} Inserting entry {} into inflightQ", DB_QUEUE_LOG_ID, entry);
                 } else {
-                    log.warn("{} Inflight Q overflowed....", DB_QUEUE_LOG_ID, entry);
+                    divertToCatchUp(entry);
                 }
             }
         } finally {
-            transientInflightQRowIdCache.reset();
+            catchUpLock.readLock().unlock();
+            if (hasNewEntries) {
+                transientInflightQRowIdCache.reset();
+            }
+        }
+    }
+
+    // Transaction completed (whatever the outcome, the entries are not in progress anymore): catch-up reads can pick them up again if still ready
+    private void releaseCompletedEntries() {
+        try {
+            final Iterator<Long> entries = transientCompletedRowIdCache.iterator();
+            while (entries.hasNext()) {
+                dispatchedRecordIds.remove(entries.next());
+            }
+        } finally {
+            transientCompletedRowIdCache.reset();
         }
     }
 
@@ -243,6 +441,21 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
         return inflightEvents.size();
     }
 
+    @VisibleForTesting
+    public boolean isCatchingUp() {
+        return catchingUp.get();
+    }
+
+    @VisibleForTesting
+    public long getNbOverflows() {
+        return nbOverflows.get();
+    }
+
+    @VisibleForTesting
+    public int getNbDispatchedEntries() {
+        return dispatchedRecordIds == null ? 0 : dispatchedRecordIds.size();
+    }
+
     //
     // Hide the ThreadLocal logic required for inflightQ algorithm in that class and export an easy to use interface.
     //
@@ -306,15 +519,23 @@ public class DBBackedQueueWithInflightQueue<T extends EventEntryModelDao> extend
 
         int totalEntries = 0;
         long fromRecordId = -1;
+        boolean overflowed = false;
         do {
             final List<Long> existingIds = ((PersistentBusSqlDao) sqlDao).getReadyEntryIds(clock.getUTCNow().toDate(), fromRecordId, MAX_FETCHED_RECORDS_ID, CreatorName.get(), config.getTableName());
             if (existingIds.isEmpty()) {
                 break;
             }
 
-            inflightEvents.addAll(existingIds);
-            totalEntries += existingIds.size();
-            if (existingIds.size() < MAX_FETCHED_RECORDS_ID) {
+            for (final Long existingId : existingIds) {
+                if (!inflightEvents.offer(existingId)) {
+                    // The catch-up reads will take it from there
+                    divertToCatchUp(existingId);
+                    overflowed = true;
+                    break;
+                }
+                totalEntries++;
+            }
+            if (overflowed || existingIds.size() < MAX_FETCHED_RECORDS_ID) {
                 break;
             }
             fromRecordId = existingIds.get(existingIds.size() - 1) + 1;
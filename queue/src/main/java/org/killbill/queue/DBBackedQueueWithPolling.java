@@ -19,6 +19,8 @@
 
 package org.killbill.queue;
 
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -32,9 +34,11 @@ import org.killbill.queue.api.PersistentQueueConfig.PersistentQueueMode;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
 import org.killbill.queue.dao.EventEntryModelDao;
 import org.killbill.queue.dao.QueueSqlDao;
+import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.Transaction;
 import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.tweak.HandleCallback;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Function;
@@ -45,6 +49,14 @@ import com.google.common.collect.Iterables;
 
 public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBackedQueue<T> {
 
+    // Shared names across drivers, see org.mariadb.jdbc.MySQLDatabaseMetaData and com.mysql.jdbc.DatabaseMetaData
+    private static final String MYSQL = "MySQL";
+    private static final String MARIADB = "MariaDB";
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    // Only relevant in SKIP_LOCKED_POLLING mode, computed at initialization time
+    private volatile boolean isSkipLockedSupported;
+
     public DBBackedQueueWithPolling(final Clock clock,
                                     final IDBI dbi,
                                     final Class<? extends QueueSqlDao<T>> sqlDaoClass,
@@ -56,6 +68,21 @@ public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBa
 
     @Override
     public void initialize() {
+        rotateHistoryTables();
+
+        if (config.getPersistentQueueMode() == PersistentQueueMode.SKIP_LOCKED_POLLING) {
+            isSkipLockedSupported = dbi.withHandle(new HandleCallback<Boolean>() {
+                @Override
+                public Boolean withHandle(final Handle handle) throws Exception {
+                    return isSkipLockedSupported(handle.getConnection().getMetaData());
+                }
+            });
+            if (!isSkipLockedSupported) {
+                log.warn("{} SELECT ... FOR UPDATE SKIP LOCKED isn't supported by the database, falling back to mode={}",
+                         DB_QUEUE_LOG_ID, PersistentQueueMode.POLLING);
+            }
+        }
+
         log.info("{} Initialized  mode={}",
                  DB_QUEUE_LOG_ID, config.getPersistentQueueMode());
     }
@@ -115,9 +142,15 @@ public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBa
     }
 
     private List<T> fetchReadyEntries(final DateTime now, final int maxEntries, final QueueSqlDao<T> queueSqlDao) {
-        final String owner = config.getPersistentQueueMode() == PersistentQueueMode.POLLING ? null : CreatorName.get();
+        final String owner = getReadyEntriesOwner();
         final long ini = System.nanoTime();
-        final List<T> result = queueSqlDao.getReadyEntries(now.toDate(), maxEntries, owner, config.getTableName());
+        final List<T> result;
+        if (useSkipLocked()) {
+            // Entries locked by other nodes are skipped, and the ones returned stay locked until we claim them in the same transaction
+            result = queueSqlDao.getReadyEntriesSkipLocked(now.toDate(), maxEntries, owner, config.getTableName());
+        } else {
+            result = queueSqlDao.getReadyEntries(now.toDate(), maxEntries, owner, config.getTableName());
+        }
         rawGetEntriesTime.update(System.nanoTime() - ini, TimeUnit.NANOSECONDS);
         return result;
     }
@@ -130,6 +163,9 @@ public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBa
             case STICKY_POLLING:
                 return batchClaimEntries(now, candidates, queueSqlDao);
 
+            case SKIP_LOCKED_POLLING:
+                return useSkipLocked() ? batchClaimEntries(now, candidates, queueSqlDao) : sequentialClaimEntries(now, candidates, queueSqlDao);
+
             default:
                 throw new IllegalStateException("Unsupported PersistentQueueMode " + config.getPersistentQueueMode());
         }
@@ -154,7 +190,8 @@ public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBa
         final int resultCount = queueSqlDao.claimEntries(recordIds, owner, nextAvailable, config.getTableName());
         rawClaimEntriesTime.update(System.nanoTime() - ini, TimeUnit.NANOSECONDS);
 
-        // We should ALWAYS see the same number since we are in STICKY_POLLING mode and there is only one thread claiming entries.
+        // We should ALWAYS see the same number since we are in STICKY_POLLING mode and there is only one thread claiming entries
+        // (or in SKIP_LOCKED_POLLING mode and the candidates are locked by our transaction).
         // We keep the 2 cases below for safety (code was written when this was MT-threaded), and we log with warn (will eventually remove it in the future)
         if (resultCount == candidates.size()) {
             log.debug("{} batchClaimEntries claimed (recordIds={}, now={}, nextAvailable={}, owner={}): {}",
@@ -213,4 +250,28 @@ public class DBBackedQueueWithPolling<T extends EventEntryModelDao> extends DBBa
         }
         return claimed;
     }
+
+    private boolean useSkipLocked() {
+        return config.getPersistentQueueMode() == PersistentQueueMode.SKIP_LOCKED_POLLING && isSkipLockedSupported;
+    }
+
+    private static boolean isSkipLockedSupported(final DatabaseMetaData metaData) throws SQLException {
+        final String productName = metaData.getDatabaseProductName();
+        final String productVersion = metaData.getDatabaseProductVersion();
+        final int majorVersion = metaData.getDatabaseMajorVersion();
+        final int minorVersion = metaData.getDatabaseMinorVersion();
+        if (MARIADB.equalsIgnoreCase(productName) || (productVersion != null && productVersion.contains(MARIADB))) {
+            // MariaDB 10.6+
+            return majorVersion > 10 || (majorVersion == 10 && minorVersion >= 6);
+        } else if (MYSQL.equalsIgnoreCase(productName)) {
+            // MySQL 8.0+
+            return majorVersion >= 8;
+        } else if (POSTGRESQL.equalsIgnoreCase(productName)) {
+            // PostgreSQL 9.5+
+            return majorVersion > 9 || (majorVersion == 9 && minorVersion >= 5);
+        } else {
+            // H2, etc.
+            return false;
+        }
+    }
 }
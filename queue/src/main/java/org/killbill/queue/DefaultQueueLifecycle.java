@@ -23,19 +23,23 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.killbill.commons.concurrent.Executors;
 import org.killbill.queue.api.PersistentQueueConfig;
 import org.killbill.queue.api.QueueLifecycle;
 import org.killbill.queue.dao.EventEntryModelDao;
+import org.killbill.queue.dispatching.EventReaderCache;
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -49,11 +53,13 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
 
     private static final long MAX_SLEEP_TIME_MS = 100;
 
-    // Max size of the batch we allow
-    private static final int MAX_COMPLETED_ENTRIES = 15;
+    // Adaptive polling: smallest sleep time after a partial or empty batch (doubled for each consecutive empty batch)
+    private static final long MIN_ADAPTIVE_SLEEP_TIME_MS = 100;
 
     protected final String svcQName;
     protected final ObjectMapper objectMapper;
+    // Shared by the dispatch threads and the search APIs
+    protected final EventReaderCache eventReaderCache;
     protected final PersistentQueueConfig config;
     private final LinkedBlockingQueue<EventEntryModelDao> completedOrFailedEvents;
     private final LinkedBlockingQueue<EventEntryModelDao> retriedEvents;
@@ -65,6 +71,12 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
     private final Histogram dispatchedEntries;
     // Nb of entries completed at each loop
     private final Histogram completeEntries;
+    // Adaptive polling: number of polls (and empty ones) and actual sleep time between polls
+    private final Meter polls;
+    private final Meter emptyPolls;
+    private final Histogram pollingInterval;
+    // Released when entries are inserted locally, to wake up the polling dispatcher threads early
+    private final Semaphore newEntriesSignal;
     private final boolean isStickyEvent;
     private volatile boolean isDispatchingEvents;
     private volatile boolean isCompletingEvents;
@@ -87,6 +99,7 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
         this.isDispatchingEvents = false;
         this.isCompletingEvents = false;
         this.objectMapper = objectMapper;
+        this.eventReaderCache = new EventReaderCache(objectMapper);
         this.completedOrFailedEvents = new LinkedBlockingQueue<>();
         this.retriedEvents = new LinkedBlockingQueue<>();
         this.isStickyEvent = config.getPersistentQueueMode() == PersistentQueueConfig.PersistentQueueMode.STICKY_EVENTS;
@@ -97,6 +110,17 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
         this.dispatchedEntries = metricRegistry.histogram(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "dispatchedEntries"));
         this.completeEntries = metricRegistry.histogram(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "completeEntries"));
 
+        this.newEntriesSignal = new Semaphore(0);
+        this.polls = metricRegistry.meter(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "polls"));
+        this.emptyPolls = metricRegistry.meter(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "emptyPolls"));
+        this.pollingInterval = metricRegistry.histogram(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "pollingInterval"));
+        metricRegistry.register(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "emptyPolls", "ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(emptyPolls.getFiveMinuteRate(), polls.getFiveMinuteRate());
+            }
+        });
+
         metricRegistry.register(MetricRegistry.name(DefaultQueueLifecycle.class, svcQName, "completedOrFailedEvents", "size"), new Gauge<Integer>() {
             @Override
             public Integer getValue() {
@@ -131,6 +155,8 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
     // Stop the lifecycle dispatcher threads, which fetch available entries and move them into the dispatch queue
     protected boolean stopLifecycleDispatcher() {
         isDispatchingEvents = false;
+        // Don't wait for the end of the current polling interval
+        newEntriesSignal.release(config.geNbLifecycleDispatchThreads());
 
         lifecycleDispatcherExecutor.shutdown();
         try {
@@ -168,6 +194,14 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
         retriedEvents.add(event);
     }
 
+    // Entries were inserted by this node and are ready for processing: with adaptive polling, poll again without waiting
+    // for the end of the current interval (if the transaction isn't committed yet, the next poll will happen shortly after).
+    public void signalNewEntries() {
+        if (!isStickyEvent && config.isAdaptivePollingEnabled() && newEntriesSignal.availablePermits() == 0) {
+            newEntriesSignal.release();
+        }
+    }
+
     public abstract DispatchResultMetrics doDispatchEvents();
 
     public abstract void doProcessCompletedEvents(final Iterable<? extends EventEntryModelDao> completed);
@@ -178,6 +212,14 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
         return objectMapper;
     }
 
+    public EventReaderCache getEventReaderCache() {
+        return eventReaderCache;
+    }
+
+    public void invalidateEventReaderCache() {
+        eventReaderCache.invalidateAll();
+    }
+
     public static class DispatchResultMetrics {
 
         private final int nbEntries;
@@ -218,8 +260,10 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
                         public void callback() throws InterruptedException {
                             long ini = System.nanoTime();
                             long pollSleepTime = 0;
-                            final List<EventEntryModelDao> completed = new ArrayList<>(MAX_COMPLETED_ENTRIES);
-                            completedOrFailedEvents.drainTo(completed, MAX_COMPLETED_ENTRIES);
+                            // Max size of the batch we allow
+                            final int maxCompletedEntries = config.getCompletionBatchSize();
+                            final List<EventEntryModelDao> completed = new ArrayList<>(maxCompletedEntries);
+                            completedOrFailedEvents.drainTo(completed, maxCompletedEntries);
                             if (completed.isEmpty()) {
                                 long beforePollTime = System.nanoTime();
                                 final EventEntryModelDao entry = completedOrFailedEvents.poll(MAX_SLEEP_TIME_MS, TimeUnit.MILLISECONDS);
@@ -274,6 +318,9 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
 
     private final class DispatcherRunnable implements Runnable {
 
+        // Adaptive polling: current sleep time between polls
+        private long adaptiveSleepTimeMs = MIN_ADAPTIVE_SLEEP_TIME_MS;
+
         @Override
         public void run() {
             try {
@@ -292,10 +339,10 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
                         @Override
                         public void callback() throws InterruptedException {
                             final long beforeLoop = System.nanoTime();
-                            dispatchEvents();
+                            final int nbEntries = dispatchEvents();
                             final long afterLoop = System.nanoTime();
 
-                            sleepSporadically((afterLoop - beforeLoop) / ONE_MILLION);
+                            sleepSporadically((afterLoop - beforeLoop) / ONE_MILLION, nbEntries);
                         }
                     });
                 }
@@ -319,7 +366,7 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
         }
 
 
-        private void dispatchEvents() {
+        private int dispatchEvents() {
 
             long ini = System.nanoTime();
             final DispatchResultMetrics metricsResult = doDispatchEvents();
@@ -329,14 +376,20 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
             } else {
                 dispatchTime.update(System.nanoTime() - ini, TimeUnit.NANOSECONDS);
             }
+            return metricsResult.getNbEntries();
         }
 
-        private void sleepSporadically(final long loopTimeMsec) throws InterruptedException {
+        private void sleepSporadically(final long loopTimeMsec, final int nbEntries) throws InterruptedException {
             if (isStickyEvent) {
                 // In this mode, the main thread does not sleep, but blocks on the inflightQ to minimize latency.
                 return;
             }
 
+            if (config.isAdaptivePollingEnabled()) {
+                sleepAdaptively(loopTimeMsec, nbEntries);
+                return;
+            }
+
             long remainingSleepTime = config.getPollingSleepTimeMs() - loopTimeMsec;
             while (remainingSleepTime > 0) {
                 final long curSleepTime = remainingSleepTime > MAX_SLEEP_TIME_MS ? MAX_SLEEP_TIME_MS : remainingSleepTime;
@@ -345,6 +398,28 @@ public abstract class DefaultQueueLifecycle implements QueueLifecycle {
             }
         }
 
+        private void sleepAdaptively(final long loopTimeMsec, final int nbEntries) throws InterruptedException {
+            polls.mark();
+            if (nbEntries >= config.getMaxEntriesClaimed()) {
+                // Full batch, there are likely more entries waiting
+                adaptiveSleepTimeMs = 0;
+            } else if (nbEntries > 0) {
+                adaptiveSleepTimeMs = MIN_ADAPTIVE_SLEEP_TIME_MS;
+            } else {
+                emptyPolls.mark();
+                adaptiveSleepTimeMs = Math.min(Math.max(adaptiveSleepTimeMs * 2, MIN_ADAPTIVE_SLEEP_TIME_MS), config.getPollingSleepTimeMs());
+            }
+
+            final long beforeSleep = System.nanoTime();
+            final long remainingSleepTime = adaptiveSleepTimeMs - loopTimeMsec;
+            if (remainingSleepTime > 0 && newEntriesSignal.tryAcquire(remainingSleepTime, TimeUnit.MILLISECONDS)) {
+                // New entries were inserted locally: poll now, and start backing off again from the minimum
+                newEntriesSignal.drainPermits();
+                adaptiveSleepTimeMs = 0;
+            }
+            pollingInterval.update((System.nanoTime() - beforeSleep) / ONE_MILLION + loopTimeMsec);
+        }
+
     }
 
 
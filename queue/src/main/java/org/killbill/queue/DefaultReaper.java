@@ -72,6 +72,7 @@ public abstract class DefaultReaper implements Reaper {
         final Runnable reapEntries = new Runnable() {
             @Override
             public void run() {
+                dao.rotateHistoryTables();
                 dao.reapEntries(getReapingDate());
             }
 
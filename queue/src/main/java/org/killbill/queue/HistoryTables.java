@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.killbill.clock.Clock;
+import org.killbill.queue.api.PersistentQueueConfig;
+import org.killbill.queue.api.PersistentQueueConfig.HistoryTableRotation;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+//
+// Resolve the history table(s) to use, when the history is split in rotating tables (<historyTableName>_YYYYMM).
+//
+// Entries are bucketed based on the date they are moved to the history: because an entry is always created before it
+// is processed, a search on created_date >= minCreatedDate only needs to look at the buckets starting at the month of minCreatedDate.
+// Retention is handled by simply dropping old buckets. The original history table is always searched as well, as it contains
+// the entries moved before the rotation was enabled.
+//
+// Buckets are created (and dropped) by rotate, at startup and from the reaper thread, never while moving entries: the move runs
+// within the queue transaction, where DDL statements would implicitly commit on MySQL and where borrowing a second connection
+// could deadlock when the pool is exhausted. If the bucket isn't there yet, entries are moved to the original history table.
+//
+// The list of buckets is cached, as listing the tables scans the metadata of the whole schema: it is refreshed at the
+// month rollover (when the buckets rotate) and at least every BUCKETS_REFRESH_PERIOD_MS, to pick up the buckets created
+// or dropped by other nodes.
+//
+class HistoryTables {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryTables.class);
+
+    private static final DateTimeFormatter MONTHLY_SUFFIX_FORMATTER = DateTimeFormat.forPattern("yyyyMM").withZoneUTC();
+
+    // Shared names across drivers, see org.mariadb.jdbc.MySQLDatabaseMetaData and com.mysql.jdbc.DatabaseMetaData
+    private static final String MYSQL = "MySQL";
+    private static final String MARIADB = "MariaDB";
+    private static final String POSTGRESQL = "PostgreSQL";
+
+    private static final String MYSQL_CREATE_TABLE_LIKE = "create table if not exists %s like %s";
+    private static final String POSTGRESQL_CREATE_TABLE_LIKE = "create table if not exists %s (like %s including all)";
+    private static final String DROP_TABLE = "drop table if exists %s";
+
+    private static final long BUCKETS_REFRESH_PERIOD_MS = 60 * 60 * 1000L;
+
+    private final Clock clock;
+    private final IDBI dbi;
+    private final PersistentQueueConfig config;
+    private final String logId;
+    private final Pattern bucketPattern;
+    // Buckets known to exist (created or checked by this node)
+    private final Set<String> existingBuckets;
+
+    // Lazily computed, null when the rotation isn't supported by the database
+    private volatile String createTableLikeTemplate;
+    private volatile boolean isInitialized;
+    // Sorted list of the buckets in the schema, null until first listed
+    private volatile CachedBuckets cachedBuckets;
+
+    HistoryTables(final Clock clock, final IDBI dbi, final PersistentQueueConfig config, final String logId) {
+        this.clock = clock;
+        this.dbi = dbi;
+        this.config = config;
+        this.logId = logId;
+        this.bucketPattern = Pattern.compile(Pattern.quote(config.getHistoryTableName().toLowerCase(Locale.ROOT)) + "_([0-9]{6})");
+        this.existingBuckets = Sets.<String>newConcurrentHashSet();
+        this.isInitialized = false;
+    }
+
+    // History table to use for entries moved at that date (doesn't access the database)
+    String getHistoryTableName(final DateTime movedDate) {
+        if (config.getHistoryTableRotation() == HistoryTableRotation.NONE || !isInitialized || createTableLikeTemplate == null) {
+            return config.getHistoryTableName();
+        }
+
+        final String bucket = getBucketName(movedDate);
+        if (!existingBuckets.contains(bucket)) {
+            log.debug("{} History table {} doesn't exist yet, using {}", logId, bucket, config.getHistoryTableName());
+            return config.getHistoryTableName();
+        }
+        return bucket;
+    }
+
+    // Create the buckets for the current and next months (ahead of time, so they are ready at the month rollover) and drop the expired ones
+    void rotate() {
+        if (config.getHistoryTableRotation() == HistoryTableRotation.NONE) {
+            return;
+        }
+
+        try {
+            if (!isRotationSupported()) {
+                return;
+            }
+
+            final DateTime now = clock.getUTCNow();
+            createBucket(getBucketName(now));
+            createBucket(getBucketName(now.plusMonths(1)));
+
+            if (config.getHistoryTableRetention() > 0) {
+                final String oldestBucket = getBucketName(now.minusMonths(config.getHistoryTableRetention() - 1));
+                for (final String bucket : getAllBuckets()) {
+                    if (bucket.compareTo(oldestBucket) < 0) {
+                        dropBucket(bucket);
+                    }
+                }
+            }
+        } catch (final RuntimeException e) {
+            // Not fatal, entries go to the original history table until the bucket exists
+            log.warn("{} Failed to rotate the history tables", logId, e);
+        }
+    }
+
+    // History tables to search, in chronological order: minMovedDate (optional) allows to skip the buckets that cannot contain matching entries
+    List<String> getHistoryTableNames(@Nullable final DateTime minMovedDate) {
+        if (config.getHistoryTableRotation() == HistoryTableRotation.NONE || !isRotationSupported()) {
+            return ImmutableList.<String>of(config.getHistoryTableName());
+        }
+
+        final String minBucket = minMovedDate == null ? null : getBucketName(minMovedDate);
+        final List<String> buckets = new ArrayList<String>();
+        for (final String bucket : getAllBuckets()) {
+            if (minBucket == null || bucket.compareTo(minBucket) >= 0) {
+                buckets.add(bucket);
+            }
+        }
+
+        return ImmutableList.<String>builder().add(config.getHistoryTableName())
+                            .addAll(buckets)
+                            .build();
+    }
+
+    @VisibleForTesting
+    String getBucketName(final DateTime date) {
+        return config.getHistoryTableName() + "_" + MONTHLY_SUFFIX_FORMATTER.print(date);
+    }
+
+    private void createBucket(final String bucket) {
+        if (existingBuckets.contains(bucket)) {
+            return;
+        }
+
+        execute(String.format(createTableLikeTemplate, bucket, config.getHistoryTableName()));
+        existingBuckets.add(bucket);
+        log.info("{} History table {} is ready", logId, bucket);
+        // Make the new bucket visible to the searches
+        cachedBuckets = null;
+    }
+
+    private void dropBucket(final String bucket) {
+        execute(String.format(DROP_TABLE, bucket));
+        existingBuckets.remove(bucket);
+        log.info("{} History table {} was dropped (retention is {} months)", logId, bucket, config.getHistoryTableRetention());
+        cachedBuckets = null;
+    }
+
+    private void execute(final String sql) {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute(sql);
+                return null;
+            }
+        });
+    }
+
+    // Sorted (bucket names sort chronologically)
+    @VisibleForTesting
+    List<String> getAllBuckets() {
+        final DateTime now = clock.getUTCNow();
+        final String currentBucket = getBucketName(now);
+        final CachedBuckets cached = cachedBuckets;
+        if (cached != null &&
+            cached.currentBucket.equals(currentBucket) &&
+            now.getMillis() - cached.listedDateMillis < BUCKETS_REFRESH_PERIOD_MS) {
+            return cached.buckets;
+        }
+
+        final List<String> buckets = listBuckets();
+        cachedBuckets = new CachedBuckets(buckets, currentBucket, now.getMillis());
+        return buckets;
+    }
+
+    private List<String> listBuckets() {
+        final List<String> buckets = dbi.withHandle(new HandleCallback<List<String>>() {
+            @Override
+            public List<String> withHandle(final Handle handle) throws Exception {
+                final List<String> result = new ArrayList<String>();
+                final DatabaseMetaData metaData = handle.getConnection().getMetaData();
+                final ResultSet tables = metaData.getTables(handle.getConnection().getCatalog(), null, "%", new String[]{"TABLE"});
+                try {
+                    while (tables.next()) {
+                        final String tableName = tables.getString("TABLE_NAME");
+                        final Matcher matcher = bucketPattern.matcher(tableName.toLowerCase(Locale.ROOT));
+                        if (matcher.matches()) {
+                            result.add(getBucketName(MONTHLY_SUFFIX_FORMATTER.parseDateTime(matcher.group(1))));
+                        }
+                    }
+                } finally {
+                    tables.close();
+                }
+                return result;
+            }
+        });
+        Collections.sort(buckets);
+        existingBuckets.addAll(buckets);
+        return ImmutableList.<String>copyOf(buckets);
+    }
+
+    private boolean isRotationSupported() {
+        if (!isInitialized) {
+            synchronized (this) {
+                if (!isInitialized) {
+                    createTableLikeTemplate = dbi.withHandle(new HandleCallback<String>() {
+                        @Override
+                        public String withHandle(final Handle handle) throws Exception {
+                            return getCreateTableLikeTemplate(handle.getConnection().getMetaData());
+                        }
+                    });
+                    if (createTableLikeTemplate == null) {
+                        log.warn("{} History table rotation isn't supported by the database, using {}", logId, config.getHistoryTableName());
+                    }
+                    isInitialized = true;
+                }
+            }
+        }
+        return createTableLikeTemplate != null;
+    }
+
+    private static final class CachedBuckets {
+
+        private final List<String> buckets;
+        private final String currentBucket;
+        private final long listedDateMillis;
+
+        private CachedBuckets(final List<String> buckets, final String currentBucket, final long listedDateMillis) {
+            this.buckets = buckets;
+            this.currentBucket = currentBucket;
+            this.listedDateMillis = listedDateMillis;
+        }
+    }
+
+    @Nullable
+    private static String getCreateTableLikeTemplate(final DatabaseMetaData metaData) throws SQLException {
+        final String productName = metaData.getDatabaseProductName();
+        if (MYSQL.equalsIgnoreCase(productName) || MARIADB.equalsIgnoreCase(productName)) {
+            return MYSQL_CREATE_TABLE_LIKE;
+        } else if (POSTGRESQL.equalsIgnoreCase(productName)) {
+            return POSTGRESQL_CREATE_TABLE_LIKE;
+        } else {
+            // H2, etc.
+            return null;
+        }
+    }
+}
@@ -23,16 +23,42 @@ import org.skife.config.TimeSpan;
 
 public interface PersistentQueueConfig {
 
-    // We support 3 different modes to the queue
+    // We support 4 different modes to the queue
     enum PersistentQueueMode {
         // Entries written from a given node (server) will also be dispatched to that same node; the code will poll for new entries
         STICKY_POLLING,
         // Entries written from a given node (server) will also be dispatched to that same node; the code will react to database commit/abort events to fetch new entries
         STICKY_EVENTS,
         // Entries written from a given node (server) will may be dispatched to any nodes by polling for all available entries
-        POLLING
+        POLLING,
+        // Same as POLLING, but batches are claimed atomically using SELECT ... FOR UPDATE SKIP LOCKED (MySQL 8+, PostgreSQL 9.5+),
+        // so that multiple nodes can drain the queue in parallel without fighting for the same entries. On other engines,
+        // this falls back to the POLLING behavior.
+        SKIP_LOCKED_POLLING
     }
 
+    // Implementation of the inflight queue (only valid in STICKY_EVENTS mode)
+    enum InflightQueueType {
+        // Unbounded LinkedBlockingQueue
+        LINKED_BLOCKING_QUEUE,
+        // Lock-free ring buffer of primitive longs, bounded by getEventQueueCapacity, consumers park when idle
+        RING_BUFFER_PARK,
+        // Same as RING_BUFFER_PARK, but consumers spin for a short while before parking
+        RING_BUFFER_SPIN_THEN_PARK
+    }
+
+    // How the history table is organized
+    enum HistoryTableRotation {
+        // Single history table
+        NONE,
+        // One history table per month (<historyTableName>_YYYYMM), based on the date entries are moved to the history (MySQL and PostgreSQL only)
+        MONTHLY
+    }
+
+
+    // Settings added after the initial release have default implementations (matching the @Default of the config classes),
+    // so that existing implementations keep compiling
+
     boolean isInMemory();
 
     int getMaxFailureRetries();
@@ -49,20 +75,49 @@ public interface PersistentQueueConfig {
 
     long getPollingSleepTimeMs();
 
+    default boolean isAdaptivePollingEnabled() {
+        return false;
+    }
+
     boolean isProcessingOff();
 
     int getEventQueueCapacity();
 
+    default InflightQueueType getInflightQueueType() {
+        return InflightQueueType.LINKED_BLOCKING_QUEUE;
+    }
+
     int geMaxDispatchThreads();
 
+    default int getNbDispatchLanes() {
+        return 0;
+    }
+
+    default int getVirtualThreadsMaxConcurrency() {
+        return 0;
+    }
+
     int geNbLifecycleDispatchThreads();
 
     int geNbLifecycleCompleteThreads();
 
+    default int getCompletionBatchSize() {
+        return 15;
+    }
+
     String getTableName();
 
     String getHistoryTableName();
 
+    default HistoryTableRotation getHistoryTableRotation() {
+        return HistoryTableRotation.NONE;
+    }
+
+    default int getHistoryTableRetention() {
+        return 0;
+    }
+
+
     TimeSpan getReapThreshold();
 
     int getMaxReDispatchCount();
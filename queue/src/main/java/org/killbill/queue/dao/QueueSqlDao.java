@@ -42,6 +42,9 @@ import org.skife.jdbi.v2.util.LongMapper;
 @KillBillSqlDaoStringTemplate
 public interface QueueSqlDao<T extends EventEntryModelDao> extends Transactional<QueueSqlDao<T>>, CloseMe {
 
+    // Batch size when streaming search results (see SmartFetchSize)
+    int SEARCH_FETCH_SIZE = 1000;
+
     @SqlQuery
     Long getMaxRecordId(@Define("tableName") final String tableName);
 
@@ -50,7 +53,7 @@ public interface QueueSqlDao<T extends EventEntryModelDao> extends Transactional
                     @Define("tableName") final String tableName);
 
     @SqlQuery
-    List<T> getEntriesFromIds(@BindIn("record_ids") final List<Long> recordIds,
+    List<T> getEntriesFromIds(@BindIn(value = "record_ids", padToPowerOfTwo = true) final List<Long> recordIds,
                               @Define("tableName") final String tableName);
 
     @SqlQuery
@@ -62,6 +65,13 @@ public interface QueueSqlDao<T extends EventEntryModelDao> extends Transactional
                             @Define("tableName") final String tableName);
 
 
+    // Rows are locked until the end of the transaction (MySQL 8+, PostgreSQL 9.5+ only)
+    @SqlQuery
+    List<T> getReadyEntriesSkipLocked(@Bind("now") Date now,
+                                      @Bind("max") int max,
+                                      @Nullable @Define("owner") String owner,
+                                      @Define("tableName") final String tableName);
+
     @SqlQuery
     long getNbReadyEntries(@Bind("now") Date now,
                             // This is somewhat a hack, should really be a @Bind parameter but we also use it
@@ -85,7 +95,7 @@ public interface QueueSqlDao<T extends EventEntryModelDao> extends Transactional
                    @Define("tableName") final String tableName);
 
     @SqlUpdate
-    int claimEntries(@BindIn("record_ids") final Collection<Long> recordIds,
+    int claimEntries(@BindIn(value = "record_ids", padToPowerOfTwo = true) final Collection<Long> recordIds,
                      @Bind("owner") String owner,
                      @Bind("nextAvailable") Date nextAvailable,
                      @Define("tableName") final String tableName);
@@ -101,7 +111,7 @@ public interface QueueSqlDao<T extends EventEntryModelDao> extends Transactional
                      @Define("tableName") final String tableName);
 
     @SqlUpdate
-    void removeEntries(@BindIn("record_ids") final Collection<Long> recordIds,
+    void removeEntries(@BindIn(value = "record_ids", padToPowerOfTwo = true) final Collection<Long> recordIds,
                        @Define("tableName") final String tableName);
 
     @SqlUpdate
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.queue.dao;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.skife.jdbi.v2.ResultIterator;
+
+import com.google.common.base.Function;
+
+/**
+ * Like {@link com.google.common.collect.Iterators#transform} and {@link com.google.common.collect.Iterators#concat},
+ * but the resulting iterators can still be closed, releasing the underlying streamed result sets (and the connection
+ * held by the on-demand DAO) when the client stops iterating before the end.
+ */
+public final class ResultIterators {
+
+    private ResultIterators() {}
+
+    /**
+     * @param fromIterable iterable whose iterators may be {@link ResultIterator}
+     * @param function     transformation, applied lazily
+     * @return an iterable whose iterators are {@link ResultIterator}
+     */
+    public static <F, T> Iterable<T> transform(final Iterable<F> fromIterable, final Function<? super F, ? extends T> function) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return transform(fromIterable.iterator(), function);
+            }
+        };
+    }
+
+    public static <F, T> ResultIterator<T> transform(final Iterator<F> fromIterator, final Function<? super F, ? extends T> function) {
+        return new ResultIterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return fromIterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                final F from = fromIterator.next();
+                try {
+                    return function.apply(from);
+                } catch (final RuntimeException e) {
+                    // Don't hold the connection if the client gives up (e.g. deserialization issue)
+                    close(fromIterator);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                ResultIterators.close(fromIterator);
+            }
+        };
+    }
+
+    /**
+     * @param iterators iterators to concatenate, which should be opened lazily (e.g. one query per history table)
+     * @return an iterator which opens the next iterator only once the current one is exhausted
+     */
+    public static <T> ResultIterator<T> concat(final Iterator<? extends Iterator<T>> iterators) {
+        return new ResultIterator<T>() {
+
+            private Iterator<T> current = null;
+            private boolean closed = false;
+
+            @Override
+            public boolean hasNext() {
+                if (closed) {
+                    return false;
+                }
+
+                while (current == null || !current.hasNext()) {
+                    if (!iterators.hasNext()) {
+                        return false;
+                    }
+                    current = iterators.next();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    ResultIterators.close(current);
+                }
+            }
+        };
+    }
+
+    /**
+     * Close the iterator if it is a {@link ResultIterator} (no-op otherwise, e.g. if it's backed by a list).
+     *
+     * @param iterator iterator returned by this class or by a DAO
+     */
+    public static void close(final Iterator<?> iterator) {
+        if (iterator instanceof ResultIterator) {
+            ((ResultIterator) iterator).close();
+        }
+    }
+}
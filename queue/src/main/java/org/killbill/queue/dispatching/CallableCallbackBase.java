@@ -39,19 +39,26 @@ public abstract class CallableCallbackBase<E extends QueueEvent, M extends Event
     private final Clock clock;
     private final PersistentQueueConfig config;
     private final ObjectMapper objectMapper;
+    private final EventReaderCache eventReaderCache;
 
     public CallableCallbackBase(final DBBackedQueue<M> dao, final Clock clock, final PersistentQueueConfig config, final ObjectMapper objectMapper) {
+        this(dao, clock, config, objectMapper, new EventReaderCache(objectMapper));
+    }
+
+    public CallableCallbackBase(final DBBackedQueue<M> dao, final Clock clock, final PersistentQueueConfig config, final ObjectMapper objectMapper, final EventReaderCache eventReaderCache) {
         this.dao = dao;
         this.clock = clock;
         this.config = config;
         this.objectMapper = objectMapper;
+        this.eventReaderCache = eventReaderCache;
     }
 
     @Override
     public E deserialize(final M modelDao) {
-        return deserializeEvent(modelDao, objectMapper);
+        return deserializeEvent(modelDao, eventReaderCache);
     }
 
+    // Uncached, see deserializeEvent(M, EventReaderCache)
     @SuppressWarnings("unchecked")
     public static <E extends QueueEvent, M extends EventEntryModelDao> E deserializeEvent(final M modelDao, final ObjectMapper objectMapper) {
         try {
@@ -63,6 +70,16 @@ public abstract class CallableCallbackBase<E extends QueueEvent, M extends Event
         }
     }
 
+    @SuppressWarnings("unchecked")
+    public static <E extends QueueEvent, M extends EventEntryModelDao> E deserializeEvent(final M modelDao, final EventReaderCache eventReaderCache) {
+        try {
+            return (E) eventReaderCache.readValue(modelDao.getClassName(), modelDao.getEventJson());
+        } catch (final Exception e) {
+            log.error(String.format("Failed to deserialize json object %s for class %s", modelDao.getEventJson(), modelDao.getClassName()), e);
+            return null;
+        }
+    }
+
     @Override
     public void moveCompletedOrFailedEvents(final Iterable<M> entries) {
         dao.moveEntriesToHistory(entries);
@@ -20,16 +20,25 @@
 package org.killbill.queue.dispatching;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.killbill.clock.Clock;
 import org.killbill.commons.concurrent.DynamicThreadPoolExecutorWithLoggingOnExceptions;
+import org.killbill.commons.concurrent.Executors;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
 import org.killbill.queue.DefaultQueueLifecycle;
 import org.killbill.queue.api.PersistentQueueConfig;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
@@ -40,6 +49,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class Dispatcher<E extends QueueEvent, M extends EventEntryModelDao> {
@@ -62,8 +76,18 @@ public class Dispatcher<E extends QueueEvent, M extends EventEntryModelDao> {
     private final DefaultQueueLifecycle parentLifeCycle;
     private final Clock clock;
 
+    // Optional serial lanes (entries are hashed on search_key1), used instead of the shared pool to preserve per-key ordering
+    private final int nbLanes;
+    private final List<BlockingQueue<Runnable>> laneWorkQueues;
+    private final List<Timer> laneWaitTimes;
+
+    // Optional virtual threads (JDK 21+), one per handler, the semaphore limiting how many run concurrently
+    private final Semaphore virtualThreadPermits;
+    private final String virtualThreadsName;
+
     // Deferred in start sequence to allow for restart, which is not possible after the shutdown (mostly for test purpose)
     private ExecutorService handlerExecutor;
+    private List<ExecutorService> laneExecutors;
 
     public Dispatcher(final int corePoolSize,
                       final PersistentQueueConfig config,
@@ -76,7 +100,8 @@ public class Dispatcher<E extends QueueEvent, M extends EventEntryModelDao> {
                       final RejectedExecutionHandler rejectionHandler,
                       final Clock clock,
                       final CallableCallback<E, M> handlerCallback,
-                      final DefaultQueueLifecycle parentLifeCycle) {
+                      final DefaultQueueLifecycle parentLifeCycle,
+                      final MetricRegistry metricRegistry) {
         this.corePoolSize = corePoolSize;
         this.maximumPoolSize = config.geMaxDispatchThreads();
         this.keepAliveTime = keepAliveTime;
@@ -90,14 +115,56 @@ public class Dispatcher<E extends QueueEvent, M extends EventEntryModelDao> {
         this.maxFailureRetries = config.getMaxFailureRetries();
         this.handlerCallback = handlerCallback;
         this.parentLifeCycle = parentLifeCycle;
+
+        this.virtualThreadsName = config.getTableName() + "-vth";
+        if (config.getVirtualThreadsMaxConcurrency() > 0 && config.getNbDispatchLanes() <= 0) {
+            if (Executors.isVirtualThreadSupported()) {
+                this.virtualThreadPermits = new Semaphore(config.getVirtualThreadsMaxConcurrency());
+            } else {
+                log.warn("Virtual threads require JDK 21+, {} will use the dispatch thread pool", config.getTableName());
+                this.virtualThreadPermits = null;
+            }
+        } else {
+            this.virtualThreadPermits = null;
+        }
+
+        this.nbLanes = Math.max(config.getNbDispatchLanes(), 0);
+        this.laneWorkQueues = new ArrayList<BlockingQueue<Runnable>>(nbLanes);
+        this.laneWaitTimes = new ArrayList<Timer>(nbLanes);
+        // The capacity is split across lanes to keep the same memory bound as the shared pool
+        final int laneCapacity = config.getEventQueueCapacity() > 0 ? Math.max(config.getEventQueueCapacity() / Math.max(nbLanes, 1), 1) : Integer.MAX_VALUE;
+        for (int i = 0; i < nbLanes; i++) {
+            final BlockingQueue<Runnable> laneWorkQueue = new LinkedBlockingQueue<Runnable>(laneCapacity);
+            laneWorkQueues.add(laneWorkQueue);
+            laneWaitTimes.add(metricRegistry.timer(MetricRegistry.name(Dispatcher.class, config.getTableName(), "lane-" + i, "waitTime")));
+            metricRegistry.register(MetricRegistry.name(Dispatcher.class, config.getTableName(), "lane-" + i, "size"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return laneWorkQueue.size();
+                }
+            });
+        }
     }
 
     public void start() {
-        this.handlerExecutor = new DynamicThreadPoolExecutorWithLoggingOnExceptions(corePoolSize, maximumPoolSize, keepAliveTime, keepAliveTimeUnit, workQueue, threadFactory, rejectionHandler);
+        if (nbLanes > 0) {
+            this.laneExecutors = new ArrayList<ExecutorService>(nbLanes);
+            for (int i = 0; i < nbLanes; i++) {
+                laneExecutors.add(new DynamicThreadPoolExecutorWithLoggingOnExceptions(1, 1, keepAliveTime, keepAliveTimeUnit, laneWorkQueues.get(i), threadFactory, rejectionHandler));
+            }
+        } else if (virtualThreadPermits != null) {
+            this.handlerExecutor = Executors.newVirtualThreadPerTaskExecutor(virtualThreadsName);
+        } else {
+            this.handlerExecutor = new DynamicThreadPoolExecutorWithLoggingOnExceptions(corePoolSize, maximumPoolSize, keepAliveTime, keepAliveTimeUnit, workQueue, threadFactory, rejectionHandler);
+        }
     }
 
     // Stop the dispatcher threads, which are doing the work
     public boolean stopDispatcher() {
+        if (nbLanes > 0) {
+            return stopLanes();
+        }
+
         handlerExecutor.shutdown();
         try {
             return handlerExecutor.awaitTermination(shutdownTimeout, shutdownTimeUnit);
@@ -107,11 +174,123 @@ public class Dispatcher<E extends QueueEvent, M extends EventEntryModelDao> {
         }
     }
 
+    private boolean stopLanes() {
+        for (final ExecutorService laneExecutor : laneExecutors) {
+            laneExecutor.shutdown();
+        }
+
+        // All lanes share the same shutdown timeout
+        final long deadline = System.nanoTime() + shutdownTimeUnit.toNanos(shutdownTimeout);
+        boolean terminated = true;
+        try {
+            for (final ExecutorService laneExecutor : laneExecutors) {
+                if (!laneExecutor.awaitTermination(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                    terminated = false;
+                }
+            }
+        } catch (final InterruptedException e) {
+            log.info("Stop sequence, lane executors have been interrupted");
+            return false;
+        }
+        return terminated;
+    }
+
     @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
     public void dispatch(final M modelDao) {
         log.debug("Dispatching entry {}", modelDao);
         final CallableQueueHandler<E, M> entry = new CallableQueueHandler<E, M>(modelDao, handlerCallback, parentLifeCycle, clock, maxFailureRetries);
-        handlerExecutor.submit(entry);
+        if (nbLanes > 0) {
+            final int lane = getLane(modelDao);
+            laneExecutors.get(lane).submit(new LaneCallable<E>(entry, laneWaitTimes.get(lane)));
+        } else if (virtualThreadPermits != null) {
+            dispatchOnVirtualThread(entry);
+        } else {
+            handlerExecutor.submit(entry);
+        }
+    }
+
+    // Similar to the BlockingRejectionExecutionHandler: we block until a handler completes
+    private void dispatchOnVirtualThread(final CallableQueueHandler<E, M> entry) {
+        try {
+            virtualThreadPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Dispatcher was interrupted while waiting for a virtual thread", e);
+        }
+
+        try {
+            // No Future to look at: failures are logged by the runnable itself
+            handlerExecutor.execute(new VirtualThreadRunnable(entry, virtualThreadPermits));
+        } catch (final RejectedExecutionException e) {
+            virtualThreadPermits.release();
+            throw e;
+        }
+    }
+
+    // Entries sharing the same search_key1 (e.g. account) always end up in the same lane, and are therefore processed in order.
+    // Note that a retried entry goes back through the lifecycle and can be processed after subsequent entries for the same key.
+    @VisibleForTesting
+    int getLane(final M modelDao) {
+        final Long key = modelDao.getSearchKey1() != null ? modelDao.getSearchKey1() : modelDao.getRecordId();
+        if (key == null) {
+            return 0;
+        }
+        return (int) Math.floorMod(key, (long) nbLanes);
+    }
+
+    private static final class LaneCallable<E> implements Callable<E> {
+
+        private final Callable<E> delegate;
+        private final Timer waitTime;
+        private final long enqueuedNanos;
+
+        private LaneCallable(final Callable<E> delegate, final Timer waitTime) {
+            this.delegate = delegate;
+            this.waitTime = waitTime;
+            this.enqueuedNanos = System.nanoTime();
+        }
+
+        @Override
+        public E call() throws Exception {
+            waitTime.update(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+            return delegate.call();
+        }
+    }
+
+    // Virtual threads are never reused: carry over the per-thread data of the dispatching thread and release the permit when done
+    private static final class VirtualThreadRunnable implements Runnable {
+
+        private final Callable<?> delegate;
+        private final Semaphore permits;
+        private final Map<String, String> mdcContext;
+        private final RequestData requestData;
+
+        private VirtualThreadRunnable(final Callable<?> delegate, final Semaphore permits) {
+            this.delegate = delegate;
+            this.permits = permits;
+            this.mdcContext = MDC.getCopyOfContextMap();
+            this.requestData = Request.getPerThreadRequestData();
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                }
+                if (requestData != null) {
+                    Request.setPerThreadRequestData(requestData);
+                }
+                delegate.call();
+            } catch (final Throwable e) {
+                // Same as the LoggingExecutor used by the thread pool
+                log.error(Thread.currentThread() + " ended abnormally with an exception", e);
+            } finally {
+                Request.resetPerThreadRequestData();
+                MDC.clear();
+                permits.release();
+            }
+        }
     }
 
     public static class CallableQueueHandler<E extends QueueEvent, M extends EventEntryModelDao> implements Callable<E> {
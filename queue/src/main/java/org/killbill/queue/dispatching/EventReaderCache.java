@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.queue.dispatching;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Caches the class resolution and the Jackson readers used to deserialize queue events.
+ * <p>
+ * Instances are owned by the component owning the ObjectMapper (the cached readers reference it), i.e. one per bus and
+ * one per notification queue service. Unknown classes are remembered for a short while only, so that a class loaded
+ * later (e.g. by a plugin) is eventually resolved.
+ */
+public final class EventReaderCache {
+
+    private static final int MAX_CACHED_CLASSES = 1000;
+    private static final long UNKNOWN_CLASS_EXPIRATION_SEC = 60;
+
+    private final LoadingCache<String, ObjectReader> readers;
+    private final Cache<String, Boolean> unknownClasses;
+
+    public EventReaderCache(final ObjectMapper objectMapper) {
+        this(objectMapper, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    EventReaderCache(final ObjectMapper objectMapper, final Ticker ticker) {
+        this.readers = CacheBuilder.newBuilder()
+                                   .maximumSize(MAX_CACHED_CLASSES)
+                                   .build(new CacheLoader<String, ObjectReader>() {
+                                       @Override
+                                       public ObjectReader load(final String className) throws ClassNotFoundException {
+                                           return objectMapper.readerFor(Class.forName(className));
+                                       }
+                                   });
+        this.unknownClasses = CacheBuilder.newBuilder()
+                                          .maximumSize(MAX_CACHED_CLASSES)
+                                          .expireAfterWrite(UNKNOWN_CLASS_EXPIRATION_SEC, TimeUnit.SECONDS)
+                                          .ticker(ticker)
+                                          .build();
+    }
+
+    // E.g. when plugins are reloaded (see PersistentBus#invalidateEventReaderCache and NotificationQueueService#invalidateEventReaderCache)
+    public void invalidateAll() {
+        readers.invalidateAll();
+        unknownClasses.invalidateAll();
+    }
+
+    public <T> T readValue(final String className, final String json) throws ClassNotFoundException, IOException {
+        return getReader(className).readValue(json);
+    }
+
+    private ObjectReader getReader(final String className) throws ClassNotFoundException {
+        if (unknownClasses.getIfPresent(className) != null) {
+            throw new ClassNotFoundException(className);
+        }
+
+        try {
+            return readers.get(className);
+        } catch (final ExecutionException e) {
+            // Failed lookups aren't cached by the LoadingCache
+            unknownClasses.put(className, Boolean.TRUE);
+            if (e.getCause() instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) e.getCause();
+            }
+            throw new ClassNotFoundException(className, e.getCause());
+        }
+    }
+
+    @VisibleForTesting
+    public long getNbCachedClasses() {
+        return readers.size();
+    }
+
+    @VisibleForTesting
+    long getNbUnknownClasses() {
+        unknownClasses.cleanUp();
+        return unknownClasses.size();
+    }
+}
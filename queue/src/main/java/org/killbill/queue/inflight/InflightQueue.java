@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue.inflight;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Holds the record ids of the entries ready to be dispatched (STICKY_EVENTS mode)
+public interface InflightQueue {
+
+    long NO_RECORD_ID = -1L;
+
+    // Non blocking, returns false if the queue is full
+    boolean offer(long recordId);
+
+    // Non blocking, returns the number of record ids added to the result
+    int drainTo(List<Long> result, int maxElements);
+
+    // Wait up to the timeout for a record id to become available, returns NO_RECORD_ID if none (record ids are positive)
+    long poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    int size();
+
+    void clear();
+}
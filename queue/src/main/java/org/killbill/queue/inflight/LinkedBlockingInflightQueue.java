@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue.inflight;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Default implementation, unbounded
+public class LinkedBlockingInflightQueue implements InflightQueue {
+
+    private final LinkedBlockingQueue<Long> inflightEvents;
+
+    public LinkedBlockingInflightQueue() {
+        // We use an unboundedQ - the risk of running OUtOfMemory exists for a very large number of entries showing a more systematic problem...
+        this.inflightEvents = new LinkedBlockingQueue<Long>();
+    }
+
+    @Override
+    public boolean offer(final long recordId) {
+        return inflightEvents.offer(recordId);
+    }
+
+    @Override
+    public int drainTo(final List<Long> result, final int maxElements) {
+        return inflightEvents.drainTo(result, maxElements);
+    }
+
+    @Override
+    public long poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final Long recordId = inflightEvents.poll(timeout, unit);
+        return recordId == null ? NO_RECORD_ID : recordId;
+    }
+
+    @Override
+    public int size() {
+        return inflightEvents.size();
+    }
+
+    @Override
+    public void clear() {
+        inflightEvents.clear();
+    }
+}
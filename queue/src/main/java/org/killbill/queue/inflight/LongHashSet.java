@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue.inflight;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+//
+// Set of (positive) recordIds, stored in a plain long[] (open addressing, linear probing): adding or removing an entry doesn't allocate,
+// unless the table has to grow. The table shrinks back to its initial capacity once empty, so that a burst doesn't pin memory forever.
+//
+// Methods are synchronized: accesses are short and rarely contended (the lifecycle thread adds, the transaction handlers remove).
+//
+public class LongHashSet {
+
+    private static final long EMPTY = InflightQueue.NO_RECORD_ID;
+
+    private final int initialCapacity;
+
+    private long[] values;
+    private int mask;
+    private int size;
+
+    public LongHashSet(final int minCapacity) {
+        Preconditions.checkArgument(minCapacity > 0 && minCapacity <= (1 << 29), "Invalid capacity %s", minCapacity);
+
+        // Load factor of at most 0.5
+        this.initialCapacity = Integer.highestOneBit(minCapacity) << 2;
+        allocate(initialCapacity);
+    }
+
+    public synchronized boolean add(final long value) {
+        Preconditions.checkArgument(value >= 0, "Invalid value %s", value);
+
+        int index = indexOf(value);
+        while (values[index] != EMPTY) {
+            if (values[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        values[index] = value;
+        size++;
+
+        if (size > (mask + 1) >> 1) {
+            rehash(values.length << 1);
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(final long value) {
+        int index = indexOf(value);
+        while (values[index] != EMPTY) {
+            if (values[index] == value) {
+                deleteAt(index);
+                size--;
+                if (size == 0 && values.length > initialCapacity) {
+                    allocate(initialCapacity);
+                }
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public synchronized boolean contains(final long value) {
+        int index = indexOf(value);
+        while (values[index] != EMPTY) {
+            if (values[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        allocate(initialCapacity);
+    }
+
+    // Backward shift deletion: move back the following entries of the cluster which would not be reachable anymore
+    private void deleteAt(final int deletedIndex) {
+        int hole = deletedIndex;
+        int index = (hole + 1) & mask;
+        while (values[index] != EMPTY) {
+            final int home = indexOf(values[index]);
+            // Can the entry at index move to the hole, i.e. is its home slot not in (hole, index]?
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                values[hole] = values[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        values[hole] = EMPTY;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldValues = values;
+        allocate(capacity);
+        for (final long value : oldValues) {
+            if (value != EMPTY) {
+                int index = indexOf(value);
+                while (values[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                values[index] = value;
+                size++;
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private int indexOf(final long value) {
+        // Spread the (mostly sequential) recordIds (Fibonacci hashing)
+        final long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue.inflight;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+//
+// Bounded, lock-free, multi-producers multi-consumers queue of primitive longs (see Dmitry Vyukov's bounded MPMC queue).
+//
+// Each slot has a sequence number which tells whether it is ready to be written (sequence == position) or read (sequence == position + 1).
+// Values are stored in a plain long[]: the write (resp. read) of the value happens-before the update of the sequence,
+// which is itself read with volatile semantics on the other side. Offering an entry doesn't allocate.
+// Producers wake up the parked consumers, if any, after publishing an entry.
+//
+public class RingBufferInflightQueue implements InflightQueue {
+
+    public enum WaitStrategy {
+        // Park the consumer until a producer wakes it up (or the timeout expires)
+        PARK,
+        // Busy spin for a short while before parking, to minimize latency under load (at the cost of CPU)
+        SPIN_THEN_PARK
+    }
+
+    private static final int MAX_SPINS = 1000;
+
+    private final int mask;
+    private final long[] values;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final WaitStrategy waitStrategy;
+    // Consumers currently parked in poll
+    private final Set<Thread> parkedConsumers;
+
+    public RingBufferInflightQueue(final int minCapacity, final WaitStrategy waitStrategy) {
+        Preconditions.checkArgument(minCapacity > 0 && minCapacity <= (1 << 30), "Invalid capacity %s", minCapacity);
+
+        final int capacity = minCapacity == 1 ? 1 : Integer.highestOneBit(minCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.values = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.head = new AtomicLong(0);
+        this.tail = new AtomicLong(0);
+        this.waitStrategy = waitStrategy;
+        this.parkedConsumers = Sets.<Thread>newConcurrentHashSet();
+    }
+
+    @Override
+    public boolean offer(final long recordId) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            final long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // Full
+                return false;
+            }
+            // Otherwise, another producer got that slot: retry
+        }
+
+        values[index] = recordId;
+        // Volatile write (and not lazySet), so that it cannot be reordered with the read of parkedConsumers below
+        sequences.set(index, position + 1);
+
+        if (!parkedConsumers.isEmpty()) {
+            for (final Thread consumer : parkedConsumers) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int drainTo(final List<Long> result, final int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            final long value = tryPoll();
+            if (value == NO_RECORD_ID) {
+                return drained;
+            }
+            result.add(value);
+            drained++;
+        }
+        return drained;
+    }
+
+    // Non blocking, doesn't allocate
+    private long tryPoll() {
+        long position;
+        int index;
+        while (true) {
+            position = head.get();
+            index = (int) position & mask;
+            final long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // Empty
+                return NO_RECORD_ID;
+            }
+            // Otherwise, another consumer got that slot: retry
+        }
+
+        final long value = values[index];
+        sequences.lazySet(index, position + mask + 1);
+        return value;
+    }
+
+    @Override
+    public long poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long value = tryPoll();
+        if (value != NO_RECORD_ID) {
+            return value;
+        }
+
+        if (waitStrategy == WaitStrategy.SPIN_THEN_PARK) {
+            for (int i = 0; i < MAX_SPINS; i++) {
+                value = tryPoll();
+                if (value != NO_RECORD_ID) {
+                    return value;
+                }
+            }
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final Thread currentThread = Thread.currentThread();
+        parkedConsumers.add(currentThread);
+        try {
+            while (true) {
+                // Check again after registering, to avoid missing a wake-up
+                value = tryPoll();
+                if (value != NO_RECORD_ID) {
+                    return value;
+                }
+
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return NO_RECORD_ID;
+                }
+
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            parkedConsumers.remove(currentThread);
+        }
+    }
+
+    @Override
+    public int size() {
+        // Approximation under concurrent access
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    @Override
+    public void clear() {
+        while (tryPoll() != NO_RECORD_ID) {
+            // Drop the entry
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.killbill.TestSetup;
 import org.killbill.bus.api.BusEvent;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.commons.embeddeddb.mysql.MySQLEmbeddedDB;
+import org.killbill.queue.dispatching.EventReaderCache;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -66,6 +67,10 @@ public class TestPersistentBusDemo {
 
 
         dataSource = embeddedDB.getDataSource();
+        bus = new DefaultPersistentBus(dataSource, createProperties());
+    }
+
+    private Properties createProperties() {
         final Properties properties = new Properties();
         properties.setProperty("org.killbill.persistent.bus.main.inMemory", "false");
         properties.setProperty("org.killbill.persistent.bus.main.queue.mode", "STICKY_POLLING");
@@ -78,7 +83,7 @@ public class TestPersistentBusDemo {
         properties.setProperty("org.killbill.persistent.bus.main.queue.capacity", "3000");
         properties.setProperty("org.killbill.persistent.bus.main.tableName", "bus_events");
         properties.setProperty("org.killbill.persistent.bus.main.historyTableName", "bus_events_history");
-        bus = new DefaultPersistentBus(dataSource, properties);
+        return properties;
     }
 
     @BeforeMethod(groups = "slow")
@@ -146,6 +151,61 @@ public class TestPersistentBusDemo {
         Assert.assertTrue(handler.waitForCompletion(1, 3000));
     }
 
+    @Test(groups = "slow")
+    public void testInvalidateEventReaderCache() throws Exception {
+        final DummyHandler handler = new DummyHandler();
+        bus.register(handler);
+        bus.post(new DummyEvent("foo", 1L, 2L, UUID.randomUUID()));
+        Assert.assertTrue(handler.waitForCompletion(1, 3000));
+
+        // The dispatch threads use the cache of the bus
+        final EventReaderCache eventReaderCache = bus.getEventReaderCache();
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+
+        bus.invalidateEventReaderCache();
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 0);
+
+        // Reloaded on demand
+        bus.post(new DummyEvent("bar", 1L, 2L, UUID.randomUUID()));
+        Assert.assertTrue(handler.waitForCompletion(2, 3000));
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testAdaptivePollingWakesUpOnPost() throws Exception {
+        // Only the adaptive bus should pick up the event
+        bus.stopQueue();
+
+        // Without the wake-up signal, the event is only seen at the next poll
+        final Properties properties = createProperties();
+        properties.setProperty("org.killbill.persistent.bus.main.sleep", "60000");
+        properties.setProperty("org.killbill.persistent.bus.main.sleep.adaptive", "true");
+        final DefaultPersistentBus adaptiveBus = new DefaultPersistentBus(dataSource, properties);
+
+        final DummyHandler handler = new DummyHandler();
+        adaptiveBus.startQueue();
+        try {
+            adaptiveBus.register(handler);
+
+            // Let the dispatcher back off: after 7s of empty polls (100ms, 200ms, ..., 3.2s), it sleeps for 6.4s
+            Thread.sleep(7000);
+
+            final Connection connection = dataSource.getConnection();
+            try {
+                connection.setAutoCommit(false);
+                adaptiveBus.postFromTransaction(new DummyEvent("foo", 1L, 2L, UUID.randomUUID()), connection);
+                connection.commit();
+            } finally {
+                connection.close();
+            }
+
+            // Well below the remaining backoff (more than 5s): only the wake-up signal can explain it
+            Assert.assertTrue(handler.waitForCompletion(1, 1000));
+        } finally {
+            adaptiveBus.stopQueue();
+        }
+    }
+
     public static class DummyEvent implements BusEvent {
 
         private final String name;
@@ -40,6 +40,7 @@ import org.killbill.notificationq.api.NotificationQueueService.NotificationQueue
 import org.killbill.notificationq.dao.NotificationEventModelDao;
 import org.killbill.notificationq.dao.NotificationSqlDao;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
+import org.killbill.queue.dispatching.EventReaderCache;
 import org.killbill.queue.retry.RetryableHandler;
 import org.killbill.queue.retry.RetryableService;
 import org.skife.jdbi.v2.DBI;
@@ -304,6 +305,40 @@ public class TestNotificationQueue extends TestSetup {
         queue.stopQueue();
     }
 
+    @Test(groups = "slow")
+    public void testInvalidateEventReaderCache() throws Exception {
+        final NotificationQueueHandler handler = new NotificationQueueHandler() {
+            @Override
+            public void handleReadyNotification(final NotificationEvent eventJson, final DateTime eventDateTime, final UUID userToken, final Long searchKey1, final Long searchKey2) {
+            }
+        };
+        final NotificationQueue queue1 = queueService.createNotificationQueue("test-svc", "cache1", handler);
+        final NotificationQueue queue2 = queueService.createNotificationQueue("test-svc", "cache2", handler);
+        queue1.startQueue();
+        queue2.startQueue();
+
+        final DateTime futureTime = clock.getUTCNow().plusHours(1);
+        queue1.recordFutureNotification(futureTime, new TestNotificationKey(UUID.randomUUID().toString()), TOKEN_ID, 1L, 1L);
+        queue2.recordFutureNotification(futureTime, new TestNotificationKey(UUID.randomUUID().toString()), TOKEN_ID, 2L, 2L);
+
+        // The queues share the cache of the service
+        final EventReaderCache eventReaderCache = ((DefaultNotificationQueueService) queueService).getEventReaderCache();
+        Assert.assertEquals(Iterables.size(queue1.getFutureNotificationForSearchKeys(1L, 1L)), 1);
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+        Assert.assertEquals(Iterables.size(queue2.getFutureNotificationForSearchKeys(2L, 2L)), 1);
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+
+        queueService.invalidateEventReaderCache();
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 0);
+
+        // Reloaded on demand
+        Assert.assertEquals(Iterables.size(queue2.getFutureNotificationForSearchKeys(2L, 2L)), 1);
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+
+        queue1.stopQueue();
+        queue2.stopQueue();
+    }
+
     @Test(groups = "slow")
     public void testManyNotifications() throws Exception {
         final Map<String, Boolean> expectedNotifications = new TreeMap<String, Boolean>();
@@ -19,7 +19,9 @@
 
 package org.killbill.queue;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -28,12 +30,15 @@ import org.killbill.TestSetup;
 import org.killbill.bus.api.PersistentBusConfig;
 import org.killbill.bus.dao.BusEventModelDao;
 import org.killbill.bus.dao.PersistentBusSqlDao;
+import org.killbill.queue.api.PersistentQueueConfig.InflightQueueType;
 import org.skife.config.TimeSpan;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestDBBackedQueueWithInflightQ extends TestSetup {
 
@@ -75,6 +80,53 @@ public class TestDBBackedQueueWithInflightQ extends TestSetup {
 
     }
 
+    @Test(groups = "slow")
+    public void testInflightQOverflowWithCatchUp() {
+
+        final int NB_ENTRIES = 345;
+        final PersistentBusConfig config = createConfig(InflightQueueType.RING_BUFFER_PARK, 16);
+        queue = new DBBackedQueueWithInflightQueue<BusEventModelDao>(clock, dbi, PersistentBusSqlDao.class, config, "testInflightQOverflowWithCatchUp", metricRegistry, databaseTransactionNotificationApi);
+
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            final BusEventModelDao input = createEntry(new Long(i + 5));
+            sqlDao.insertEntry(input, config.getTableName());
+        }
+
+        queue.initialize();
+
+        // Only what fits was pushed, the rest is read back from the table
+        assertEquals(queue.getInflightQSize(), 16);
+        assertTrue(queue.isCatchingUp());
+        assertEquals(queue.getNbOverflows(), 1L);
+
+        // New entries committed while catching up are not lost either
+        for (int i = 0; i < 5; i++) {
+            queue.insertEntry(createEntry(new Long(i + 1000)));
+        }
+        assertEquals(queue.getInflightQSize(), 16);
+
+        final Set<Long> seen = new HashSet<Long>();
+        int nbIterations = 0;
+        while (seen.size() < NB_ENTRIES + 5 && nbIterations++ < 100) {
+            final List<BusEventModelDao> entries = queue.getReadyEntries().getEntries();
+            for (final BusEventModelDao entry : entries) {
+                // No entry should be dispatched twice
+                assertTrue(seen.add(entry.getRecordId()));
+            }
+            queue.moveEntriesToHistory(entries);
+        }
+        assertEquals(seen.size(), NB_ENTRIES + 5);
+        // Completed entries are not tracked anymore
+        assertEquals(queue.getNbDispatchedEntries(), 0);
+
+        // Next read finds nothing and goes back to push mode
+        assertEquals(queue.getReadyEntries().getEntries().size(), 0);
+        assertFalse(queue.isCatchingUp());
+
+        queue.insertEntry(createEntry(2000L));
+        assertEquals(queue.getInflightQSize(), 1);
+    }
+
     private BusEventModelDao createEntry(final Long searchKey1, final String owner) {
         final String json = "json";
         return new BusEventModelDao(owner, clock.getUTCNow(), String.class.getName(), json, UUID.randomUUID(), searchKey1, 1L);
@@ -85,6 +137,10 @@ public class TestDBBackedQueueWithInflightQ extends TestSetup {
     }
 
     private PersistentBusConfig createConfig() {
+        return createConfig(InflightQueueType.LINKED_BLOCKING_QUEUE, -1);
+    }
+
+    private PersistentBusConfig createConfig(final InflightQueueType inflightQueueType, final int eventQueueCapacity) {
         return new PersistentBusConfig() {
             @Override
             public boolean isInMemory() {
@@ -139,7 +195,7 @@ public class TestDBBackedQueueWithInflightQ extends TestSetup {
 
             @Override
             public int getEventQueueCapacity() {
-                return -1;
+                return eventQueueCapacity;
             }
             @Override
             public String getTableName() {
@@ -167,6 +223,11 @@ public class TestDBBackedQueueWithInflightQ extends TestSetup {
             public TimeSpan getShutdownTimeout() {
                 return new TimeSpan(5, TimeUnit.SECONDS);
             }
+
+            @Override
+            public InflightQueueType getInflightQueueType() {
+                return inflightQueueType;
+            }
         };
     }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.CreatorName;
+import org.killbill.TestSetup;
+import org.killbill.bus.api.PersistentBusConfig;
+import org.killbill.bus.dao.BusEventModelDao;
+import org.killbill.bus.dao.PersistentBusSqlDao;
+import org.killbill.commons.embeddeddb.EmbeddedDB;
+import org.skife.config.ConfigurationObjectFactory;
+import org.skife.config.SimplePropertyConfigSource;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestHistoryTables extends TestSetup {
+
+    private PersistentBusConfig config;
+    private HistoryTables historyTables;
+
+    @BeforeMethod(groups = "slow")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+
+        final Properties properties = new Properties();
+        properties.setProperty("org.killbill.persistent.bus.rotation.historyTableRotation", "MONTHLY");
+        config = new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).buildWithReplacements(PersistentBusConfig.class,
+                                                                                                                 ImmutableMap.<String, String>of("instanceName", "rotation"));
+        historyTables = new HistoryTables(clock, dbi, config, "TestHistoryTables");
+    }
+
+    @AfterMethod(groups = "slow")
+    public void afterMethod() {
+        if (!isRotationSupported()) {
+            return;
+        }
+
+        // Buckets aren't part of the DDL, so they aren't cleaned up by the embedded database
+        for (final String bucket : new HistoryTables(clock, dbi, config, "TestHistoryTables-cleanup").getAllBuckets()) {
+            executeStatement("drop table " + bucket);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testHistoryTableNames() {
+        assertEquals(historyTables.getBucketName(new DateTime(2021, 3, 31, 23, 59, DateTimeZone.UTC)), "bus_events_history_202103");
+        assertEquals(historyTables.getBucketName(new DateTime(2021, 4, 1, 0, 0, DateTimeZone.UTC)), "bus_events_history_202104");
+        // Buckets are based on UTC dates
+        assertEquals(historyTables.getBucketName(new DateTime(2021, 4, 1, 0, 30, DateTimeZone.forOffsetHours(1))), "bus_events_history_202103");
+
+        if (!isRotationSupported()) {
+            assertEquals(historyTables.getHistoryTableName(new DateTime(2021, 3, 15, 0, 0, DateTimeZone.UTC)), "bus_events_history");
+            assertEquals(historyTables.getHistoryTableNames(null), ImmutableList.<String>of("bus_events_history"));
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testRotate() {
+        if (!isRotationSupported()) {
+            return;
+        }
+
+        clock.setTime(new DateTime(2020, 6, 15, 0, 0, DateTimeZone.UTC));
+
+        // Buckets are never created when moving entries: until the first rotation, the original history table is used
+        assertEquals(historyTables.getHistoryTableName(clock.getUTCNow()), "bus_events_history");
+
+        historyTables.rotate();
+        final String bucket = historyTables.getHistoryTableName(clock.getUTCNow());
+        assertEquals(bucket, "bus_events_history_202006");
+
+        // The next bucket is created ahead of time
+        final List<String> allBuckets = historyTables.getAllBuckets();
+        assertTrue(allBuckets.contains("bus_events_history_202006"));
+        assertTrue(allBuckets.contains("bus_events_history_202007"));
+        assertEquals(historyTables.getHistoryTableName(new DateTime(2020, 7, 1, 0, 0, DateTimeZone.UTC)), "bus_events_history_202007");
+        assertEquals(historyTables.getHistoryTableName(new DateTime(2020, 8, 1, 0, 0, DateTimeZone.UTC)), "bus_events_history");
+
+        // Same structure as the history table
+        final PersistentBusSqlDao sqlDao = dbi.onDemand(PersistentBusSqlDao.class);
+        final BusEventModelDao entry = new BusEventModelDao(CreatorName.get(), clock.getUTCNow(), String.class.getName(), "json", UUID.randomUUID(), 1L, 1L);
+        sqlDao.insertEntry(entry, bucket);
+        assertEquals(countEntries(bucket), 1);
+        assertEquals(countEntries("bus_events_history_202007"), 0);
+
+        // Creating an existing bucket is a no-op
+        historyTables.rotate();
+        final HistoryTables otherHistoryTables = new HistoryTables(clock, dbi, config, "TestHistoryTables-2");
+        otherHistoryTables.rotate();
+        assertEquals(otherHistoryTables.getHistoryTableName(clock.getUTCNow()), bucket);
+        assertEquals(countEntries(bucket), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testRetention() {
+        if (!isRotationSupported()) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        properties.setProperty("org.killbill.persistent.bus.rotation.historyTableRotation", "MONTHLY");
+        properties.setProperty("org.killbill.persistent.bus.rotation.historyTableRetention", "3");
+        final PersistentBusConfig configWithRetention = new ConfigurationObjectFactory(new SimplePropertyConfigSource(properties)).buildWithReplacements(PersistentBusConfig.class,
+                                                                                                                                                         ImmutableMap.<String, String>of("instanceName", "rotation"));
+        final HistoryTables historyTablesWithRetention = new HistoryTables(clock, dbi, configWithRetention, "TestHistoryTables-retention");
+
+        clock.setTime(new DateTime(2024, 1, 15, 0, 0, DateTimeZone.UTC));
+        historyTablesWithRetention.rotate();
+        assertTrue(historyTablesWithRetention.getAllBuckets().containsAll(ImmutableList.<String>of("bus_events_history_202401", "bus_events_history_202402")));
+
+        // Keeps 202403, 202404 and 202405 (and the next bucket)
+        clock.setTime(new DateTime(2024, 5, 15, 0, 0, DateTimeZone.UTC));
+        historyTablesWithRetention.rotate();
+        assertEquals(historyTablesWithRetention.getAllBuckets(), ImmutableList.<String>of("bus_events_history_202405", "bus_events_history_202406"));
+        assertEquals(historyTablesWithRetention.getHistoryTableNames(null), ImmutableList.<String>of("bus_events_history", "bus_events_history_202405", "bus_events_history_202406"));
+    }
+
+    @Test(groups = "slow")
+    public void testListHistoryTablesWithMinCreatedDate() {
+        if (!isRotationSupported()) {
+            return;
+        }
+
+        // Creates 203001, 203002, 203003 and 203004
+        clock.setTime(new DateTime(2030, 1, 10, 0, 0, DateTimeZone.UTC));
+        historyTables.rotate();
+        clock.setTime(new DateTime(2030, 3, 10, 0, 0, DateTimeZone.UTC));
+        historyTables.rotate();
+
+        // Original history table first, then the buckets in chronological order
+        assertEquals(historyTables.getHistoryTableNames(new DateTime(2030, 2, 28, 0, 0, DateTimeZone.UTC)),
+                     ImmutableList.<String>of("bus_events_history", "bus_events_history_203002", "bus_events_history_203003", "bus_events_history_203004"));
+        assertEquals(historyTables.getHistoryTableNames(new DateTime(2030, 4, 1, 0, 0, DateTimeZone.UTC)),
+                     ImmutableList.<String>of("bus_events_history", "bus_events_history_203004"));
+        assertEquals(historyTables.getHistoryTableNames(new DateTime(2030, 5, 1, 0, 0, DateTimeZone.UTC)),
+                     ImmutableList.<String>of("bus_events_history"));
+        assertEquals(historyTables.getHistoryTableNames(null),
+                     ImmutableList.<String>of("bus_events_history", "bus_events_history_203001", "bus_events_history_203002", "bus_events_history_203003", "bus_events_history_203004"));
+    }
+
+    @Test(groups = "slow")
+    public void testBucketsListIsCachedUntilRotation() {
+        if (!isRotationSupported()) {
+            return;
+        }
+
+        clock.setTime(new DateTime(2022, 1, 10, 0, 0, DateTimeZone.UTC));
+        historyTables.rotate();
+        assertTrue(historyTables.getAllBuckets().contains("bus_events_history_202201"));
+
+        // Bucket created by another node: not seen until the list is refreshed
+        executeStatement("create table if not exists bus_events_history_202205 as select * from bus_events_history where 1 = 0");
+        assertFalse(historyTables.getAllBuckets().contains("bus_events_history_202205"));
+
+        // Month rollover
+        clock.addMonths(1);
+        assertTrue(historyTables.getAllBuckets().contains("bus_events_history_202205"));
+    }
+
+    private boolean isRotationSupported() {
+        return embeddedDB.getDBEngine() != EmbeddedDB.DBEngine.H2;
+    }
+
+    private int countEntries(final String tableName) {
+        return dbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(final Handle handle) throws Exception {
+                return handle.createQuery("select count(*) from " + tableName).mapTo(Integer.class).first();
+            }
+        });
+    }
+
+    private void executeStatement(final String sql) {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute(sql);
+                return null;
+            }
+        });
+    }
+}
@@ -21,7 +21,9 @@ package org.killbill.queue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,9 +34,12 @@ import org.killbill.TestSetup;
 import org.killbill.bus.api.PersistentBusConfig;
 import org.killbill.bus.dao.BusEventModelDao;
 import org.killbill.bus.dao.PersistentBusSqlDao;
+import org.killbill.commons.jdbi.mapper.LowerToCamelBeanMapper;
 import org.killbill.queue.DBBackedQueue.ReadyEntriesWithMetrics;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
 import org.skife.config.TimeSpan;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.BeforeClass;
@@ -119,6 +124,67 @@ public class TestLoadDBBackedQueue extends TestSetup {
     }
 
 
+    @Test(groups = "load", enabled = false)
+    public void testSkipLockedPollingLoad() throws InterruptedException {
+
+        final int nbEntries = 10000;
+        final int nbOwners = 8;
+        final PersistentBusConfig config = createConfig(10, -1, PersistentQueueMode.SKIP_LOCKED_POLLING);
+        final DBBackedQueue<BusEventModelDao> insertQueue = new DBBackedQueueWithPolling<BusEventModelDao>(clock, dbi, PersistentBusSqlDao.class, config, "skipLocked-bus_event", metricRegistry);
+        insertQueue.initialize();
+        for (int i = 0; i < nbEntries; i++) {
+            final BusEventModelDao input = createEntry(new Long(i + 5));
+            insertQueue.insertEntry(input);
+        }
+
+        // Each owner simulates a different node with its own queue instance
+        final Set<Long> claimedRecordIds = ConcurrentHashMap.newKeySet();
+        final AtomicLong duplicates = new AtomicLong(0);
+        final AtomicLong consumed = new AtomicLong(0);
+        final Thread[] owners = new Thread[nbOwners];
+        for (int i = 0; i < nbOwners; i++) {
+            final DBBackedQueue<BusEventModelDao> ownerQueue = new DBBackedQueueWithPolling<BusEventModelDao>(clock, dbi, PersistentBusSqlDao.class, config, "skipLocked-bus_event-" + i, metricRegistry);
+            ownerQueue.initialize();
+            owners[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    do {
+                        final List<BusEventModelDao> entries = ownerQueue.getReadyEntries().getEntries();
+                        if (entries.isEmpty()) {
+                            continue;
+                        }
+                        final List<BusEventModelDao> processed = new ArrayList<BusEventModelDao>(entries.size());
+                        for (final BusEventModelDao cur : entries) {
+                            if (!claimedRecordIds.add(cur.getRecordId())) {
+                                duplicates.incrementAndGet();
+                            }
+                            processed.add(new BusEventModelDao(cur, OWNER, clock.getUTCNow(), PersistentQueueEntryLifecycleState.PROCESSED));
+                        }
+                        ownerQueue.moveEntriesToHistory(processed);
+                        consumed.getAndAdd(entries.size());
+                    } while (consumed.get() < nbEntries);
+                }
+            });
+        }
+
+        final long ini = System.currentTimeMillis();
+        for (int i = 0; i < nbOwners; i++) {
+            owners[i].start();
+        }
+        for (int i = 0; i < nbOwners; i++) {
+            owners[i].join();
+        }
+        final long elapsed = System.currentTimeMillis() - ini;
+
+        log.info(String.format("Claimed %s events with %s owners in %s msec => rate = %s claimed rows/sec", consumed.get(), nbOwners, elapsed,
+                ((double) (consumed.get()) / (double) elapsed) * 1000));
+
+        assertEquals(duplicates.get(), 0);
+        assertEquals(claimedRecordIds.size(), nbEntries);
+        final List<BusEventModelDao> ready = sqlDao.getReadyEntries(clock.getUTCNow().toDate(), 1000, null, "bus_events");
+        assertEquals(ready.size(), 0);
+    }
+
     @Test(groups = "load", enabled = false)
     public void testInflightQLoad() throws InterruptedException {
 
@@ -202,6 +268,37 @@ public class TestLoadDBBackedQueue extends TestSetup {
         }
     }
 
+    // Compare a shared mapper (mapping plans resolved once) with a new mapper per query
+    @Test(groups = "load", enabled = false)
+    public void testRowMappingLoad() {
+        final int nbEntries = 1000;
+        final int nbQueries = 200;
+
+        final PersistentBusConfig config = createConfig(10, -1, PersistentQueueMode.POLLING);
+        queue = new DBBackedQueueWithPolling<BusEventModelDao>(clock, dbi, PersistentBusSqlDao.class, config, "mapping-bus_event", metricRegistry);
+        queue.initialize();
+        for (int i = 0; i < nbEntries; i++) {
+            queue.insertEntry(createEntry(new Long(i)));
+        }
+
+        final LowerToCamelBeanMapper<BusEventModelDao> sharedMapper = new LowerToCamelBeanMapper<BusEventModelDao>(BusEventModelDao.class);
+        for (final boolean shared : new boolean[]{true, false, true, false}) {
+            final long ini = System.nanoTime();
+            for (int i = 0; i < nbQueries; i++) {
+                final List<BusEventModelDao> entries = dbi.withHandle(new HandleCallback<List<BusEventModelDao>>() {
+                    @Override
+                    public List<BusEventModelDao> withHandle(final Handle handle) throws Exception {
+                        final LowerToCamelBeanMapper<BusEventModelDao> mapper = shared ? sharedMapper : new LowerToCamelBeanMapper<BusEventModelDao>(BusEventModelDao.class);
+                        return handle.createQuery("select * from bus_events").map(mapper).list();
+                    }
+                });
+                assertEquals(entries.size(), nbEntries);
+            }
+            final long fini = System.nanoTime();
+
+            log.error("Mapping " + (nbEntries * nbQueries) + " rows (shared mapper=" + shared + ") took " + ((fini - ini) / 1000000) + " ms");
+        }
+    }
 
     private BusEventModelDao createEntry(final Long searchKey1, final String owner) {
         final String json = "json";
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.queue.dao;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.skife.jdbi.v2.ResultIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+public class TestResultIterators {
+
+    @Test(groups = "fast")
+    public void testTransformPropagatesClose() throws Exception {
+        final TrackingResultIterator<Integer> fromIterator = new TrackingResultIterator<Integer>(ImmutableList.<Integer>of(1, 2, 3));
+        final ResultIterator<String> iterator = ResultIterators.transform(fromIterator, new Function<Integer, String>() {
+            @Override
+            public String apply(final Integer input) {
+                return String.valueOf(input);
+            }
+        });
+
+        Assert.assertEquals(iterator.next(), "1");
+        Assert.assertFalse(fromIterator.isClosed());
+
+        iterator.close();
+        Assert.assertTrue(fromIterator.isClosed());
+    }
+
+    @Test(groups = "fast")
+    public void testTransformClosesOnFailure() throws Exception {
+        final TrackingResultIterator<Integer> fromIterator = new TrackingResultIterator<Integer>(ImmutableList.<Integer>of(1, 2, 3));
+        final ResultIterator<String> iterator = ResultIterators.transform(fromIterator, new Function<Integer, String>() {
+            @Override
+            public String apply(final Integer input) {
+                throw new IllegalStateException("Unable to deserialize");
+            }
+        });
+
+        try {
+            iterator.next();
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(fromIterator.isClosed());
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testConcatOpensIteratorsLazily() throws Exception {
+        final List<TrackingResultIterator<Integer>> opened = new ArrayList<TrackingResultIterator<Integer>>();
+        final Iterator<Iterator<Integer>> iterators = Iterators.transform(ImmutableList.<List<Integer>>of(ImmutableList.<Integer>of(1, 2),
+                                                                                                          ImmutableList.<Integer>of(),
+                                                                                                          ImmutableList.<Integer>of(3, 4)).iterator(),
+                                                                          new Function<List<Integer>, Iterator<Integer>>() {
+                                                                              @Override
+                                                                              public Iterator<Integer> apply(final List<Integer> input) {
+                                                                                  final TrackingResultIterator<Integer> iterator = new TrackingResultIterator<Integer>(input);
+                                                                                  opened.add(iterator);
+                                                                                  return iterator;
+                                                                              }
+                                                                          });
+
+        final ResultIterator<Integer> iterator = ResultIterators.concat(iterators);
+        Assert.assertEquals(opened.size(), 0);
+
+        Assert.assertEquals(iterator.next(), (Integer) 1);
+        Assert.assertEquals(iterator.next(), (Integer) 2);
+        Assert.assertEquals(opened.size(), 1);
+
+        Assert.assertEquals(iterator.next(), (Integer) 3);
+        Assert.assertEquals(opened.size(), 3);
+
+        // Stop early: only the current iterator is still open
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+        for (final TrackingResultIterator<Integer> cur : opened) {
+            Assert.assertTrue(cur.isClosed());
+        }
+    }
+
+    // Closes itself once exhausted, like the jDBI streaming iterators
+    private static final class TrackingResultIterator<T> implements ResultIterator<T> {
+
+        private final Iterator<T> delegate;
+        private boolean closed;
+
+        private TrackingResultIterator(final List<T> values) {
+            this.delegate = values.iterator();
+            this.closed = !delegate.hasNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !closed && delegate.hasNext();
+        }
+
+        @Override
+        public T next() {
+            final T next = delegate.next();
+            if (!delegate.hasNext()) {
+                close();
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+}
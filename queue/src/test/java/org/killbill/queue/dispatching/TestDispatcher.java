@@ -26,22 +26,33 @@ import org.joda.time.DateTime;
 import org.killbill.bus.api.BusEvent;
 import org.killbill.bus.api.PersistentBusConfig;
 import org.killbill.bus.dao.BusEventModelDao;
+import org.killbill.commons.request.Request;
+import org.killbill.commons.request.RequestData;
 import org.killbill.queue.api.PersistentQueueEntryLifecycleState;
 import org.killbill.queue.api.QueueEvent;
 import org.skife.config.TimeSpan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.codahale.metrics.MetricRegistry;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestDispatcher {
 
@@ -63,7 +74,7 @@ public class TestDispatcher {
 
         this.callback = new TestCallableCallback();
         this.dispatcher = new Dispatcher<>(1,
-                                           createConfig(),
+                                           createConfig(0, 0),
                                            5,
                                            TimeUnit.MINUTES,
                                            5,
@@ -73,7 +84,8 @@ public class TestDispatcher {
                                            new TestBlockingRejectionExecutionHandler(callback),
                                            null,
                                            callback,
-                                           null);
+                                           null,
+                                           new MetricRegistry());
         this.dispatcher.start();
     }
 
@@ -94,6 +106,109 @@ public class TestDispatcher {
         });
     }
 
+    @Test(groups = "fast")
+    public void testLanesPreserveOrderPerSearchKey() {
+        final int NB_KEYS = 8;
+        final int NB_ENTRIES_PER_KEY = 50;
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final TestCallableCallback laneCallback = new TestCallableCallback();
+        final Dispatcher<BusEvent, BusEventModelDao> laneDispatcher = new Dispatcher<>(1,
+                                                                                       createConfig(4, 0),
+                                                                                       5,
+                                                                                       TimeUnit.MINUTES,
+                                                                                       5,
+                                                                                       TimeUnit.SECONDS,
+                                                                                       new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+                                                                                       Executors.defaultThreadFactory(),
+                                                                                       new BlockingRejectionExecutionHandler(),
+                                                                                       null,
+                                                                                       laneCallback,
+                                                                                       null,
+                                                                                       metricRegistry);
+        laneDispatcher.start();
+        try {
+            for (int i = 0; i < NB_ENTRIES_PER_KEY; i++) {
+                for (long key = 0; key < NB_KEYS; key++) {
+                    final BusEventModelDao entry = new BusEventModelDao("owner", new DateTime(), String.class.getName(), String.valueOf(i), UUID.randomUUID(), key, 1L);
+                    Assert.assertEquals(laneDispatcher.getLane(entry), key % 4);
+                    laneDispatcher.dispatch(entry);
+                }
+            }
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return laneCallback.getProcessed().size() == NB_KEYS * NB_ENTRIES_PER_KEY;
+                }
+            });
+        } finally {
+            laneDispatcher.stopDispatcher();
+        }
+
+        final Map<Long, Integer> lastSeenPerKey = new HashMap<Long, Integer>();
+        for (final QueueEvent event : laneCallback.getProcessed()) {
+            final TestEvent testEvent = (TestEvent) event;
+            final Integer lastSeen = lastSeenPerKey.get(testEvent.getSearchKey1());
+            final int cur = Integer.valueOf(testEvent.getJson());
+            Assert.assertEquals(cur, lastSeen == null ? 0 : lastSeen + 1);
+            lastSeenPerKey.put(testEvent.getSearchKey1(), cur);
+        }
+        Assert.assertEquals(metricRegistry.getTimers().size(), 4);
+    }
+
+    @Test(groups = "fast")
+    public void testVirtualThreadDispatch() {
+        final int NB_ENTRIES = 50;
+        final int MAX_CONCURRENCY = 2;
+
+        // Falls back to the thread pool prior JDK 21
+        final ContextCapturingCallableCallback virtualCallback = new ContextCapturingCallableCallback();
+        final Dispatcher<BusEvent, BusEventModelDao> virtualDispatcher = new Dispatcher<>(1,
+                                                                                          createConfig(0, MAX_CONCURRENCY),
+                                                                                          5,
+                                                                                          TimeUnit.MINUTES,
+                                                                                          5,
+                                                                                          TimeUnit.SECONDS,
+                                                                                          new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+                                                                                          Executors.defaultThreadFactory(),
+                                                                                          new BlockingRejectionExecutionHandler(),
+                                                                                          null,
+                                                                                          virtualCallback,
+                                                                                          null,
+                                                                                          new MetricRegistry());
+        virtualDispatcher.start();
+        MDC.put("test.dispatcher", "mdc-value");
+        Request.setPerThreadRequestData(new RequestData("request-id"));
+        try {
+            // Failing handlers don't leak their permit
+            for (int i = 0; i < MAX_CONCURRENCY + 1; i++) {
+                virtualDispatcher.dispatch(new BusEventModelDao("owner", new DateTime(), String.class.getName(), ContextCapturingCallableCallback.FAILING_JSON, UUID.randomUUID(), 1L, 1L));
+            }
+            for (int i = 0; i < NB_ENTRIES; i++) {
+                virtualDispatcher.dispatch(new BusEventModelDao("owner", new DateTime(), String.class.getName(), "e-" + i, UUID.randomUUID(), 1L, 1L));
+            }
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return virtualCallback.getProcessed().size() == NB_ENTRIES;
+                }
+            });
+        } finally {
+            MDC.remove("test.dispatcher");
+            Request.resetPerThreadRequestData();
+            virtualDispatcher.stopDispatcher();
+        }
+
+        Assert.assertTrue(virtualCallback.getMaxConcurrency() <= MAX_CONCURRENCY, "Max concurrency: " + virtualCallback.getMaxConcurrency());
+        if (org.killbill.commons.concurrent.Executors.isVirtualThreadSupported()) {
+            // The per-thread data of the dispatching thread is carried over to each virtual thread
+            Assert.assertEquals(virtualCallback.getMdcValues(), Collections.<String>nCopies(NB_ENTRIES, "mdc-value"));
+            Assert.assertEquals(virtualCallback.getRequestIds(), Collections.<String>nCopies(NB_ENTRIES, "request-id"));
+        }
+    }
+
     private void dispatch(final int i) {
         final BusEventModelDao e1 = new BusEventModelDao("owner", new DateTime(), String.class.getName(), "e-" + i, UUID.randomUUID(), 1L, 1L);
         dispatcher.dispatch(e1);
@@ -142,7 +257,7 @@ public class TestDispatcher {
 
         public TestCallableCallback() {
             this.isBlocked = false;
-            this.processed = new ArrayList<QueueEvent>();
+            this.processed = Collections.synchronizedList(new ArrayList<QueueEvent>());
         }
 
         @Override
@@ -180,6 +295,56 @@ public class TestDispatcher {
 
     }
 
+    private class ContextCapturingCallableCallback extends TestCallableCallback {
+
+        private static final String FAILING_JSON = "fail";
+
+        private final AtomicInteger concurrency = new AtomicInteger();
+        private final AtomicInteger maxConcurrency = new AtomicInteger();
+        private final List<String> mdcValues = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> requestIds = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public BusEvent deserialize(final BusEventModelDao modelDao) {
+            if (FAILING_JSON.equals(modelDao.getEventJson())) {
+                throw new IllegalStateException("Failing handler");
+            }
+            return super.deserialize(modelDao);
+        }
+
+        @Override
+        public void dispatch(final BusEvent event, final BusEventModelDao modelDao) throws Exception {
+            final int current = concurrency.incrementAndGet();
+            try {
+                int max;
+                do {
+                    max = maxConcurrency.get();
+                } while (current > max && !maxConcurrency.compareAndSet(max, current));
+
+                mdcValues.add(MDC.get("test.dispatcher"));
+                final RequestData requestData = Request.getPerThreadRequestData();
+                requestIds.add(requestData == null ? null : requestData.getRequestId());
+
+                Thread.sleep(5);
+                super.dispatch(event, modelDao);
+            } finally {
+                concurrency.decrementAndGet();
+            }
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency.get();
+        }
+
+        public List<String> getMdcValues() {
+            return mdcValues;
+        }
+
+        public List<String> getRequestIds() {
+            return requestIds;
+        }
+    }
+
     public static class TestEvent implements BusEvent {
 
         private final String json;
@@ -218,7 +383,7 @@ public class TestDispatcher {
         }
     }
 
-    private PersistentBusConfig createConfig() {
+    private PersistentBusConfig createConfig(final int nbDispatchLanes, final int virtualThreadsMaxConcurrency) {
         return new PersistentBusConfig() {
             @Override
             public boolean isInMemory() {
@@ -314,6 +479,16 @@ public class TestDispatcher {
             public TimeSpan getShutdownTimeout() {
                 return new TimeSpan(5, TimeUnit.SECONDS);
             }
+
+            @Override
+            public int getVirtualThreadsMaxConcurrency() {
+                return virtualThreadsMaxConcurrency;
+            }
+
+            @Override
+            public int getNbDispatchLanes() {
+                return nbDispatchLanes;
+            }
         };
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.queue.dispatching;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.killbill.bus.dao.BusEventModelDao;
+import org.killbill.queue.QueueObjectMapper;
+import org.killbill.queue.dispatching.TestDispatcher.TestEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+
+public class TestEventReaderCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TestEventReaderCache.class);
+
+    @Test(groups = "fast")
+    public void testDeserializeWithCache() throws Exception {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final EventReaderCache eventReaderCache = new EventReaderCache(objectMapper);
+
+        final BusEventModelDao entry = createEntry(objectMapper, 1L);
+        final TestEvent event = CallableCallbackBase.deserializeEvent(entry, eventReaderCache);
+        Assert.assertEquals(event.getSearchKey1(), (Long) 1L);
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+
+        final TestEvent event2 = CallableCallbackBase.deserializeEvent(createEntry(objectMapper, 2L), eventReaderCache);
+        Assert.assertEquals(event2.getSearchKey1(), (Long) 2L);
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testUnknownClassIsCachedForAWhile() throws Exception {
+        final AtomicLong nanos = new AtomicLong(0);
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        final EventReaderCache eventReaderCache = new EventReaderCache(new ObjectMapper(), ticker);
+
+        final BusEventModelDao entry = new BusEventModelDao("owner", new DateTime(), "org.killbill.DoesNotExist", "{}", UUID.randomUUID(), 1L, 1L);
+        Assert.assertNull(CallableCallbackBase.deserializeEvent(entry, eventReaderCache));
+        Assert.assertNull(CallableCallbackBase.deserializeEvent(entry, eventReaderCache));
+        Assert.assertEquals(eventReaderCache.getNbCachedClasses(), 0);
+        Assert.assertEquals(eventReaderCache.getNbUnknownClasses(), 1);
+
+        // The class could have been loaded since (e.g. plugin installed)
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        Assert.assertEquals(eventReaderCache.getNbUnknownClasses(), 0);
+
+        Assert.assertNull(CallableCallbackBase.deserializeEvent(entry, eventReaderCache));
+        Assert.assertEquals(eventReaderCache.getNbUnknownClasses(), 1);
+
+        // e.g. plugin reloaded
+        eventReaderCache.invalidateAll();
+        Assert.assertEquals(eventReaderCache.getNbUnknownClasses(), 0);
+    }
+
+    @Test(groups = "load", enabled = false)
+    public void testDeserializationThroughput() throws Exception {
+        final int NB_EVENTS = 1000000;
+        final ObjectMapper objectMapper = QueueObjectMapper.get();
+        final EventReaderCache eventReaderCache = new EventReaderCache(objectMapper);
+        final BusEventModelDao entry = createEntry(objectMapper, 12345L);
+
+        // Warm-up
+        for (int i = 0; i < NB_EVENTS / 10; i++) {
+            objectMapper.readValue(entry.getEventJson(), Class.forName(entry.getClassName()));
+            CallableCallbackBase.deserializeEvent(entry, eventReaderCache);
+        }
+
+        long ini = System.nanoTime();
+        for (int i = 0; i < NB_EVENTS; i++) {
+            objectMapper.readValue(entry.getEventJson(), Class.forName(entry.getClassName()));
+        }
+        final long uncachedNanos = System.nanoTime() - ini;
+
+        ini = System.nanoTime();
+        for (int i = 0; i < NB_EVENTS; i++) {
+            CallableCallbackBase.deserializeEvent(entry, eventReaderCache);
+        }
+        final long cachedNanos = System.nanoTime() - ini;
+
+        log.info("Deserialized {} events: uncached {} events/s, cached {} events/s",
+                 NB_EVENTS, NB_EVENTS * 1000000000L / uncachedNanos, NB_EVENTS * 1000000000L / cachedNanos);
+    }
+
+    private BusEventModelDao createEntry(final ObjectMapper objectMapper, final Long searchKey1) throws Exception {
+        final UUID userToken = UUID.randomUUID();
+        final TestEvent event = new TestEvent("{\"accountId\":\"" + UUID.randomUUID() + "\",\"amount\":\"12.5\"}", searchKey1, 1L, userToken);
+        return new BusEventModelDao("owner", new DateTime(), TestEvent.class.getName(), objectMapper.writeValueAsString(event), userToken, searchKey1, 1L);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020-2021 Equinix, Inc
+ * Copyright 2014-2021 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.queue.inflight;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.queue.inflight.RingBufferInflightQueue.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestInflightQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(TestInflightQueue.class);
+
+    @Test(groups = "fast")
+    public void testRingBufferBounds() throws InterruptedException {
+        // Rounded up to the next power of two
+        final InflightQueue queue = new RingBufferInflightQueue(3, WaitStrategy.PARK);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(queue.size(), 4);
+
+        final List<Long> result = new ArrayList<Long>();
+        assertEquals(queue.drainTo(result, 3), 3);
+        assertEquals(result.size(), 3);
+        assertEquals(queue.poll(10, TimeUnit.MILLISECONDS), 3L);
+        assertEquals(queue.poll(10, TimeUnit.MILLISECONDS), InflightQueue.NO_RECORD_ID);
+        assertEquals(queue.size(), 0);
+
+        // Wrap around
+        for (int i = 5; i < 9; i++) {
+            assertTrue(queue.offer(i));
+        }
+        result.clear();
+        assertEquals(queue.drainTo(result, 10), 4);
+        assertEquals(result.get(0), (Long) 5L);
+        assertEquals(result.get(3), (Long) 8L);
+
+        queue.offer(10);
+        queue.clear();
+        assertEquals(queue.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testRingBufferWithMultipleProducersAndConsumers() throws InterruptedException {
+        for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+            final Set<Long> consumed = Sets.<Long>newConcurrentHashSet();
+            final long throughput = runProducersAndConsumers(new RingBufferInflightQueue(1024, waitStrategy), 8, 2, 10000, consumed);
+            assertEquals(consumed.size(), 8 * 10000);
+            log.info("waitStrategy={}: {} entries/sec", waitStrategy, throughput);
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testLongHashSet() {
+        final LongHashSet set = new LongHashSet(4);
+        final Set<Long> expected = new HashSet<Long>();
+        final Random random = new Random(17);
+        for (int i = 0; i < 100000; i++) {
+            // Small range, to exercise the collisions and the backward shift deletion
+            final long value = random.nextInt(256);
+            if (random.nextBoolean()) {
+                assertEquals(set.add(value), expected.add(value));
+            } else {
+                assertEquals(set.remove(value), expected.remove(value));
+            }
+            assertEquals(set.size(), expected.size());
+        }
+        for (long value = 0; value < 256; value++) {
+            assertEquals(set.contains(value), expected.contains(value));
+        }
+
+        set.clear();
+        assertEquals(set.size(), 0);
+        assertFalse(set.contains(expected.isEmpty() ? 0L : expected.iterator().next()));
+    }
+
+    @Test(groups = "load", enabled = false)
+    public void testLoadRingBufferVsLinkedBlockingQueue() throws InterruptedException {
+        final int nbEntriesPerProducer = 100000;
+        for (int nbProducers = 1; nbProducers <= 64; nbProducers *= 2) {
+            final long linkedThroughput = runProducersAndConsumers(new LinkedBlockingInflightQueue(), nbProducers, 1, nbEntriesPerProducer, null);
+            final long parkThroughput = runProducersAndConsumers(new RingBufferInflightQueue(30000, WaitStrategy.PARK), nbProducers, 1, nbEntriesPerProducer, null);
+            final long spinThroughput = runProducersAndConsumers(new RingBufferInflightQueue(30000, WaitStrategy.SPIN_THEN_PARK), nbProducers, 1, nbEntriesPerProducer, null);
+            log.info("nbProducers={}: LinkedBlockingQueue={} entries/sec, RingBuffer(PARK)={} entries/sec, RingBuffer(SPIN_THEN_PARK)={} entries/sec",
+                     nbProducers, linkedThroughput, parkThroughput, spinThroughput);
+        }
+    }
+
+    // Returns the throughput (entries/sec)
+    private long runProducersAndConsumers(final InflightQueue queue,
+                                          final int nbProducers,
+                                          final int nbConsumers,
+                                          final int nbEntriesPerProducer,
+                                          final Set<Long> consumed) throws InterruptedException {
+        final long totalEntries = (long) nbProducers * nbEntriesPerProducer;
+        final AtomicLong nbConsumed = new AtomicLong(0);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < nbProducers; i++) {
+            final long offset = (long) i * nbEntriesPerProducer;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(startLatch);
+                    for (long j = offset; j < offset + nbEntriesPerProducer; j++) {
+                        while (!queue.offer(j)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < nbConsumers; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(startLatch);
+                    // Similar to DBBackedQueueWithInflightQueue
+                    final List<Long> result = new ArrayList<Long>(100);
+                    while (nbConsumed.get() < totalEntries) {
+                        result.clear();
+                        queue.drainTo(result, 100);
+                        if (result.isEmpty()) {
+                            try {
+                                final long entry = queue.poll(100, TimeUnit.MILLISECONDS);
+                                if (entry != InflightQueue.NO_RECORD_ID) {
+                                    result.add(entry);
+                                }
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                        if (consumed != null) {
+                            consumed.addAll(result);
+                        }
+                        nbConsumed.addAndGet(result.size());
+                    }
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        final long ini = System.nanoTime();
+        startLatch.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long elapsedNanos = System.nanoTime() - ini;
+
+        assertEquals(nbConsumed.get(), totalEntries);
+        return (long) (totalEntries / (elapsedNanos / 1e9));
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}